@@ -12,12 +12,13 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.Lifecycle;
 
 import com.bumptech.glide.Glide;
 import xyz.udalny.vnolib.client.Client;
+import xyz.udalny.vnolib.client.DeliveryLane;
 import xyz.udalny.vnolib.client.OnCommand;
 import xyz.udalny.vnolib.client.model.Character;
-import xyz.udalny.vnolib.command.ascommands.NoCommand;
 import xyz.udalny.vnolib.command.servercommands.AllowedCommand;
 import xyz.udalny.vnolib.command.servercommands.TKNCommand;
 import xyz.udalny.vnomobile.R;
@@ -26,6 +27,7 @@ import xyz.udalny.vnomobile.adapter.RosterImageAdapter;
 import xyz.udalny.vnomobile.exception.ResourceNotFoundException;
 import xyz.udalny.vnomobile.resource.DataDirectory;
 import xyz.udalny.vnomobile.resource.ResourceHandler;
+import xyz.udalny.vnomobile.util.LifecycleSubscriptions;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -43,23 +45,13 @@ public class CharacterPickActivity extends AppCompatActivity {
     private DataDirectory dataDirectory;
     private Client client;
 
-    boolean subscribed = false;
-
     @OnCommand(TKNCommand.class)
     public void onCharacterNotAllowed(TKNCommand command) {
-        runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                Toast.makeText(CharacterPickActivity.this, "This character is already in use", Toast.LENGTH_SHORT).show();
-            }
-        });
+        Toast.makeText(CharacterPickActivity.this, "This character is already in use", Toast.LENGTH_SHORT).show();
     }
 
     @OnCommand(AllowedCommand.class)
     public void onCharacterAllowed(AllowedCommand command) {
-        client.unsubscribeFromCommand(AllowedCommand.class, this);
-        client.unsubscribeFromCommand(NoCommand.class, this);
-        subscribed = false;
         Intent intent = new Intent(this, MainScreenActivity.class);
         startActivity(intent);
     }
@@ -113,10 +105,9 @@ public class CharacterPickActivity extends AppCompatActivity {
     @Override
     protected void onStart() {
         super.onStart();
-        if(!subscribed) {
-            client.subscribeToCommand(AllowedCommand.class, this);
-            client.subscribeToCommand(TKNCommand.class, this);
-        }
+        LifecycleSubscriptions.bind(this, Lifecycle.Event.ON_STOP)
+                .add(client.subscribeToCommand(AllowedCommand.class, this))
+                .add(client.subscribeToCommand(TKNCommand.class, this, DeliveryLane.MAIN));
     }
 
     @Override
@@ -1,5 +1,10 @@
 package xyz.udalny.vnomobile;
 
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+
 import xyz.udalny.vnolib.client.Client;
 
 public class ClientHandler {
@@ -10,6 +15,13 @@ public class ClientHandler {
 
     private ClientHandler() {
         client = new Client();
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        client.setMainExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mainHandler.post(command);
+            }
+        });
         client.startCommandHandler();
     }
 
@@ -8,14 +8,10 @@ import android.widget.TextView;
 import androidx.appcompat.app.AppCompatActivity;
 
 import xyz.udalny.vnolib.client.Client;
-import xyz.udalny.vnolib.client.OnCommand;
-import xyz.udalny.vnolib.command.servercommands.ADCommand;
-import xyz.udalny.vnolib.command.servercommands.CADCommand;
-import xyz.udalny.vnolib.command.servercommands.MDCommand;
+import xyz.udalny.vnolib.client.MetadataCache;
+import xyz.udalny.vnolib.client.MetadataLoader;
 import xyz.udalny.vnomobile.R;
 
-import java.util.concurrent.atomic.AtomicInteger;
-
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -25,23 +21,13 @@ public class LoadingActivity extends AppCompatActivity {
     private TextView percentageInfo;
     private TextView loadingText;
 
-    // sum of number of characters, number of tracks and number of locations
-    private int fullUnitsOfInformation;
-
-    private AtomicInteger loaded;
-
-    private AtomicInteger loadedCharacters;
-    private AtomicInteger loadedTracks;
-    private AtomicInteger loadedAreas;
-
-
     private Client client;
 
-    private void advanceProgress() {
+    private void advanceProgress(int loaded, int total) {
         runOnUiThread(new Runnable() {
             @Override
             public void run() {
-                int percentage = loaded.get() * 100 / fullUnitsOfInformation;
+                int percentage = total == 0 ? 100 : loaded * 100 / total;
                 percentageInfo.setText(String.format("%s%%", percentage));
                 progressBar.setProgress(percentage);
             }
@@ -57,51 +43,12 @@ public class LoadingActivity extends AppCompatActivity {
         });
     }
 
-    @OnCommand(CADCommand.class)
-    private void onGetCharacter(CADCommand command) {
-        loaded.addAndGet(command.getInfo().size());
-        int numOfLoadedChars = loadedCharacters.addAndGet(command.getInfo().size());
-
-        advanceProgress();
-
-        if(client.getNumOfCharacters() == numOfLoadedChars) {
-            client.unsubscribeFromCommand(CADCommand.class, this);
-            changeText("Loading music...");
-            client.requestTracks();
-        }
-    }
-
-    @OnCommand(MDCommand.class)
-    private void onGetTrack(MDCommand command) {
-        loaded.incrementAndGet();
-        int numOfLoadedTracks = loadedTracks.incrementAndGet();
-
-        advanceProgress();
-
-        if(client.getNumOfTracks() == numOfLoadedTracks) {
-            client.unsubscribeFromCommand(MDCommand.class, this);
-            changeText("Loading areas...");
-            client.requestAreas();
-        }
-
+    private void onLoaded() {
+        changeText("Done!");
+        Intent intent = new Intent(this, CharacterPickActivity.class);
+        startActivity(intent);
     }
 
-    @OnCommand(ADCommand.class)
-    private void onGetArea(ADCommand command) {
-        loaded.incrementAndGet();
-        int numOfLoadedAreas = loadedAreas.incrementAndGet();
-
-        advanceProgress();
-
-        if(client.getNumOfAreas() == numOfLoadedAreas) {
-            client.unsubscribeFromCommand(ADCommand.class, this);
-            changeText("Done!");
-            Intent intent = new Intent(this, CharacterPickActivity.class);
-            startActivity(intent);
-        }
-    }
-
-
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -112,18 +59,32 @@ public class LoadingActivity extends AppCompatActivity {
 
         progressBar.setProgress(0);
         this.client = ClientHandler.getClient();
-        client.subscribeToCommand(CADCommand.class, this);
-        client.subscribeToCommand(MDCommand.class, this);
-        client.subscribeToCommand(ADCommand.class, this);
+        client.setMetadataCache(new MetadataCache(getCacheDir()));
 
-        this.fullUnitsOfInformation = client.getNumOfAreas() + client.getNumOfCharacters() + client.getNumOfTracks();
-        this.loaded = new AtomicInteger(0);
+        changeText("Loading characters, music and areas...");
+        client.loadMetadata(new MetadataLoader.Listener() {
+            @Override
+            public void onProgress(int loaded, int total) {
+                advanceProgress(loaded, total);
+            }
 
-        this.loadedCharacters = new AtomicInteger(0);
-        this.loadedAreas = new AtomicInteger(0);
-        this.loadedTracks = new AtomicInteger(0);
+            @Override
+            public void onKindLoaded(MetadataLoader.Kind kind) {
+                log.debug("Loaded {}", kind);
+            }
 
-        client.requestCharacters();
-        changeText("Loading characters...");
+            @Override
+            public void onFailed(MetadataLoader.Kind kind, int id) {
+                log.warn("Server did not send {} {}", kind, id);
+            }
+
+            @Override
+            public void onComplete(int missing) {
+                if (missing > 0) {
+                    log.warn("Loaded with {} entries missing", missing);
+                }
+                onLoaded();
+            }
+        });
     }
 }
\ No newline at end of file
@@ -10,6 +10,7 @@ import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import xyz.udalny.vnolib.client.DeliveryLane;
 import xyz.udalny.vnolib.client.OnCommand;
 import xyz.udalny.vnolib.command.ascommands.NoCommand;
 import xyz.udalny.vnolib.command.ascommands.VNALCommand;
@@ -81,12 +82,7 @@ public class LoginActivity extends AppCompatActivity {
     @OnCommand(NoCommand.class)
     public void wrongCredentials(NoCommand command) {
         log.info("Got No");
-        runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                Toast.makeText(LoginActivity.this, R.string.wrong_credentials, Toast.LENGTH_SHORT).show();
-            }
-        });
+        Toast.makeText(LoginActivity.this, R.string.wrong_credentials, Toast.LENGTH_SHORT).show();
     }
 
     public void onFailedToConnectToMaster() {
@@ -119,7 +115,7 @@ public class LoginActivity extends AppCompatActivity {
         //StrictMode.setThreadPolicy(policy);
 
         ClientHandler.getClient().subscribeToCommand(VNALCommand.class, this);
-        ClientHandler.getClient().subscribeToCommand(NoCommand.class, this);
+        ClientHandler.getClient().subscribeToCommand(NoCommand.class, this, DeliveryLane.MAIN);
 
         new Thread(new Runnable() {
             @Override
@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import xyz.udalny.vnolib.client.StateSnapshot;
 import xyz.udalny.vnolib.client.model.Area;
 import xyz.udalny.vnomobile.ClientHandler;
 import xyz.udalny.vnomobile.resource.DataDirectory;
@@ -31,8 +32,11 @@ import xyz.udalny.vnomobile.resource.ResourceHandler;
 
 public class AreaAdapter extends RecyclerView.Adapter<AreaAdapter.AreaViewHolder> implements Filterable {
 
-    private Area[] allAreas;
+    // a view of the client's snapshot, never changed here
+    private List<Area> allAreas;
     private Area[] areas;
+    // position of the area with id i + 1 in areas, -1 if filtered out
+    private int[] positions;
 
     private int currentAreaId;
     private int lastItemSelectedPosition = -1;
@@ -45,19 +49,12 @@ public class AreaAdapter extends RecyclerView.Adapter<AreaAdapter.AreaViewHolder
             FilterResults filterResults = new FilterResults();
 
             if(constraint == null || constraint.toString().trim().isEmpty()) {
-                filterResults.values = new ArrayList<>(Arrays.asList(allAreas));
+                filterResults.values = new ArrayList<>(allAreas);
                 return filterResults;
             }
 
-            List<Area> filteredAreas = new ArrayList<>();
-
-            for(Area area : allAreas) {
-                if(area.getLocationName().toLowerCase().contains(constraint.toString().toLowerCase().trim())) {
-                    filteredAreas.add(area);
-                }
-            }
-
-            filterResults.values = filteredAreas;
+            // areas with a word starting with the query
+            filterResults.values = ClientHandler.getClient().findAreas(constraint.toString());
 
             return filterResults;
         }
@@ -65,14 +62,14 @@ public class AreaAdapter extends RecyclerView.Adapter<AreaAdapter.AreaViewHolder
         @Override
         protected void publishResults(CharSequence constraint, FilterResults results) {
             List<Area> filteredAreas = (List<Area>) results.values;
-            areas = filteredAreas.toArray(new Area[0]);
+            setAreas(filteredAreas.toArray(new Area[0]));
             notifyDataSetChanged();
         }
     };
 
-    public AreaAdapter(Area[] areas) {
+    public AreaAdapter(List<Area> areas) {
         this.allAreas = areas;
-        this.areas = areas;
+        setAreas(areas.toArray(new Area[0]));
         this.currentAreaId = ClientHandler.getClient().getCurrentArea().getLocationId();
         this.dataDirectory = ResourceHandler.getInstance().getDirectory();
     }
@@ -99,29 +96,44 @@ public class AreaAdapter extends RecyclerView.Adapter<AreaAdapter.AreaViewHolder
         return areas[lastItemSelectedPosition];
     }
 
-    public void areaInfoChanged(Area newArea) {
-        allAreas[newArea.getLocationId() - 1] = newArea;
-        for(int i = 0; i < areas.length; i++) {
-            if(areas[i].getLocationId() == newArea.getLocationId()) {
-                areas[i] = newArea;
-                notifyItemChanged(i);
-                break;
-            }
+    public void areaInfoChanged(int areaId) {
+        StateSnapshot snapshot = ClientHandler.getClient().getSnapshot();
+        allAreas = snapshot.getAreas();
+        int position = positionOf(areaId);
+        if(position != -1) {
+            areas[position] = snapshot.getArea(areaId);
+            notifyItemChanged(position);
         }
     }
 
     public void changeCurrentArea(Area area) {
         int prevAreaId = currentAreaId;
         currentAreaId = area.getLocationId();
+        if(positionOf(prevAreaId) != -1) {
+            notifyItemChanged(positionOf(prevAreaId));
+        }
+        if(positionOf(currentAreaId) != -1) {
+            notifyItemChanged(positionOf(currentAreaId));
+        }
+    }
+
+    private void setAreas(Area[] areas) {
+        this.areas = areas;
+        this.positions = new int[allAreas.size()];
+        Arrays.fill(positions, -1);
         for(int i = 0; i < areas.length; i++) {
-            if(areas[i].getLocationId() == currentAreaId) {
-                notifyItemChanged(i);
-            }
-            if(areas[i].getLocationId() == prevAreaId) {
-                notifyItemChanged(i);
+            int id = areas[i].getLocationId();
+            if(id >= 1 && id <= positions.length) {
+                positions[id - 1] = i;
             }
         }
+    }
 
+    private int positionOf(int areaId) {
+        if(areaId < 1 || areaId > positions.length) {
+            return -1;
+        }
+        return positions[areaId - 1];
     }
 
     public int getCurrentArea() {
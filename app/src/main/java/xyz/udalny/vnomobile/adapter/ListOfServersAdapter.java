@@ -8,21 +8,34 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import xyz.udalny.vnolib.client.model.Server;
-import xyz.udalny.vnomobile.ClientHandler;
 import xyz.udalny.vnomobile.R;
 import xyz.udalny.vnomobile.adapter.viewholder.ListOfServersViewHolder;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 public class ListOfServersAdapter extends RecyclerView.Adapter<ListOfServersViewHolder> {
 
     private OnServerEntryListener listener;
+    // changed only on the main thread, together with the notification
+    private List<Server> servers = new ArrayList<>();
 
     public ListOfServersAdapter(OnServerEntryListener listener) {
         this.listener = listener;
     }
 
+    /**
+     * Shows a copy of the client's servers. Servers arrive out of order and with gaps,
+     * so an index says nothing about the row and the whole list is redrawn.
+     */
+    public void setServers(List<Server> servers) {
+        this.servers = servers;
+        notifyDataSetChanged();
+    }
+
     @NonNull
     @Override
     public ListOfServersViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -33,13 +46,13 @@ public class ListOfServersAdapter extends RecyclerView.Adapter<ListOfServersView
 
     @Override
     public void onBindViewHolder(@NonNull ListOfServersViewHolder holder, int position) {
-        Server server = ClientHandler.getClient().getServers().get(position);
+        Server server = servers.get(position);
         holder.bind(server);
     }
 
     @Override
     public int getItemCount() {
-        return ClientHandler.getClient().getServers().size();
+        return servers.size();
     }
 
 }
@@ -13,15 +13,15 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import xyz.udalny.vnolib.client.model.Track;
+import xyz.udalny.vnomobile.ClientHandler;
 import xyz.udalny.vnomobile.R;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 public class MusicAdapter extends RecyclerView.Adapter<MusicAdapter.MusicViewHolder> implements Filterable {
 
-    private Track[] allTracks;
+    private List<Track> allTracks;
     private Track[] tracks;
 
     private int lastItemSelectedPosition = -1;
@@ -32,19 +32,12 @@ public class MusicAdapter extends RecyclerView.Adapter<MusicAdapter.MusicViewHol
             FilterResults filterResults = new FilterResults();
 
             if(constraint == null || constraint.toString().trim().isEmpty()) {
-                filterResults.values = new ArrayList<Track>(Arrays.asList(allTracks));
+                filterResults.values = new ArrayList<Track>(allTracks);
                 return filterResults;
             }
 
-            List<Track> filteredResults = new ArrayList<>();
-
-            for (Track track : allTracks) {
-                if(track.getTrackName().toLowerCase().contains(constraint.toString().trim().toLowerCase())) {
-                    filteredResults.add(track);
-                }
-            }
-
-            filterResults.values = filteredResults;
+            // tracks with a word starting with the query
+            filterResults.values = ClientHandler.getClient().findTracks(constraint.toString());
 
             return filterResults;
         }
@@ -57,9 +50,9 @@ public class MusicAdapter extends RecyclerView.Adapter<MusicAdapter.MusicViewHol
         }
     };
 
-    public MusicAdapter(Track[] tracks) {
+    public MusicAdapter(List<Track> tracks) {
         this.allTracks = tracks;
-        this.tracks = this.allTracks;
+        this.tracks = tracks.toArray(new Track[0]);
     }
 
     @NonNull
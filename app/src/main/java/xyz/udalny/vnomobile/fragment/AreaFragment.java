@@ -14,14 +14,13 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import xyz.udalny.vnolib.client.Client;
-import xyz.udalny.vnolib.client.OnCommand;
+import xyz.udalny.vnolib.client.DeliveryLane;
+import xyz.udalny.vnolib.client.StateListener;
 import xyz.udalny.vnolib.client.model.Area;
-import xyz.udalny.vnolib.command.servercommands.ROOKCommand;
-import xyz.udalny.vnolib.command.servercommands.RaCCommand;
-import xyz.udalny.vnolib.command.servercommands.RoCCommand;
 import xyz.udalny.vnomobile.ClientHandler;
 import xyz.udalny.vnomobile.R;
 import xyz.udalny.vnomobile.adapter.AreaAdapter;
+import xyz.udalny.vnomobile.util.LifecycleSubscriptions;
 
 public class AreaFragment extends Fragment {
 
@@ -39,39 +38,17 @@ public class AreaFragment extends Fragment {
         // Required empty public constructor
     }
 
-    @OnCommand(ROOKCommand.class)
-    public void onChangeArea(ROOKCommand command) {
-        getActivity().runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                areaAdapter.changeCurrentArea(client.getCurrentArea());
-            }
-        });
-    }
-
-    @OnCommand(RaCCommand.class)
-    public void areaInfoChanged(RaCCommand command) {
-        Area area = client.getAreaById(command.getIdOfTheLocation());
-        getActivity().runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                areaAdapter.areaInfoChanged(area);
-            }
-        });
-    }
+    private final StateListener stateListener = new StateListener() {
+        @Override
+        public void onAreaPopulationChanged(int areaId, int oldPopulation, int newPopulation) {
+            areaAdapter.areaInfoChanged(areaId);
+        }
 
-    @OnCommand(RoCCommand.class)
-    public void twoAreasInfoChanged(RoCCommand command) {
-        Area area1 = client.getAreaById(command.getIdOfTheJoinLocation());
-        Area area2 = client.getAreaById(command.getIdOfTheLeaveLocation());
-        getActivity().runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                areaAdapter.areaInfoChanged(area1);
-                areaAdapter.areaInfoChanged(area2);
-            }
-        });
-    }
+        @Override
+        public void onAreaSwitched(Area oldArea, Area newArea) {
+            areaAdapter.changeCurrentArea(newArea);
+        }
+    };
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -79,9 +56,8 @@ public class AreaFragment extends Fragment {
 
         this.areaAdapter = new AreaAdapter(ClientHandler.getClient().getAreas());
         this.client = ClientHandler.getClient();
-        client.subscribeToCommand(ROOKCommand.class, this);
-        client.subscribeToCommand(RoCCommand.class, this);
-        client.subscribeToCommand(RaCCommand.class, this);
+        LifecycleSubscriptions.bind(this)
+                .add(client.addStateListener(stateListener, DeliveryLane.MAIN));
     }
 
     @Override
@@ -120,12 +96,4 @@ public class AreaFragment extends Fragment {
             }
         });
     }
-
-    @Override
-    public void onDestroy() {
-        client.unsubscribeFromCommand(ROOKCommand.class, this);
-        client.unsubscribeFromCommand(RoCCommand.class, this);
-        client.unsubscribeFromCommand(RaCCommand.class, this);
-        super.onDestroy();
-    }
 }
\ No newline at end of file
@@ -15,6 +15,7 @@ import androidx.recyclerview.widget.RecyclerView;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 
 import xyz.udalny.vnolib.client.Client;
+import xyz.udalny.vnolib.client.DeliveryLane;
 import xyz.udalny.vnolib.client.OnCommand;
 import xyz.udalny.vnolib.client.model.Server;
 import xyz.udalny.vnolib.command.ascommands.SDPCommand;
@@ -27,9 +28,6 @@ import xyz.udalny.vnomobile.adapter.ListOfServersAdapter;
 import xyz.udalny.vnomobile.adapter.OnServerEntryListener;
 import xyz.udalny.vnomobile.resource.LogHandler;
 
-import java.util.HashSet;
-import java.util.Set;
-
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -38,7 +36,7 @@ public class ListOfServersFragment extends Fragment implements OnServerEntryList
     private Client client;
     SwipeRefreshLayout swipeRefreshLayout;
     private RecyclerView listOfServersView;
-    private Set<Integer> serverIndexSet; // needed to know which of indexes were added
+    private ListOfServersAdapter serversAdapter;
 
     boolean subscribedToServersInfo = false;
 
@@ -57,25 +55,13 @@ public class ListOfServersFragment extends Fragment implements OnServerEntryList
 
     @OnCommand(SDPCommand.class)
     private void gotServerInfo(SDPCommand command) {
-        getActivity().runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                int listIndex = command.getIndex();
-                if (serverIndexSet.contains(listIndex)) {
-                    listOfServersView.getAdapter().notifyItemChanged(listIndex);
-                } else {
-                    serverIndexSet.add(listIndex);
-                    listOfServersView.getAdapter().notifyItemInserted(listIndex);
-                }
-            }
-        });
+        serversAdapter.setServers(client.getServers());
     }
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         this.client = ClientHandler.getClient();
-        this.serverIndexSet = new HashSet<>();
     }
 
     @Override
@@ -103,10 +89,6 @@ public class ListOfServersFragment extends Fragment implements OnServerEntryList
                     return;
                 }
                 log.debug("Servers: {}", client.getServers());
-                int currentNumOfServers = client.getServers().size();
-                for(int i = 0; i < currentNumOfServers; i++) {
-                    listOfServersView.getAdapter().notifyItemRemoved(i);
-                }
                 try {
                     client.requestServers();
                 } catch (ConnectionException e) {
@@ -115,15 +97,12 @@ public class ListOfServersFragment extends Fragment implements OnServerEntryList
             }
         });
         this.listOfServersView = view.findViewById(R.id.list_of_servers_view);
-        this.listOfServersView.setAdapter(new ListOfServersAdapter(this));
+        this.serversAdapter = new ListOfServersAdapter(this);
+        this.serversAdapter.setServers(client.getServers());
+        this.listOfServersView.setAdapter(serversAdapter);
         this.listOfServersView.setLayoutManager(new LinearLayoutManager(view.getContext()));
-        if(!client.getServers().isEmpty()) {
-            for(Server server : client.getServers()) {
-                serverIndexSet.add(server.getIndex());
-            }
-        }
         if (client.connectedToMaster()) {
-            client.subscribeToCommand(SDPCommand.class, this);
+            client.subscribeToCommand(SDPCommand.class, this, DeliveryLane.MAIN);
             subscribedToServersInfo = true;
             try {
                 client.requestServers();
@@ -137,7 +116,7 @@ public class ListOfServersFragment extends Fragment implements OnServerEntryList
     public void onResume() {
         super.onResume();
         if(!subscribedToServersInfo) {
-            client.subscribeToCommand(SDPCommand.class, this);
+            client.subscribeToCommand(SDPCommand.class, this, DeliveryLane.MAIN);
             subscribedToServersInfo = true;
         }
     }
@@ -59,6 +59,7 @@ import xyz.udalny.vnomobile.resource.DataDirectory;
 import xyz.udalny.vnomobile.resource.ResourceHandler;
 import xyz.udalny.vnomobile.resource.SoundHandler;
 import xyz.udalny.vnomobile.resource.design.UIDesign;
+import xyz.udalny.vnomobile.util.LifecycleSubscriptions;
 import xyz.udalny.vnomobile.util.UIUtil;
 
 @Slf4j
@@ -292,21 +293,19 @@ public class SceneFragment extends Fragment {
         initFlipButton(view);
         initSfxButton(view);
 
-        this.client.subscribeToCommand(MSCommand.class, this);
         sceneHandlerEngine.showBackground(state.getBackgroundName());
 
-        this.client.subscribeToCommand(ROOKCommand.class, this);
-        this.client.subscribeToCommand(SERVURLCommand.class, this);
-        this.client.subscribeToCommand(FORCESTREAMResponseCommand.class, this);
+        // the handlers use the views, so they stop with them
+        LifecycleSubscriptions.bind(getViewLifecycleOwner())
+                .add(client.subscribeToCommand(MSCommand.class, this))
+                .add(client.subscribeToCommand(ROOKCommand.class, this))
+                .add(client.subscribeToCommand(SERVURLCommand.class, this))
+                .add(client.subscribeToCommand(FORCESTREAMResponseCommand.class, this));
     }
 
     @Override
     public void onDestroy() {
         sceneHandlerEngine.stop();
-        client.unsubscribeFromCommand(MSCommand.class, this);
-        client.unsubscribeFromCommand(ROOKCommand.class, this);
-        this.client.unsubscribeFromCommand(SERVURLCommand.class, this);
-        this.client.unsubscribeFromCommand(FORCESTREAMResponseCommand.class, this);
         super.onDestroy();
     }
 
@@ -1,6 +1,7 @@
 package xyz.udalny.vnomobile.resource;
 
 import xyz.udalny.vnolib.client.Client;
+import xyz.udalny.vnolib.client.DeliveryLane;
 import xyz.udalny.vnolib.client.OnCommand;
 import xyz.udalny.vnolib.client.model.BoxName;
 import xyz.udalny.vnolib.command.servercommands.CTCommand;
@@ -76,9 +77,10 @@ public class LogHandler {
     private LogHandler() {
         client = ClientHandler.getClient();
         dataDirectory = ResourceHandler.getInstance().getDirectory();
-        client.subscribeToCommand(CTCommand.class, this);
-        client.subscribeToCommand(MSCommand.class, this);
-        client.subscribeToCommand(MCCommand.class, this);
+        // looking up character names reads the data directory, the other subscribers should not wait for it
+        client.subscribeToCommand(CTCommand.class, this, DeliveryLane.BACKGROUND);
+        client.subscribeToCommand(MSCommand.class, this, DeliveryLane.BACKGROUND);
+        client.subscribeToCommand(MCCommand.class, this, DeliveryLane.BACKGROUND);
     }
 
     public static void create() {
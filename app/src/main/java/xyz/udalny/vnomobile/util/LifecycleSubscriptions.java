@@ -0,0 +1,55 @@
+package xyz.udalny.vnomobile.util;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import xyz.udalny.vnolib.client.Subscription;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cancels command subscriptions when an activity or fragment reaches a lifecycle event,
+ * so screens do not have to remember to unsubscribe from every command.
+ */
+public class LifecycleSubscriptions implements LifecycleEventObserver {
+
+    private final Lifecycle.Event until;
+    private final List<Subscription> subscriptions = new ArrayList<>();
+
+    private LifecycleSubscriptions(Lifecycle.Event until) {
+        this.until = until;
+    }
+
+    /**
+     * Subscriptions added to the result are cancelled when the owner is destroyed.
+     */
+    public static LifecycleSubscriptions bind(LifecycleOwner owner) {
+        return bind(owner, Lifecycle.Event.ON_DESTROY);
+    }
+
+    public static LifecycleSubscriptions bind(LifecycleOwner owner, Lifecycle.Event until) {
+        LifecycleSubscriptions subscriptions = new LifecycleSubscriptions(until);
+        owner.getLifecycle().addObserver(subscriptions);
+        return subscriptions;
+    }
+
+    public LifecycleSubscriptions add(Subscription subscription) {
+        subscriptions.add(subscription);
+        return this;
+    }
+
+    @Override
+    public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+        if (event != until && event != Lifecycle.Event.ON_DESTROY) {
+            return;
+        }
+        for (Subscription subscription : subscriptions) {
+            subscription.unsubscribe();
+        }
+        subscriptions.clear();
+        source.getLifecycle().removeObserver(this);
+    }
+}
@@ -0,0 +1,426 @@
+package xyz.udalny.vnolib.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates a {@code CommandCodec} for every class annotated with {@code @Command}, so that commands are
+ * parsed and serialized with plain field accesses instead of reflection.
+ * The codec of {@code FooCommand} is {@code FooCommandCodec} in the same package, which is why
+ * {@code @CommandArgument} fields may not be private.
+ * Also generates {@code CommandCodecIndex} listing all codecs, hand-written ones included.
+ * <p>
+ * The processor does not depend on vnolib, annotations and types are looked up by name.
+ */
+public class CommandCodecProcessor extends AbstractProcessor {
+
+    private static final String PACKAGE = "xyz.udalny.vnolib.command";
+    private static final String COMMAND = PACKAGE + ".Command";
+    private static final String COMMAND_ARGUMENT = PACKAGE + ".CommandArgument";
+    private static final String BASE_COMMAND = PACKAGE + ".BaseCommand";
+    private static final String COMMAND_ENUM = PACKAGE + ".servercommands.enums.CommandEnum";
+    private static final String INDEX = "CommandCodecIndex";
+
+    private static final String NO_ARGS_CONSTRUCTOR = "lombok.NoArgsConstructor";
+    private static final String[] OTHER_LOMBOK_CONSTRUCTORS = {
+            "lombok.AllArgsConstructor", "lombok.RequiredArgsConstructor", "lombok.Builder"
+    };
+
+    private enum Kind {
+        STRING, INT, ENUM
+    }
+
+    private static final class Argument {
+
+        final String field;
+        final int index;
+        final boolean optional;
+        final boolean constant;
+        final Kind kind;
+        final String enumType;
+
+        Argument(String field, int index, boolean optional, boolean constant, Kind kind, String enumType) {
+            this.field = field;
+            this.index = index;
+            this.optional = optional;
+            this.constant = constant;
+            this.kind = kind;
+            this.enumType = enumType;
+        }
+    }
+
+    // codec class names by command class name, sorted to keep the index stable between builds
+    private final Map<String, String> codecs = new TreeMap<>();
+    private boolean indexWritten = false;
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(COMMAND);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement commandAnnotation = processingEnv.getElementUtils().getTypeElement(COMMAND);
+        if (commandAnnotation == null || roundEnv.processingOver()) {
+            return false;
+        }
+        boolean found = false;
+        for (Element element : roundEnv.getElementsAnnotatedWith(commandAnnotation)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                continue;
+            }
+            found |= process((TypeElement) element);
+        }
+        if (found && !indexWritten) {
+            writeIndex();
+            indexWritten = true;
+        }
+        return false;
+    }
+
+    private boolean process(TypeElement type) {
+        TypeElement baseCommand = processingEnv.getElementUtils().getTypeElement(BASE_COMMAND);
+        if (!processingEnv.getTypeUtils().isSubtype(type.asType(), baseCommand.asType())) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "@Command class does not extend BaseCommand, no codec generated", type);
+            return false;
+        }
+        AnnotationMirror command = findAnnotation(type, COMMAND);
+        String name = (String) value(command, "name");
+        int numOfArguments = (Integer) value(command, "numOfArguments");
+        boolean generated = (Boolean) value(command, "generatedCodec");
+
+        String className = type.getQualifiedName().toString();
+        String codecName = type.getSimpleName() + "Codec";
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        codecs.put(className, packageName + "." + codecName);
+        if (!generated) {
+            return true;
+        }
+
+        List<Argument> arguments = arguments(type);
+        if (arguments == null) {
+            return false;
+        }
+        try {
+            writeCodec(type, packageName, codecName, name, numOfArguments, arguments);
+        } catch (IOException ex) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Failed to write " + codecName + ": " + ex, type);
+        }
+        return true;
+    }
+
+    /**
+     * @return arguments by index, null if a field can not be encoded
+     */
+    private List<Argument> arguments(TypeElement type) {
+        TypeElement commandEnum = processingEnv.getElementUtils().getTypeElement(COMMAND_ENUM);
+        Map<Integer, Argument> byIndex = new TreeMap<>();
+        boolean valid = true;
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            AnnotationMirror annotation = findAnnotation(field, COMMAND_ARGUMENT);
+            if (annotation == null) {
+                continue;
+            }
+            if (field.getModifiers().contains(Modifier.PRIVATE)) {
+                error(field, "@CommandArgument field must not be private, its codec reads it from the same package");
+                valid = false;
+                continue;
+            }
+            int index = (Integer) value(annotation, "index");
+            boolean optional = (Boolean) value(annotation, "optional");
+            boolean constant = field.getModifiers().contains(Modifier.STATIC);
+
+            TypeMirror fieldType = field.asType();
+            Kind kind;
+            String enumType = null;
+            if (fieldType.getKind() == TypeKind.INT) {
+                kind = Kind.INT;
+            } else if (fieldType.toString().equals("java.lang.String")) {
+                kind = Kind.STRING;
+            } else if (fieldType.getKind() == TypeKind.DECLARED
+                    && ((DeclaredType) fieldType).asElement().getKind() == ElementKind.ENUM
+                    && processingEnv.getTypeUtils().isAssignable(fieldType, commandEnum.asType())) {
+                kind = Kind.ENUM;
+                enumType = ((TypeElement) ((DeclaredType) fieldType).asElement()).getQualifiedName().toString();
+            } else {
+                error(field, "@CommandArgument field must be a String, an int or a CommandEnum");
+                valid = false;
+                continue;
+            }
+            if (index < 0 || byIndex.containsKey(index)) {
+                error(field, "@CommandArgument index " + index + " is negative or already taken");
+                valid = false;
+                continue;
+            }
+            byIndex.put(index, new Argument(field.getSimpleName().toString(), index, optional, constant, kind, enumType));
+        }
+        return valid ? new ArrayList<>(byIndex.values()) : null;
+    }
+
+    private void writeCodec(TypeElement type, String packageName, String codecName, String name,
+                            int numOfArguments, List<Argument> arguments) throws IOException {
+        String commandType = type.getSimpleName().toString();
+        int numOfFields = numOfArguments;
+        int required = 0;
+        for (Argument argument : arguments) {
+            numOfFields = Math.max(numOfFields, argument.index + 1);
+            if (!argument.optional && !argument.constant) {
+                required = Math.max(required, argument.index + 1);
+            }
+        }
+
+        StringBuilder out = new StringBuilder();
+        out.append("package ").append(packageName).append(";\n\n");
+        out.append("import ").append(PACKAGE).append(".CommandCodec;\n");
+        out.append("import ").append(PACKAGE).append(".CommandFields;\n");
+        out.append("import ").append(PACKAGE).append(".CommandSink;\n");
+        out.append("import xyz.udalny.vnolib.exception.CommandException;\n");
+        for (Argument argument : arguments) {
+            if (argument.kind == Kind.ENUM && !argument.constant) {
+                out.append("import xyz.udalny.vnolib.util.EnumLookup;\n");
+                break;
+            }
+        }
+        out.append("\n");
+        out.append("/**\n * Generated by ").append(getClass().getSimpleName()).append(", do not edit.\n */\n");
+        out.append("public final class ").append(codecName)
+                .append(" implements CommandCodec<").append(commandType).append("> {\n\n");
+
+        for (Argument argument : arguments) {
+            if (argument.kind == Kind.ENUM && !argument.constant) {
+                out.append("    private static final EnumLookup<").append(argument.enumType).append("> ")
+                        .append(lookupName(argument)).append(" = new EnumLookup<>(")
+                        .append(argument.enumType).append(".class);\n\n");
+            }
+        }
+
+        out.append("    @Override\n");
+        out.append("    public Class<").append(commandType).append("> commandClass() {\n");
+        out.append("        return ").append(commandType).append(".class;\n");
+        out.append("    }\n\n");
+
+        out.append("    @Override\n");
+        out.append("    public ").append(commandType).append(" newInstance() {\n");
+        if (hasNoArgsConstructor(type)) {
+            out.append("        return new ").append(commandType).append("();\n");
+        } else {
+            out.append("        throw new UnsupportedOperationException(\"")
+                    .append(name).append(" is only sent, never received\");\n");
+        }
+        out.append("    }\n\n");
+
+        out.append("    @Override\n");
+        out.append("    public boolean hasHandler() {\n");
+        out.append("        return ").append(hasHandler(type)).append(";\n");
+        out.append("    }\n\n");
+
+        out.append("    @Override\n");
+        out.append("    public void decode(").append(commandType)
+                .append(" command, CommandFields fields) throws CommandException {\n");
+        out.append("        int size = fields.size();\n");
+        if (required > 0) {
+            out.append("        if (size < ").append(required).append(") {\n");
+            out.append("            throw new CommandException(\"").append(name)
+                    .append(" needs at least ").append(required).append(" arguments, got \" + size);\n");
+            out.append("        }\n");
+        }
+        for (Argument argument : arguments) {
+            if (argument.constant) {
+                continue;
+            }
+            String indent = "        ";
+            boolean guarded = argument.index >= required;
+            if (guarded) {
+                out.append(indent).append("if (size > ").append(argument.index).append(") {\n");
+                indent += "    ";
+            }
+            out.append(indent).append("command.").append(argument.field).append(" = ");
+            switch (argument.kind) {
+                case INT:
+                    out.append("fields.getInt(").append(argument.index).append(");\n");
+                    break;
+                case STRING:
+                    out.append("fields.getString(").append(argument.index).append(");\n");
+                    break;
+                case ENUM:
+                    out.append(lookupName(argument)).append(".get(fields.getString(")
+                            .append(argument.index).append("));\n");
+                    break;
+            }
+            if (guarded) {
+                out.append("        }\n");
+            }
+        }
+        out.append("    }\n\n");
+
+        out.append("    @Override\n");
+        out.append("    public void encode(").append(commandType).append(" command, CommandSink sink) {\n");
+        out.append("        sink.beginCommand(\"").append(name).append("\");\n");
+        int next = 0;
+        for (int i = 0; i < numOfFields; i++) {
+            Argument argument = next < arguments.size() && arguments.get(next).index == i ? arguments.get(next++) : null;
+            if (argument == null) {
+                out.append("        sink.writeEmpty();\n");
+                continue;
+            }
+            String owner = argument.constant ? commandType : "command";
+            switch (argument.kind) {
+                case INT:
+                    out.append("        sink.writeInt(");
+                    break;
+                case STRING:
+                    out.append("        sink.writeString(");
+                    break;
+                case ENUM:
+                    out.append("        sink.writeEnum(");
+                    break;
+            }
+            out.append(owner).append(".").append(argument.field).append(");\n");
+        }
+        out.append("        sink.endCommand();\n");
+        out.append("    }\n");
+        out.append("}\n");
+
+        write(packageName + "." + codecName, out.toString(), type);
+    }
+
+    private void writeIndex() {
+        StringBuilder out = new StringBuilder();
+        out.append("package ").append(PACKAGE).append(";\n\n");
+        out.append("import java.util.Arrays;\n");
+        out.append("import java.util.List;\n\n");
+        out.append("/**\n * Generated by ").append(getClass().getSimpleName()).append(", do not edit.\n */\n");
+        out.append("final class ").append(INDEX).append(" {\n\n");
+        out.append("    private ").append(INDEX).append("() {\n");
+        out.append("    }\n\n");
+        out.append("    static List<CommandCodec<?>> codecs() {\n");
+        out.append("        return Arrays.<CommandCodec<?>>asList(");
+        boolean first = true;
+        for (String codec : codecs.values()) {
+            out.append(first ? "\n" : ",\n");
+            out.append("                new ").append(codec).append("()");
+            first = false;
+        }
+        out.append(");\n");
+        out.append("    }\n");
+        out.append("}\n");
+        try {
+            write(PACKAGE + "." + INDEX, out.toString());
+        } catch (IOException ex) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to write " + INDEX + ": " + ex);
+        }
+    }
+
+    private void write(String className, String source, Element... originatingElements) throws IOException {
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(className, originatingElements);
+        try (Writer writer = file.openWriter()) {
+            writer.write(source);
+        }
+    }
+
+    /**
+     * Lombok may not have added its constructors yet, so its annotations are looked at instead.
+     */
+    private boolean hasNoArgsConstructor(TypeElement type) {
+        if (findAnnotation(type, NO_ARGS_CONSTRUCTOR) != null) {
+            return true;
+        }
+        for (String lombokConstructor : OTHER_LOMBOK_CONSTRUCTORS) {
+            if (findAnnotation(type, lombokConstructor) != null) {
+                return false;
+            }
+        }
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the command or one of its superclasses below BaseCommand overrides {@code handle(Client)}.
+     */
+    private boolean hasHandler(TypeElement type) {
+        TypeElement current = type;
+        while(current != null && !current.getQualifiedName().contentEquals(BASE_COMMAND)) {
+            for (ExecutableElement method : ElementFilter.methodsIn(current.getEnclosedElements())) {
+                if (method.getSimpleName().contentEquals("handle") && method.getParameters().size() == 1
+                        && !method.getModifiers().contains(Modifier.ABSTRACT)) {
+                    return true;
+                }
+            }
+            TypeMirror superclass = current.getSuperclass();
+            current = superclass.getKind() == TypeKind.DECLARED
+                    ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+        }
+        return false;
+    }
+
+    private static String lookupName(Argument argument) {
+        StringBuilder builder = new StringBuilder();
+        for (char c : argument.field.toCharArray()) {
+            if (Character.isUpperCase(c)) {
+                builder.append('_');
+            }
+            builder.append(Character.toUpperCase(c));
+        }
+        return builder.toString();
+    }
+
+    private static AnnotationMirror findAnnotation(Element element, String annotationName) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            TypeElement annotationType = (TypeElement) mirror.getAnnotationType().asElement();
+            if (annotationType.getQualifiedName().contentEquals(annotationName)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private Object value(AnnotationMirror mirror, String name) {
+        Map<? extends ExecutableElement, ? extends AnnotationValue> values =
+                processingEnv.getElementUtils().getElementValuesWithDefaults(mirror);
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values.entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(name)) {
+                return entry.getValue().getValue();
+            }
+        }
+        return null;
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
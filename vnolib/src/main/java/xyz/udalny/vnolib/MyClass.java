@@ -19,8 +19,7 @@ public class MyClass {
             client.connectToServer(client.getServers().get(3));
             client.disconnectFromMaster();
             Thread.sleep(1000);
-            client.requestCharacters();
-            client.requestAreas();
+            client.loadMetadata(null);
             Thread.sleep(2000);
             CharacterState state = new CharacterState();
             state.setSpriteName("1");
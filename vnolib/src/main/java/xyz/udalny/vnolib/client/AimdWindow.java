@@ -0,0 +1,121 @@
+package xyz.udalny.vnolib.client;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Number of bulk requests (RCD, RMD, RAD, RPS) allowed in flight on one connection.
+ * Works like TCP congestion control: the window doubles every round trip until the first loss,
+ * then grows by one request per round trip. A timeout, or an answer that takes much longer
+ * than usual, halves it, at most once per round trip.
+ * The round trip time is estimated as in RFC 6298 and gives the timeout for new requests.
+ */
+public class AimdWindow {
+
+    public static final int DEFAULT_INITIAL_SIZE = 4;
+    public static final int DEFAULT_MAX_SIZE = 64;
+
+    private static final int MIN_SIZE = 1;
+
+    private static final long MIN_TIMEOUT_MILLIS = 500;
+    private static final long MAX_TIMEOUT_MILLIS = 10000;
+    private static final long INITIAL_TIMEOUT_MILLIS = 3000;
+
+    // an answer slower than this many smoothed round trips counts as a stall
+    private static final int STALL_FACTOR = 4;
+
+    private final int initialSize;
+    private final int maxSize;
+
+    private double size;
+    private double slowStartThreshold;
+
+    private long smoothedRttNanos = -1;
+    private long rttVarianceNanos;
+
+    private long lastDecreaseNanos;
+
+    public AimdWindow() {
+        this(DEFAULT_INITIAL_SIZE, DEFAULT_MAX_SIZE);
+    }
+
+    public AimdWindow(int initialSize, int maxSize) {
+        this.maxSize = Math.max(MIN_SIZE, maxSize);
+        this.initialSize = Math.max(MIN_SIZE, Math.min(initialSize, this.maxSize));
+        reset();
+    }
+
+    /**
+     * Forgets everything learned, e.g. after connecting to another server.
+     */
+    public synchronized void reset() {
+        size = initialSize;
+        slowStartThreshold = maxSize;
+        smoothedRttNanos = -1;
+        rttVarianceNanos = 0;
+        lastDecreaseNanos = 0;
+    }
+
+    public synchronized int size() {
+        return (int) size;
+    }
+
+    /**
+     * Retransmission timeout for the next request.
+     */
+    public synchronized long timeoutMillis() {
+        if (smoothedRttNanos < 0) {
+            return INITIAL_TIMEOUT_MILLIS;
+        }
+        long timeout = TimeUnit.NANOSECONDS.toMillis(smoothedRttNanos + 4 * rttVarianceNanos);
+        return Math.max(MIN_TIMEOUT_MILLIS, Math.min(timeout, MAX_TIMEOUT_MILLIS));
+    }
+
+    public synchronized long smoothedRttMillis() {
+        return smoothedRttNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(smoothedRttNanos);
+    }
+
+    /**
+     * @param rttNanos time between sending the request and getting its answer,
+     *                 negative if unknown because the request was sent more than once
+     */
+    public synchronized void onAnswer(long rttNanos) {
+        if (rttNanos >= 0) {
+            if (smoothedRttNanos >= 0 && rttNanos > STALL_FACTOR * smoothedRttNanos) {
+                updateRtt(rttNanos);
+                decrease();
+                return;
+            }
+            updateRtt(rttNanos);
+        }
+        if (size < slowStartThreshold) {
+            size = Math.min(size + 1, maxSize);
+        } else {
+            size = Math.min(size + 1 / size, maxSize);
+        }
+    }
+
+    public synchronized void onTimeout() {
+        decrease();
+    }
+
+    private void updateRtt(long rttNanos) {
+        if (smoothedRttNanos < 0) {
+            smoothedRttNanos = rttNanos;
+            rttVarianceNanos = rttNanos / 2;
+            return;
+        }
+        rttVarianceNanos = (3 * rttVarianceNanos + Math.abs(smoothedRttNanos - rttNanos)) / 4;
+        smoothedRttNanos = (7 * smoothedRttNanos + rttNanos) / 8;
+    }
+
+    private void decrease() {
+        long now = System.nanoTime();
+        // all requests in flight during one round trip see the same congestion, react to it once
+        if (lastDecreaseNanos != 0 && smoothedRttNanos > 0 && now - lastDecreaseNanos < smoothedRttNanos) {
+            return;
+        }
+        lastDecreaseNanos = now;
+        slowStartThreshold = Math.max(MIN_SIZE, size / 2);
+        size = slowStartThreshold;
+    }
+}
@@ -0,0 +1,55 @@
+package xyz.udalny.vnolib.client;
+
+import java.util.Random;
+
+/**
+ * Delays between reconnect attempts. The ceiling doubles with every attempt up to a maximum,
+ * and the delay is drawn at random below it ("full jitter"), so that clients dropped together
+ * by a server restart do not all come back at the same moment.
+ */
+public class Backoff {
+
+    public static final long DEFAULT_BASE_MILLIS = 250;
+    public static final long DEFAULT_MAX_MILLIS = 30000;
+
+    private final long baseMillis;
+    private final long maxMillis;
+    private final Random random;
+
+    private int attempts;
+
+    public Backoff() {
+        this(DEFAULT_BASE_MILLIS, DEFAULT_MAX_MILLIS, new Random());
+    }
+
+    public Backoff(long baseMillis, long maxMillis, Random random) {
+        this.baseMillis = baseMillis;
+        this.maxMillis = maxMillis;
+        this.random = random;
+    }
+
+    /**
+     * @return delay before the next attempt, between 0 and the current ceiling
+     */
+    public synchronized long nextDelayMillis() {
+        long ceiling = ceilingMillis(attempts);
+        attempts++;
+        return (long) (random.nextDouble() * ceiling);
+    }
+
+    public synchronized int getAttempts() {
+        return attempts;
+    }
+
+    public synchronized void reset() {
+        attempts = 0;
+    }
+
+    long ceilingMillis(int attempt) {
+        // long before the shift could overflow the ceiling is the maximum anyway
+        if (attempt >= 30) {
+            return maxMillis;
+        }
+        return Math.min(maxMillis, baseMillis << attempt);
+    }
+}
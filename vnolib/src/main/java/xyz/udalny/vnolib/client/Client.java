@@ -8,13 +8,26 @@ import xyz.udalny.vnolib.client.model.Item;
 import xyz.udalny.vnolib.client.model.Server;
 import xyz.udalny.vnolib.client.model.Track;
 import xyz.udalny.vnolib.command.BaseCommand;
+import xyz.udalny.vnolib.command.ascommands.RPSCommand;
+import xyz.udalny.vnolib.command.ascommands.SDPCommand;
+import xyz.udalny.vnolib.command.servercommands.ADCommand;
+import xyz.udalny.vnolib.command.servercommands.AllowedCommand;
+import xyz.udalny.vnolib.command.servercommands.CADCommand;
+import xyz.udalny.vnolib.command.servercommands.MDCommand;
+import xyz.udalny.vnolib.command.servercommands.RADCommand;
+import xyz.udalny.vnolib.command.servercommands.RCDCommand;
+import xyz.udalny.vnolib.command.servercommands.RMDCommand;
+import xyz.udalny.vnolib.command.servercommands.ReqCommand;
 import xyz.udalny.vnolib.command.servercommands.enums.LoopingStatus;
 import xyz.udalny.vnolib.command.servercommands.enums.MessageColor;
 import xyz.udalny.vnolib.command.servercommands.enums.SpriteFlip;
 import xyz.udalny.vnolib.command.servercommands.enums.SpritePosition;
 import xyz.udalny.vnolib.connection.ASConnection;
+import xyz.udalny.vnolib.connection.CommandQueue;
 import xyz.udalny.vnolib.connection.ConnectionStatus;
 import xyz.udalny.vnolib.connection.PublisherCommandHandler;
+import xyz.udalny.vnolib.connection.SelectorEngine;
+import xyz.udalny.vnolib.connection.ServerConnection;
 import xyz.udalny.vnolib.connection.VNOConnection;
 import xyz.udalny.vnolib.exception.ConnectionException;
 import xyz.udalny.vnolib.exception.NoSuchCharacterException;
@@ -22,11 +35,12 @@ import xyz.udalny.vnolib.exception.NoSuchCharacterException;
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -37,7 +51,8 @@ public class Client {
     public static final String MASTER_IP = "52.73.41.179";
 
     private ASConnection asConnection;
-    private VNOConnection vnoConnection;
+    // replaced by reconnect attempts on their own thread
+    private volatile VNOConnection vnoConnection;
 
     private ClientState state;
     private boolean authenticated = false;
@@ -45,23 +60,23 @@ public class Client {
     private String username;
 
     private final List<Server> servers;
+    private final ServerDirectory serverDirectory;
+    private final MetadataLoader metadataLoader;
+    private final RequestTracker requestTracker;
+    private final ReconnectSupervisor reconnectSupervisor;
+    private final IdleWatchdog idleWatchdog;
+
+    // timers of the client's background components, e.g. end of list detection in ServerDirectory
+    private final ScheduledExecutorService scheduler;
 
     private boolean commandHandlerRunning = false;
     private final PublisherCommandHandler commandHandler;
-    private final LinkedBlockingQueue<BaseCommand> commandsToRead;
-
-
-    private final ReentrantLock areaLock = new ReentrantLock();
-    private Area[] areas;
-
-    private final ReentrantLock charactersLock = new ReentrantLock();
-    private Character[] characters;
+    private final CommandQueue commandsToRead;
 
-    private final ReentrantLock itemsLock = new ReentrantLock();
-    private Item[] items;
+    private SelectorEngine selectorEngine;
 
-    private final ReentrantLock tracksLock = new ReentrantLock();
-    private Track[] tracks;
+    private final StateEvents stateEvents;
+    private final StateStore stateStore;
 
     private int serverPlayerLimit;
     private int serverNumberOfPlayers;
@@ -73,17 +88,78 @@ public class Client {
 
     private Area areaChange = null;
 
+    // sent again with Req when a lost session is resumed
+    private String characterPassword = "";
+    // the next PC keeps the lists if their sizes did not change
+    private volatile boolean resuming = false;
+    // set by the PC of a reconnect announcing lists of other sizes, the session is not resumed then
+    private volatile boolean listsChanged = false;
+
     public Client() {
         state = ClientState.LOGIN;
         servers = Collections.synchronizedList(new ArrayList<Server>());
-        commandsToRead = new LinkedBlockingQueue<>();
+        commandsToRead = new CommandQueue();
         commandHandler = new PublisherCommandHandler(commandsToRead, this);
+        stateEvents = new StateEvents(commandHandler.getPublisher());
+        stateStore = new StateStore(stateEvents);
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "vnolib-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        requestTracker = new RequestTracker(scheduler);
+        serverDirectory = new ServerDirectory(this, scheduler);
+        metadataLoader = new MetadataLoader(this);
+        reconnectSupervisor = new ReconnectSupervisor(this, scheduler);
+        idleWatchdog = new IdleWatchdog(this, scheduler);
+    }
+
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    public ServerDirectory getServerDirectory() {
+        return serverDirectory;
+    }
+
+    public MetadataLoader getMetadataLoader() {
+        return metadataLoader;
+    }
+
+    public RequestTracker getRequestTracker() {
+        return requestTracker;
+    }
+
+    /**
+     * Makes {@link #loadMetadata(MetadataLoader.Listener)} use and update the given cache. Pass null to disable caching.
+     */
+    public void setMetadataCache(MetadataCache metadataCache) {
+        metadataLoader.setCache(metadataCache);
+    }
+
+    public String getServerHost() {
+        return vnoConnection.getHost();
+    }
+
+    public int getServerPort() {
+        return vnoConnection.getPort();
     }
 
     public synchronized List<Server> getServers() {
         return new ArrayList<>(servers);
     }
 
+    /**
+     * Connections opened after this call are served by the given engine instead of their own threads.
+     * The engine has to be started by the caller and may be shared between clients.
+     */
+    public void setSelectorEngine(SelectorEngine selectorEngine) {
+        this.selectorEngine = selectorEngine;
+    }
+
     public void setUsername(String username) {
         this.username = username;
     }
@@ -96,36 +172,83 @@ public class Client {
         this.isMod = status;
     }
 
+    /**
+     * Areas, characters, items and tracks as they are now, consistent with each other and never changing.
+     */
+    public StateSnapshot getSnapshot() {
+        return stateStore.snapshot();
+    }
+
+    /**
+     * Called by the command handler before a run of commands, the changes they make are published together
+     * by {@link #endStateBatch()}. Readers still see every change, see {@link StateStore}.
+     */
+    public void beginStateBatch() {
+        stateStore.beginBatch();
+    }
+
+    public void endStateBatch() {
+        stateStore.endBatch();
+    }
+
+    /**
+     * Called on PC with the numbers the server announced, empties the lists unless a lost session
+     * is being resumed on a server with lists of the same sizes. If the sizes differ the ids of the current
+     * character and area may mean something else now, so they are forgotten and the session is not resumed,
+     * see {@link #listsChanged()}.
+     */
+    public void resetLists(int numOfAreas, int numOfCharacters, int numOfItems, int numOfTracks) {
+        if (resuming) {
+            resuming = false;
+            if (numOfAreas == getNumOfAreas() && numOfCharacters == getNumOfCharacters()
+                    && numOfItems == getNumOfItems() && numOfTracks == getNumOfTracks()) {
+                log.info("Keeping the lists of {}:{}", getServerHost(), getServerPort());
+                // populations and taken characters changed while the connection was down
+                metadataLoader.refresh(MetadataLoader.Kind.AREAS, MetadataLoader.Kind.CHARACTERS);
+                return;
+            }
+            log.info("Lists of {}:{} changed, not resuming the session", getServerHost(), getServerPort());
+            listsChanged = true;
+            metadataLoader.stop();
+            currentCharacter = null;
+            currentArea = null;
+        }
+        setAreas(new Area[numOfAreas]);
+        setCharacters(new Character[numOfCharacters]);
+        setItems(new Item[numOfItems]);
+        setTracks(new Track[numOfTracks]);
+    }
+
     public void setAreas(Area[] areas) {
-        this.areas = areas;
+        stateStore.setAreas(areas);
     }
 
     public void setCharacters(Character[] characters) {
-        this.characters = characters;
+        stateStore.setCharacters(characters);
     }
 
     public void setItems(Item[] items) {
-        this.items = items;
+        stateStore.setItems(items);
     }
 
     public void setTracks(Track[] tracks) {
-        this.tracks = tracks;
+        stateStore.setTracks(tracks);
     }
 
     public int getNumOfAreas() {
-        return this.areas.length;
+        return stateStore.snapshot().getAreas().size();
     }
 
     public int getNumOfCharacters() {
-        return this.characters.length;
+        return stateStore.snapshot().getCharacters().size();
     }
 
     public int getNumOfItems() {
-        return this.items.length;
+        return stateStore.snapshot().getItems().size();
     }
 
     public int getNumOfTracks() {
-        return this.tracks.length;
+        return stateStore.snapshot().getTracks().size();
     }
 
     public void setServerPlayerLimit(int serverPlayerLimit) {
@@ -145,7 +268,9 @@ public class Client {
     }
 
     public void setCurrentArea(Area area) {
+        Area oldArea = currentArea;
         currentArea = area;
+        stateEvents.onAreaSwitched(oldArea, area);
     }
 
     public Character getCurrentCharacter() {
@@ -153,79 +278,121 @@ public class Client {
     }
 
     public void addArea(Area area) {
-        synchronized (areaLock) {
-            this.areas[area.getLocationId() - 1] = area;
-        }
+        stateStore.addArea(area);
     }
 
     public Area getAreaById(int id) {
-        synchronized (areaLock) {
-            if(id <= 0) {
-                return areas[0];
-            }
-            return areas[id - 1];
+        if(id <= 0) {
+            id = 1;
         }
+        return stateStore.snapshot().getArea(id);
     }
 
-    public Area[] getAreas() {
-        synchronized (areaLock) {
-            return Arrays.copyOf(areas, areas.length);
-        }
+    public List<Area> getAreas() {
+        return stateStore.snapshot().getAreas();
     }
 
     public void changeAreaPopulation(int areaId, int newPopulation) {
-        synchronized (areaLock) {
-            if(areaId <= 0) {
-                return;
-            }
-            this.areas[areaId - 1].setPopulation(newPopulation);
+        if(areaId <= 0) {
+            return;
         }
+        stateStore.changeAreaPopulation(areaId, newPopulation);
     }
 
     public void addCharacter(Character character) {
-        synchronized (charactersLock) {
-            this.characters[character.getCharId() - 1] = character;
-        }
+        stateStore.addCharacter(character);
+    }
+
+    public void addCharacters(Character... characters) {
+        stateStore.addCharacters(characters);
+    }
+
+    public List<Character> getCharacters() {
+        return stateStore.snapshot().getCharacters();
     }
 
     public Character getCharacterByIndex(int index) {
-        synchronized (charactersLock) {
-            return characters[index];
-        }
+        return stateStore.snapshot().getCharacter(index + 1);
     }
 
-    public Track[] getTracks() {
-        synchronized (tracksLock) {
-            return Arrays.copyOf(tracks, tracks.length);
-        }
+    public List<Track> getTracks() {
+        return stateStore.snapshot().getTracks();
     }
 
     public String getUsername() {
         return username;
     }
 
-    // O(n) I don't give a shit, I'm punk
+    /**
+     * Names are compared ignoring case.
+     */
     public Character getCharacterByName(String name) throws NoSuchCharacterException {
-        synchronized (charactersLock) {
-            for (Character character : characters) {
-                if (character.getCharName().equals(name)) {
-                    return character;
-                }
-            }
+        Character character = stateStore.snapshot().getCharacter(stateStore.characterNames().get(name));
+        if (character == null) {
             throw new NoSuchCharacterException(String.format("No character with name %s", name));
         }
+        return character;
     }
 
-    public void addItem(Item item) {
-        synchronized (itemsLock) {
-            this.items[item.getItemId() - 1] = item;
+    /**
+     * @return null if there is no such track
+     */
+    public Track getTrackByName(String name) {
+        return stateStore.snapshot().getTrack(stateStore.trackNames().get(name));
+    }
+
+    /**
+     * @return null if there is no such area
+     */
+    public Area getAreaByName(String name) {
+        return stateStore.snapshot().getArea(stateStore.areaNames().get(name));
+    }
+
+    /**
+     * Characters with a word of the name starting with the prefix, ignoring case, ordered by id.
+     */
+    public List<Character> findCharacters(String prefix) {
+        StateSnapshot snapshot = stateStore.snapshot();
+        List<Character> found = new ArrayList<>();
+        for (int id : stateStore.characterNames().find(prefix)) {
+            Character character = snapshot.getCharacter(id);
+            if (character != null) {
+                found.add(character);
+            }
         }
+        return found;
     }
 
-    public void addTrack(Track track) {
-        synchronized (tracksLock) {
-            this.tracks[track.getTrackId() - 1] = track;
+    public List<Track> findTracks(String prefix) {
+        StateSnapshot snapshot = stateStore.snapshot();
+        List<Track> found = new ArrayList<>();
+        for (int id : stateStore.trackNames().find(prefix)) {
+            Track track = snapshot.getTrack(id);
+            if (track != null) {
+                found.add(track);
+            }
+        }
+        return found;
+    }
+
+    public List<Area> findAreas(String prefix) {
+        StateSnapshot snapshot = stateStore.snapshot();
+        List<Area> found = new ArrayList<>();
+        for (int id : stateStore.areaNames().find(prefix)) {
+            Area area = snapshot.getArea(id);
+            if (area != null) {
+                found.add(area);
+            }
         }
+        return found;
+    }
+
+    public void addItem(Item item) {
+        stateStore.addItem(item);
+    }
+
+    public void addTrack(Track track) {
+        stateStore.addTrack(track);
     }
 
     public void authenticate(String login, String password) throws ConnectionException, NoSuchAlgorithmException {
@@ -245,37 +412,78 @@ public class Client {
     }
 
     public void requestServers() throws ConnectionException {
-        requestServer(0);
+        requestServers(null);
     }
 
-    public void requestAreas() {
-        for (int i = 1; i <= areas.length; i++) {
-            vnoConnection.sendAreaRequest(i);
-        }
-    }
-
-    public void requestCharacters() {
-        for (int i = 1; i <= characters.length; i += 2) {
-            vnoConnection.sendCharacterRequest(i);
+    /**
+     * Downloads the whole server list, see {@link ServerDirectory}.
+     * Servers are also added to {@link #getServers()} and published as SDP commands as they arrive.
+     */
+    public void requestServers(ServerDirectory.Listener listener) throws ConnectionException {
+        if (!connectedToMaster()) {
+            throw new ConnectionException("Not connected to master");
         }
+        serverDirectory.start(listener);
     }
 
-    public void requestTracks() {
-        for (int i = 1; i <= tracks.length; i++) {
-            vnoConnection.sendTrackRequest(i);
-        }
+    /**
+     * Loads characters, tracks and areas announced by PC in one pipelined pass, see {@link MetadataLoader}.
+     */
+    public void loadMetadata(MetadataLoader.Listener listener) {
+        metadataLoader.start(listener);
     }
 
     public void requestItems() {
         // TODO: vpadlu razbiratsya s itemami, ih nikto ne yuzaet
     }
 
-    public void pickCharacter(Character character, String password) {
+    /**
+     * @param charId id of the first of the two characters the CAD carries
+     */
+    public CommandFuture<CADCommand> fetchCharacters(int charId) {
+        return fetchCharacters(charId, RequestTracker.DEFAULT_TIMEOUT_MILLIS, RequestTracker.DEFAULT_ATTEMPTS);
+    }
+
+    public CommandFuture<CADCommand> fetchCharacters(int charId, long timeoutMillis, int attempts) {
+        return requestTracker.request(vnoConnection, new RCDCommand(charId), charId, timeoutMillis, attempts);
+    }
+
+    public CommandFuture<MDCommand> fetchTrack(int trackId) {
+        return fetchTrack(trackId, RequestTracker.DEFAULT_TIMEOUT_MILLIS, RequestTracker.DEFAULT_ATTEMPTS);
+    }
+
+    public CommandFuture<MDCommand> fetchTrack(int trackId, long timeoutMillis, int attempts) {
+        return requestTracker.request(vnoConnection, new RMDCommand(trackId), trackId, timeoutMillis, attempts);
+    }
+
+    public CommandFuture<ADCommand> fetchArea(int areaId) {
+        return fetchArea(areaId, RequestTracker.DEFAULT_TIMEOUT_MILLIS, RequestTracker.DEFAULT_ATTEMPTS);
+    }
+
+    public CommandFuture<ADCommand> fetchArea(int areaId, long timeoutMillis, int attempts) {
+        return requestTracker.request(vnoConnection, new RADCommand(areaId), areaId, timeoutMillis, attempts);
+    }
+
+    public CommandFuture<SDPCommand> fetchServer(int index) {
+        return fetchServer(index, RequestTracker.DEFAULT_TIMEOUT_MILLIS, RequestTracker.DEFAULT_ATTEMPTS);
+    }
+
+    public CommandFuture<SDPCommand> fetchServer(int index, long timeoutMillis, int attempts) {
+        return requestTracker.request(asConnection, new RPSCommand(index), index, timeoutMillis, attempts);
+    }
+
+    /**
+     * The future fails with {@link xyz.udalny.vnolib.exception.CharacterTakenException} if the server answers with TKN.
+     */
+    public CommandFuture<AllowedCommand> pickCharacter(Character character, String password) {
+        characterPassword = password;
         if (currentCharacter != null) {
             vnoConnection.sendChangeRequest();
             currentCharacter = null;
         }
-        vnoConnection.sendPickCharacterRequest(character.getCharId(), password);
+        // picking is not repeated on timeout, the user can just press the button again
+        return requestTracker.request(vnoConnection, new ReqCommand(character.getCharId(), password), character.getCharId(),
+                RequestTracker.DEFAULT_TIMEOUT_MILLIS, 1);
     }
 
     public void sendICMessage(BoxName boxName,
@@ -309,15 +517,7 @@ public class Client {
     }
 
     public void playTrack(String trackName, LoopingStatus loopingStatus) {
-        Track trackToPlay = null;
-        synchronized (tracksLock) {
-            for (Track track : tracks) {
-                if (track.getTrackName().equals(trackName)) {
-                    trackToPlay = track;
-                    break;
-                }
-            }
-        }
+        Track trackToPlay = getTrackByName(trackName);
         if(trackToPlay == null) {
             log.error("No such track {}", trackName);
             return;
@@ -336,17 +536,24 @@ public class Client {
     }
 
     public void changeArea() {
+        Area oldArea = currentArea;
         this.currentArea = areaChange;
         this.areaChange = null;
+        stateEvents.onAreaSwitched(oldArea, currentArea);
     }
 
     public void addServer(Server server) {
         synchronized (servers) {
-            if(servers.size() > server.getIndex()) {
-                servers.set(server.getIndex(), server);
+            // servers may arrive out of order, keep the list sorted by index
+            int position = servers.size();
+            while(position > 0 && servers.get(position - 1).getIndex() >= server.getIndex()) {
+                position--;
+            }
+            if(position < servers.size() && servers.get(position).getIndex() == server.getIndex()) {
+                servers.set(position, server);
             }
             else {
-                servers.add(server);
+                servers.add(position, server);
             }
         }
     }
@@ -358,6 +565,7 @@ public class Client {
     public void connectToMaster() throws ConnectionException, IOException {
         if(asConnection == null || asConnection.getStatus().equals(ConnectionStatus.DISCONNECTED)) {
             asConnection = new ASConnection(MASTER_IP, MASTER_PORT, commandsToRead, commandHandler);
+            asConnection.setSelectorEngine(selectorEngine);
             asConnection.connect();
             return;
         }
@@ -368,7 +576,9 @@ public class Client {
         if (asConnection == null || asConnection.getStatus().equals(ConnectionStatus.DISCONNECTED)) {
             throw new ConnectionException("Not connected to master");
         }
+        serverDirectory.stop();
         asConnection.disconnect();
+        requestTracker.failAll(asConnection, new ConnectionException("Disconnected from master"));
         asConnection = null;
     }
 
@@ -378,21 +588,129 @@ public class Client {
 
     public void connectToServer(Server server) throws ConnectionException, IOException {
         if(vnoConnection == null || vnoConnection.getStatus().equals(ConnectionStatus.DISCONNECTED)) {
+            reconnectSupervisor.stop();
+            metadataLoader.stop();
+            resuming = false;
             vnoConnection = new VNOConnection(server, commandsToRead, commandHandler);
+            vnoConnection.setSelectorEngine(selectorEngine);
+            vnoConnection.setLostListener(reconnectSupervisor);
             vnoConnection.connect();
+            idleWatchdog.start();
             return;
         }
         throw new ConnectionException(String.format("Already connected to server. Server info: %s", vnoConnection.getServer()));
     }
 
     public void disconnectFromServer() throws ConnectionException, IOException {
+        reconnectSupervisor.stop();
+        idleWatchdog.stop();
         if (vnoConnection == null || vnoConnection.getStatus().equals(ConnectionStatus.DISCONNECTED)) {
             throw new ConnectionException("Not connected to master");
         }
+        metadataLoader.stop();
         vnoConnection.disconnect();
+        requestTracker.failAll(vnoConnection, new ConnectionException("Disconnected from server"));
         vnoConnection = null;
     }
 
+    public ReconnectSupervisor getReconnectSupervisor() {
+        return reconnectSupervisor;
+    }
+
+    public IdleWatchdog getIdleWatchdog() {
+        return idleWatchdog;
+    }
+
+    ServerConnection getServerConnection() {
+        return vnoConnection;
+    }
+
+    /**
+     * Asks for the current area, or the first one, which the server answers at any time.
+     * @return null if there are no areas to ask for
+     */
+    CommandFuture<ADCommand> probeServer(ServerConnection connection, long timeoutMillis) {
+        if (getNumOfAreas() == 0) {
+            return null;
+        }
+        Area area = currentArea;
+        int areaId = area == null ? 1 : area.getLocationId();
+        return requestTracker.request(connection, new RADCommand(areaId), areaId, timeoutMillis, 1);
+    }
+
+    /**
+     * Cleans up after a connection the supervisor has been told is lost.
+     */
+    void closeLostConnection(ServerConnection connection) {
+        metadataLoader.pause();
+        close(connection);
+        requestTracker.failAll(connection, new ConnectionException("Connection to server lost"));
+    }
+
+    /**
+     * Connects again to the server of the lost connection. The session is resumed once PC arrives,
+     * see {@link #resumeSession()}.
+     */
+    void reconnectToServer(int connectTimeoutMillis) throws IOException {
+        VNOConnection connection = new VNOConnection(vnoConnection.getServer(), commandsToRead, commandHandler);
+        connection.setSelectorEngine(selectorEngine);
+        connection.setConnectTimeoutMillis(connectTimeoutMillis);
+        connection.setLostListener(reconnectSupervisor);
+        resuming = true;
+        listsChanged = false;
+        // PC may be handled before connect() returns
+        vnoConnection = connection;
+        connection.connect();
+    }
+
+    /**
+     * @return whether the PC of the last reconnect announced lists of other sizes, which have been emptied;
+     * they have to be loaded and a character picked as on joining
+     */
+    boolean listsChanged() {
+        return listsChanged;
+    }
+
+    /**
+     * Closes the connection of a failed reconnect attempt.
+     */
+    void dropServerConnection() {
+        VNOConnection connection = vnoConnection;
+        connection.setLostListener(null);
+        close(connection);
+        requestTracker.failAll(connection, new ConnectionException("Connection to server lost"));
+    }
+
+    /**
+     * Picks the current character again on the new connection.
+     * @return null if no character had been picked
+     */
+    CommandFuture<AllowedCommand> resumeSession() {
+        if (currentCharacter == null) {
+            return null;
+        }
+        int charId = currentCharacter.getCharId();
+        return requestTracker.request(vnoConnection, new ReqCommand(charId, characterPassword), charId,
+                RequestTracker.DEFAULT_TIMEOUT_MILLIS, 1);
+    }
+
+    /**
+     * The server puts a resumed session into the first area, goes back to the current one.
+     */
+    void returnToArea() {
+        if (currentArea != null && currentArea.getLocationId() != 1) {
+            requestAreaChange(currentArea);
+        }
+    }
+
+    private static void close(ServerConnection connection) {
+        try {
+            connection.disconnect();
+        } catch (IOException ex) {
+            log.warn("While closing connection: ", ex);
+        }
+    }
+
     public void startCommandHandler() {
         commandHandler.start();
     }
@@ -401,8 +719,42 @@ public class Client {
         commandHandler.stopHandler();
     }
 
-    public void subscribeToCommand(Class<? extends BaseCommand> commandClass, Object object) {
-        commandHandler.subscribeToCommand(commandClass, object);
+    public Subscription subscribeToCommand(Class<? extends BaseCommand> commandClass, Object object) {
+        return commandHandler.subscribeToCommand(commandClass, object);
+    }
+
+    /**
+     * @param lane thread the subscriber receives the commands on
+     */
+    public Subscription subscribeToCommand(Class<? extends BaseCommand> commandClass, Object object, DeliveryLane lane) {
+        return commandHandler.subscribeToCommand(commandClass, object, lane);
+    }
+
+    public <T extends BaseCommand> Subscription subscribeToCommand(Class<T> commandClass, CommandListener<? super T> listener) {
+        return commandHandler.subscribeToCommand(commandClass, listener);
+    }
+
+    public <T extends BaseCommand> Subscription subscribeToCommand(Class<T> commandClass, CommandListener<? super T> listener,
+                                                                   DeliveryLane lane) {
+        return commandHandler.subscribeToCommand(commandClass, listener, lane);
+    }
+
+    public Subscription addStateListener(StateListener listener) {
+        return addStateListener(listener, DeliveryLane.INLINE);
+    }
+
+    /**
+     * Tells the listener about changes of areas, characters and tracks, see {@link StateListener}.
+     */
+    public Subscription addStateListener(StateListener listener, DeliveryLane lane) {
+        return stateEvents.add(listener, lane);
+    }
+
+    /**
+     * Executor of {@link DeliveryLane#MAIN}, e.g. posting to the main looper.
+     */
+    public void setMainExecutor(Executor mainExecutor) {
+        commandHandler.setMainExecutor(mainExecutor);
     }
 
     public void unsubscribeFromCommand(Class<? extends BaseCommand> commandClass, Object object) {
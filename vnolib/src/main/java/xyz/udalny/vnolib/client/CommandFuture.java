@@ -0,0 +1,155 @@
+package xyz.udalny.vnolib.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Answer of the server to a request sent through {@link RequestTracker}.
+ * Listeners are called by the thread that completes the future, i.e. the command handler thread
+ * for answers and the client scheduler for timeouts, or right away if the future is already done.
+ */
+public class CommandFuture<T> implements Future<T> {
+
+    public interface Listener<T> {
+
+        void onSuccess(T result);
+
+        /**
+         * @param cause {@link TimeoutException} if the server did not answer in time,
+         *              {@link CancellationException} if the future was cancelled
+         */
+        void onFailure(Throwable cause);
+    }
+
+    private final List<Listener<? super T>> listeners = new ArrayList<>();
+
+    private boolean done = false;
+    private T result;
+    private Throwable failure;
+
+    private volatile long roundTripNanos = -1;
+
+    public void addListener(Listener<? super T> listener) {
+        synchronized (this) {
+            if (!done) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        notifyListener(listener);
+    }
+
+    /**
+     * Time between sending the request and receiving the answer,
+     * -1 if the future failed or the request had to be sent more than once.
+     */
+    public long getRoundTripNanos() {
+        return roundTripNanos;
+    }
+
+    void setRoundTripNanos(long roundTripNanos) {
+        this.roundTripNanos = roundTripNanos;
+    }
+
+    boolean complete(T result) {
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            this.result = result;
+            this.done = true;
+            notifyAll();
+        }
+        notifyListeners();
+        return true;
+    }
+
+    boolean fail(Throwable cause) {
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            this.failure = cause;
+            this.done = true;
+            notifyAll();
+        }
+        notifyListeners();
+        return true;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return fail(new CancellationException());
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return failure instanceof CancellationException;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while(!done) {
+            wait();
+        }
+        return report();
+    }
+
+    @Override
+    public synchronized T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while(!done) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, left);
+        }
+        return report();
+    }
+
+    private T report() throws ExecutionException {
+        if (failure instanceof CancellationException) {
+            throw (CancellationException) failure;
+        }
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+        return result;
+    }
+
+    private void notifyListeners() {
+        List<Listener<? super T>> toNotify;
+        synchronized (this) {
+            toNotify = new ArrayList<>(listeners);
+            listeners.clear();
+        }
+        for (Listener<? super T> listener : toNotify) {
+            notifyListener(listener);
+        }
+    }
+
+    private void notifyListener(Listener<? super T> listener) {
+        T result;
+        Throwable failure;
+        synchronized (this) {
+            result = this.result;
+            failure = this.failure;
+        }
+        if (failure == null) {
+            listener.onSuccess(result);
+        } else {
+            listener.onFailure(failure);
+        }
+    }
+}
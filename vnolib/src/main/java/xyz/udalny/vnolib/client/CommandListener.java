@@ -0,0 +1,11 @@
+package xyz.udalny.vnolib.client;
+
+import xyz.udalny.vnolib.command.BaseCommand;
+
+/**
+ * Typed alternative to an {@link OnCommand} method, called without reflection.
+ */
+public interface CommandListener<T extends BaseCommand> {
+
+    void onCommand(T command);
+}
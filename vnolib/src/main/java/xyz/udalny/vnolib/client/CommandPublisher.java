@@ -1,49 +1,431 @@
 package xyz.udalny.vnolib.client;
 
 import xyz.udalny.vnolib.command.BaseCommand;
+import xyz.udalny.vnolib.command.CommandType;
+import xyz.udalny.vnolib.util.SerialExecutor;
 
+import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Delivers received commands to subscribers.
+ * <p>
+ * Subscribers are kept in an array per {@link CommandType} that is replaced on every change,
+ * so publishing takes no lock and is not disturbed by subscribers coming and going.
+ * The {@link OnCommand} methods of a subscriber class are looked up once, the first time an instance subscribes.
+ * <p>
+ * Every subscription has a {@link DeliveryLane}. Subscribers on the background and main lanes get a serial executor
+ * each, so they receive their commands in order without waiting for each other.
+ * <p>
+ * Subscribers with {@link OnCommand} methods are only weakly referenced: an activity that never unsubscribes
+ * is still collected, and its subscriptions are dropped the next time its commands are published.
+ * A {@link CommandListener} is kept until its {@link Subscription} is cancelled, since it is usually
+ * an anonymous class nobody else refers to.
+ */
+@Slf4j
 public class CommandPublisher {
 
-    private final Map<Class<? extends BaseCommand>, List<Object>> commandToSubscriberMap = new HashMap<>();
+    private static final Target[] NO_TARGETS = new Target[0];
+    private static final Method[] NO_METHODS = new Method[0];
+    // returned for command classes that are never received, there is nothing to deliver
+    private static final Subscription NOTHING = new Subscription() {
+        @Override
+        public void unsubscribe() {
+        }
+
+        @Override
+        public boolean isActive() {
+            return false;
+        }
+    };
+
+    // methods of a subscriber class by the ordinal of the command type they take
+    private static final ConcurrentMap<Class<?>, Method[][]> DISPATCH_TABLES = new ConcurrentHashMap<>();
+
+    private abstract class Target implements Subscription {
+
+        final CommandType type;
+        final DeliveryLane lane;
+        // null to deliver on the publishing thread
+        final Executor executor;
+        // commands already handed to the executor are not delivered after unsubscribing
+        volatile boolean active = true;
+
+        Target(CommandType type, DeliveryLane lane, Executor executor) {
+            this.type = type;
+            this.lane = lane;
+            this.executor = executor;
+        }
+
+        /**
+         * @return null once the subscriber has been collected
+         */
+        abstract Object subscriber();
+
+        abstract void deliver(Object subscriber, BaseCommand command) throws Exception;
+
+        @Override
+        public void unsubscribe() {
+            remove(this);
+        }
+
+        @Override
+        public boolean isActive() {
+            return active && subscriber() != null;
+        }
+    }
+
+    private final class MethodTarget extends Target {
+
+        private final WeakReference<Object> subscriber;
+        private final Method[] methods;
+
+        MethodTarget(CommandType type, DeliveryLane lane, Executor executor, Object subscriber, Method[] methods) {
+            super(type, lane, executor);
+            this.subscriber = new WeakReference<>(subscriber);
+            this.methods = methods;
+        }
+
+        @Override
+        Object subscriber() {
+            return subscriber.get();
+        }
+
+        @Override
+        void deliver(Object subscriber, BaseCommand command) throws Exception {
+            for (Method method : methods) {
+                method.invoke(subscriber, command);
+            }
+        }
+    }
+
+    private final class ListenerTarget extends Target {
+
+        private final CommandListener<?> listener;
+
+        ListenerTarget(CommandType type, DeliveryLane lane, Executor executor, CommandListener<?> listener) {
+            super(type, lane, executor);
+            this.listener = listener;
+        }
+
+        @Override
+        Object subscriber() {
+            return listener;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void deliver(Object subscriber, BaseCommand command) {
+            ((CommandListener<BaseCommand>) subscriber).onCommand(command);
+        }
+    }
+
+    private final AtomicReferenceArray<Target[]> targets = new AtomicReferenceArray<>(CommandType.values().length);
+
+    private Executor mainExecutor;
+    private Executor backgroundExecutor;
+
+    public CommandPublisher() {
+        for (int i = 0; i < targets.length(); i++) {
+            targets.set(i, NO_TARGETS);
+        }
+    }
+
+    /**
+     * Executor of {@link DeliveryLane#MAIN}, must be set before anybody subscribes on that lane.
+     */
+    public synchronized void setMainExecutor(Executor mainExecutor) {
+        this.mainExecutor = mainExecutor;
+    }
+
+    /**
+     * Executor shared by the subscribers on {@link DeliveryLane#BACKGROUND}, it must be able to run
+     * a task for each of them at the same time. By default a pool of daemon threads.
+     */
+    public synchronized void setBackgroundExecutor(Executor backgroundExecutor) {
+        this.backgroundExecutor = backgroundExecutor;
+    }
+
+    public Subscription subscribe(Class<? extends BaseCommand> commandClass, Object subscriber) {
+        return subscribe(commandClass, subscriber, DeliveryLane.INLINE);
+    }
 
-    public synchronized void subscribe(Class<? extends BaseCommand> commandClass, Object subscriber) {
-        if(!commandToSubscriberMap.containsKey(commandClass)) {
-            commandToSubscriberMap.put(commandClass, new ArrayList<>());
+    /**
+     * Calls the {@link OnCommand} methods of the subscriber that take commandClass.
+     * Subscribing again to the same type returns the existing subscription.
+     * A command class that is never received, i.e. has no {@link CommandType}, is logged and gets an inactive one.
+     */
+    public synchronized Subscription subscribe(Class<? extends BaseCommand> commandClass, Object subscriber,
+                                               DeliveryLane lane) {
+        CommandType type = typeOf(commandClass);
+        if (type == null) {
+            return NOTHING;
+        }
+        Target existing = find(type, subscriber);
+        if (existing != null) {
+            return existing;
         }
-        commandToSubscriberMap.get(commandClass).add(subscriber);
+        Method[] methods = dispatchTable(subscriber.getClass())[type.ordinal()];
+        MethodTarget target = new MethodTarget(type, lane, laneFor(subscriber, lane), subscriber, methods);
+        if (methods.length == 0) {
+            log.warn("{} has no method for {}", subscriber.getClass().getName(), commandClass.getSimpleName());
+            // nothing to call, the handle is inactive from the start
+            target.active = false;
+        } else {
+            add(target);
+        }
+        return target;
+    }
+
+    public <T extends BaseCommand> Subscription subscribe(Class<T> commandClass, CommandListener<? super T> listener) {
+        return subscribe(commandClass, listener, DeliveryLane.INLINE);
+    }
+
+    public synchronized <T extends BaseCommand> Subscription subscribe(Class<T> commandClass,
+                                                                       CommandListener<? super T> listener,
+                                                                       DeliveryLane lane) {
+        CommandType type = typeOf(commandClass);
+        if (type == null) {
+            return NOTHING;
+        }
+        Target existing = find(type, listener);
+        if (existing != null) {
+            return existing;
+        }
+        ListenerTarget target = new ListenerTarget(type, lane, laneFor(listener, lane), listener);
+        add(target);
+        return target;
     }
 
     public synchronized void unsubscribe(Class<? extends BaseCommand> commandClass, Object subscriber) {
-        if(commandToSubscriberMap.containsKey(commandClass)) {
-            commandToSubscriberMap.get(commandClass).remove(subscriber);
+        CommandType type = CommandType.forClass(commandClass);
+        if (type == null) {
+            return;
+        }
+        Target target = find(type, subscriber);
+        if (target != null) {
+            remove(target);
         }
     }
 
+    public boolean hasSubscribers(CommandType type) {
+        return targets.get(type.ordinal()).length > 0;
+    }
+
+    public boolean hasSubscribers(Class<? extends BaseCommand> commandClass) {
+        CommandType type = CommandType.forClass(commandClass);
+        return type != null && hasSubscribers(type);
+    }
+
     public synchronized void unsubscribeAll() {
-        commandToSubscriberMap.clear();
-    }
-
-    public void publish(BaseCommand command) throws InvocationTargetException, IllegalAccessException {
-        if(commandToSubscriberMap.containsKey(command.getClass())) {
-            for (Object subscriber : commandToSubscriberMap.get(command.getClass())) {
-                for (Method method : subscriber.getClass().getDeclaredMethods()) {
-                    if(method.isAnnotationPresent(OnCommand.class)) {
-                        OnCommand onCommand = method.getAnnotation(OnCommand.class);
-                        if(onCommand.value().equals(command.getClass())) {
-                            method.setAccessible(true);
-                            method.invoke(subscriber, command.getClass().cast(command));
-                            method.setAccessible(false);
-                        }
-                    }
+        for (int i = 0; i < targets.length(); i++) {
+            for (Target target : targets.get(i)) {
+                target.active = false;
+            }
+            targets.set(i, NO_TARGETS);
+        }
+    }
+
+    public void publish(BaseCommand command) {
+        CommandType type = CommandType.forClass(command.getClass());
+        if (type != null) {
+            publish(type, command);
+        }
+    }
+
+    /**
+     * Delivers the command to the subscribers at the time of the call, or hands it to their lanes.
+     * A subscriber that throws does not keep the command from the others.
+     */
+    public void publish(CommandType type, final BaseCommand command) {
+        boolean collected = false;
+        for (final Target target : targets.get(type.ordinal())) {
+            if (target.subscriber() == null) {
+                collected = true;
+                continue;
+            }
+            if (target.executor == null) {
+                deliver(target, command);
+                continue;
+            }
+            target.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(target, command);
+                }
+            });
+        }
+        if (collected) {
+            removeCollected(type);
+        }
+    }
+
+    private static void deliver(Target target, BaseCommand command) {
+        Object subscriber = target.subscriber();
+        if (!target.active || subscriber == null) {
+            return;
+        }
+        try {
+            target.deliver(subscriber, command);
+        } catch (InvocationTargetException ex) {
+            log.error("When publishing command: ", ex.getCause());
+        } catch (Exception ex) {
+            log.error("When publishing command: ", ex);
+        }
+    }
+
+    private Target find(CommandType type, Object subscriber) {
+        for (Target target : targets.get(type.ordinal())) {
+            if (target.subscriber() == subscriber) {
+                return target;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The subscriber keeps one serial executor per lane for all the types it subscribed to.
+     */
+    private Executor laneFor(Object subscriber, DeliveryLane lane) {
+        if (lane == DeliveryLane.INLINE) {
+            return null;
+        }
+        for (int i = 0; i < targets.length(); i++) {
+            for (Target target : targets.get(i)) {
+                if (target.lane == lane && target.subscriber() == subscriber) {
+                    return target.executor;
                 }
             }
         }
+        return newLaneExecutor(lane);
+    }
+
+    /**
+     * @return a new serial executor on the lane, null for {@link DeliveryLane#INLINE}
+     */
+    synchronized Executor newLaneExecutor(DeliveryLane lane) {
+        if (lane == DeliveryLane.INLINE) {
+            return null;
+        }
+        if (lane == DeliveryLane.MAIN) {
+            if (mainExecutor == null) {
+                throw new IllegalStateException("No executor for the main lane");
+            }
+            return new SerialExecutor(mainExecutor);
+        }
+        if (backgroundExecutor == null) {
+            backgroundExecutor = Executors.newCachedThreadPool(new DeliveryThreadFactory());
+        }
+        return new SerialExecutor(backgroundExecutor);
+    }
+
+    private synchronized void add(Target target) {
+        Target[] current = targets.get(target.type.ordinal());
+        Target[] updated = new Target[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = target;
+        targets.set(target.type.ordinal(), updated);
+    }
+
+    private synchronized void remove(Target target) {
+        target.active = false;
+        Target[] current = targets.get(target.type.ordinal());
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == target) {
+                Target[] updated = new Target[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                targets.set(target.type.ordinal(), updated);
+                return;
+            }
+        }
+    }
+
+    private synchronized void removeCollected(CommandType type) {
+        Target[] current = targets.get(type.ordinal());
+        List<Target> alive = new ArrayList<>(current.length);
+        for (Target target : current) {
+            if (target.subscriber() == null) {
+                target.active = false;
+            } else {
+                alive.add(target);
+            }
+        }
+        if (alive.size() < current.length) {
+            targets.set(type.ordinal(), alive.toArray(NO_TARGETS));
+        }
+    }
+
+    private static final class DeliveryThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "command-delivery-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    private static CommandType typeOf(Class<? extends BaseCommand> commandClass) {
+        CommandType type = CommandType.forClass(commandClass);
+        if (type == null) {
+            log.warn("Not subscribing to {}, it is never received", commandClass.getSimpleName());
+        }
+        return type;
+    }
+
+    private static Method[][] dispatchTable(Class<?> subscriberClass) {
+        Method[][] table = DISPATCH_TABLES.get(subscriberClass);
+        if (table == null) {
+            table = resolve(subscriberClass);
+            Method[][] raced = DISPATCH_TABLES.putIfAbsent(subscriberClass, table);
+            if (raced != null) {
+                table = raced;
+            }
+        }
+        return table;
+    }
+
+    private static Method[][] resolve(Class<?> subscriberClass) {
+        List<List<Method>> byType = new ArrayList<>();
+        for (int i = 0; i < CommandType.values().length; i++) {
+            byType.add(new ArrayList<Method>());
+        }
+        for (Class<?> current = subscriberClass; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Method method : current.getDeclaredMethods()) {
+                OnCommand onCommand = method.getAnnotation(OnCommand.class);
+                if (onCommand == null) {
+                    continue;
+                }
+                CommandType type = CommandType.forClass(onCommand.value());
+                if (type == null || method.getParameterTypes().length != 1
+                        || !method.getParameterTypes()[0].isAssignableFrom(onCommand.value())) {
+                    log.warn("Ignoring {}.{}, it can not take {}", subscriberClass.getName(), method.getName(),
+                            onCommand.value().getSimpleName());
+                    continue;
+                }
+                method.setAccessible(true);
+                byType.get(type.ordinal()).add(method);
+            }
+        }
+        Method[][] table = new Method[byType.size()][];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = byType.get(i).isEmpty() ? NO_METHODS : byType.get(i).toArray(NO_METHODS);
+        }
+        return table;
     }
 }
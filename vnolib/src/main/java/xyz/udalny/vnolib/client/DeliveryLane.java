@@ -0,0 +1,24 @@
+package xyz.udalny.vnolib.client;
+
+/**
+ * Thread a subscriber receives its commands on, chosen when subscribing.
+ * Whatever the lane, a subscriber receives its commands one at a time and in the order they arrived.
+ */
+public enum DeliveryLane {
+
+    /**
+     * On the command handler thread, before the command is delivered to the next subscriber.
+     * For subscribers that only update some state.
+     */
+    INLINE,
+
+    /**
+     * On a background thread, so that a slow subscriber does not hold back the others.
+     */
+    BACKGROUND,
+
+    /**
+     * On the executor given to {@link CommandPublisher#setMainExecutor}, the UI thread on Android.
+     */
+    MAIN
+}
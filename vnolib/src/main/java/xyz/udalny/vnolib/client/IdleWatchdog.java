@@ -0,0 +1,124 @@
+package xyz.udalny.vnolib.client;
+
+import xyz.udalny.vnolib.command.BaseCommand;
+import xyz.udalny.vnolib.connection.ConnectionStatus;
+import xyz.udalny.vnolib.connection.ServerConnection;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Notices a server connection that went silent, e.g. one left half open by a switch between mobile networks,
+ * which TCP keepalive reports only after many minutes. Once nothing has been received for the idle time
+ * the server is asked for an area through {@link RequestTracker}. If not a single frame arrives before
+ * the request times out, the connection is reported lost and the {@link ReconnectSupervisor} takes over.
+ */
+@Slf4j
+public class IdleWatchdog {
+
+    public static final long DEFAULT_IDLE_MILLIS = 10000;
+    public static final long DEFAULT_PROBE_TIMEOUT_MILLIS = 3000;
+    private static final long MAX_CHECK_PERIOD_MILLIS = 1000;
+
+    private final Client client;
+    private final ScheduledExecutorService scheduler;
+
+    private long idleMillis = DEFAULT_IDLE_MILLIS;
+    private long probeTimeoutMillis = DEFAULT_PROBE_TIMEOUT_MILLIS;
+
+    private ScheduledFuture<?> task;
+    // connection with a probe in flight, null if none
+    private ServerConnection probed;
+
+    public IdleWatchdog(Client client, ScheduledExecutorService scheduler) {
+        this.client = client;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Takes effect on the next {@link #start()}. 0 disables the watchdog.
+     */
+    public synchronized void setIdleMillis(long idleMillis) {
+        this.idleMillis = idleMillis;
+    }
+
+    public synchronized void setProbeTimeoutMillis(long probeTimeoutMillis) {
+        this.probeTimeoutMillis = probeTimeoutMillis;
+    }
+
+    /**
+     * Watches the current server connection of the client, whichever it is, until {@link #stop()}.
+     */
+    public synchronized void start() {
+        stop();
+        if (idleMillis <= 0) {
+            return;
+        }
+        long period = Math.min(MAX_CHECK_PERIOD_MILLIS, idleMillis / 2);
+        task = scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                check();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+        probed = null;
+    }
+
+    private void check() {
+        final ServerConnection connection = client.getServerConnection();
+        long timeoutMillis;
+        synchronized (this) {
+            if (task == null || connection == null || probed == connection
+                    || connection.getStatus() != ConnectionStatus.CONNECTED) {
+                return;
+            }
+            long idleNanos = System.nanoTime() - connection.getLastReceivedNanos();
+            if (idleNanos < TimeUnit.MILLISECONDS.toNanos(idleMillis)) {
+                return;
+            }
+            probed = connection;
+            timeoutMillis = probeTimeoutMillis;
+        }
+        final long receivedBefore = connection.getLastReceivedNanos();
+        CommandFuture<? extends BaseCommand> probe = client.probeServer(connection, timeoutMillis);
+        if (probe == null) {
+            // nothing to ask for yet, e.g. before PC
+            probeDone(connection);
+            return;
+        }
+        log.debug("Nothing received from {}:{} for a while, probing", connection.getHost(), connection.getPort());
+        probe.addListener(new CommandFuture.Listener<BaseCommand>() {
+            @Override
+            public void onSuccess(BaseCommand result) {
+                probeDone(connection);
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                probeDone(connection);
+                // any frame at all, e.g. a busy server slow to answer, is a sign of life
+                if (cause instanceof TimeoutException && connection.getLastReceivedNanos() == receivedBefore) {
+                    log.warn("No answer from {}:{}, dropping the connection", connection.getHost(), connection.getPort());
+                    connection.connectionLost();
+                }
+            }
+        });
+    }
+
+    private synchronized void probeDone(ServerConnection connection) {
+        if (probed == connection) {
+            probed = null;
+        }
+    }
+}
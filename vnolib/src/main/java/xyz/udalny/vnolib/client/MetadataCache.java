@@ -0,0 +1,146 @@
+package xyz.udalny.vnolib.client;
+
+import xyz.udalny.vnolib.client.model.Area;
+import xyz.udalny.vnolib.client.model.Character;
+import xyz.udalny.vnolib.client.model.Track;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps characters, tracks and areas of every visited server on disk, one binary file per server.
+ * An entry is only used if the numbers of characters, tracks and areas still match the ones in PC.
+ */
+@Slf4j
+public class MetadataCache {
+
+    private static final int MAGIC = 0x564E4F4D; // VNOM
+    private static final int VERSION = 1;
+
+    @AllArgsConstructor
+    @Getter
+    public static class Entry {
+        private final Character[] characters;
+        private final Track[] tracks;
+        private final Area[] areas;
+    }
+
+    private final File directory;
+
+    public MetadataCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return null if there is no entry for the server or it does not match the counts
+     */
+    public Entry load(String host, int port, int numOfCharacters, int numOfTracks, int numOfAreas) {
+        File file = fileOf(host, port);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            if (in.readInt() != numOfCharacters || in.readInt() != numOfTracks || in.readInt() != numOfAreas) {
+                log.info("Cached metadata of {}:{} is outdated", host, port);
+                return null;
+            }
+            Character[] characters = new Character[numOfCharacters];
+            for (int i = 0; i < numOfCharacters; i++) {
+                characters[i] = new Character(in.readInt(), readString(in), in.readInt());
+            }
+            Track[] tracks = new Track[numOfTracks];
+            for (int i = 0; i < numOfTracks; i++) {
+                tracks[i] = new Track(in.readInt(), readString(in), readString(in));
+            }
+            Area[] areas = new Area[numOfAreas];
+            for (int i = 0; i < numOfAreas; i++) {
+                areas[i] = new Area(in.readInt(), readString(in), in.readInt(), readString(in), readString(in));
+            }
+            return new Entry(characters, tracks, areas);
+        } catch (FileNotFoundException ex) {
+            return null;
+        } catch (IOException ex) {
+            log.warn("While reading metadata cache {}: ", file, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the entry of the server. Arrays with missing elements are not stored.
+     */
+    public void store(String host, int port, Character[] characters, Track[] tracks, Area[] areas) {
+        if (hasNulls(characters) || hasNulls(tracks) || hasNulls(areas)) {
+            return;
+        }
+        File file = fileOf(host, port);
+        File temp = new File(directory, file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(characters.length);
+            out.writeInt(tracks.length);
+            out.writeInt(areas.length);
+            for (Character character : characters) {
+                out.writeInt(character.getCharId());
+                writeString(out, character.getCharName());
+                out.writeInt(character.getTaken());
+            }
+            for (Track track : tracks) {
+                out.writeInt(track.getTrackId());
+                writeString(out, track.getTrackName());
+                writeString(out, track.getTrackLocation());
+            }
+            for (Area area : areas) {
+                out.writeInt(area.getLocationId());
+                writeString(out, area.getLocationName());
+                out.writeInt(area.getLocationPopulation());
+                writeString(out, area.getBackgroundNamePattern());
+                writeString(out, area.getArg5());
+            }
+        } catch (IOException ex) {
+            log.warn("While writing metadata cache {}: ", temp, ex);
+            temp.delete();
+            return;
+        }
+        // readers never see a half written file
+        if (!temp.renameTo(file)) {
+            log.warn("Could not replace metadata cache {}", file);
+            temp.delete();
+        }
+    }
+
+    private File fileOf(String host, int port) {
+        return new File(directory, String.format("metadata_%s_%d.bin", host.replaceAll("[^A-Za-z0-9.-]", "_"), port));
+    }
+
+    private static boolean hasNulls(Object[] array) {
+        for (Object element : array) {
+            if (element == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
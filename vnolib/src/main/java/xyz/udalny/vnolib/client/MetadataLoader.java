@@ -0,0 +1,484 @@
+package xyz.udalny.vnolib.client;
+
+import xyz.udalny.vnolib.client.model.Area;
+import xyz.udalny.vnolib.client.model.Character;
+import xyz.udalny.vnolib.client.model.Track;
+import xyz.udalny.vnolib.command.BaseCommand;
+import xyz.udalny.vnolib.command.servercommands.CADCommand;
+
+import java.util.BitSet;
+import java.util.concurrent.TimeoutException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Loads characters, tracks and areas of the server after PC.
+ * All three kinds are requested at once, round robin, with a limited number of requests in flight.
+ * The size of the window is controlled by an {@link AimdWindow} fed with the round trip times
+ * of the answers. Requests go through {@link RequestTracker}, those that time out shrink the window
+ * and are sent again, up to {@link #DEFAULT_MAX_ATTEMPTS} times. What is still missing then is reported
+ * to the listener and left empty, so that a server ignoring a request does not hold up the load forever.
+ * <p>
+ * With a {@link MetadataCache} set, a matching cache entry fills the client and completes the load at once.
+ * The server is still asked for everything in the background and the fresh data replaces the entry.
+ */
+@Slf4j
+public class MetadataLoader {
+
+    public enum Kind {
+        CHARACTERS,
+        TRACKS,
+        AREAS
+    }
+
+    public interface Listener {
+
+        /**
+         * @param loaded number of characters, tracks and areas received so far
+         * @param total number of characters, tracks and areas announced by PC
+         */
+        void onProgress(int loaded, int total);
+
+        /**
+         * Called once everything of the kind has been received or given up.
+         */
+        void onKindLoaded(Kind kind);
+
+        /**
+         * Called when the server did not answer for the entry, which stays empty.
+         */
+        void onFailed(Kind kind, int id);
+
+        /**
+         * @param missing number of entries given up, see {@link #onFailed(Kind, int)}
+         */
+        void onComplete(int missing);
+    }
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+
+    // one RCD is answered by a CAD with two characters
+    private static final int CHARACTERS_PER_REQUEST = 2;
+
+    private final Client client;
+
+    private final AimdWindow window = new AimdWindow();
+
+    private MetadataCache cache;
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    private Listener listener;
+    private boolean running = false;
+    // stopped by a lost connection, to go on once it is back
+    private boolean paused = false;
+
+    private final int[] counts = new int[Kind.values().length];
+    private final int[] nextIds = new int[Kind.values().length];
+    // ids the requests of which timed out and have to be sent again, by kind
+    private final BitSet[] retry = new BitSet[Kind.values().length];
+    // ids already received, by kind
+    private final BitSet[] received = new BitSet[Kind.values().length];
+    // ids given up, by kind
+    private final BitSet[] failed = new BitSet[Kind.values().length];
+    // requests sent for each id, by kind
+    private final int[][] attempts = new int[Kind.values().length][];
+    // whether onKindLoaded has been called, a refresh does not call it again
+    private final boolean[] kindsReported = new boolean[Kind.values().length];
+    private int nextKind;
+    // answers to requests of a previous start are ignored
+    private int generation;
+
+    private int inFlight;
+    private int loaded;
+    private int missing;
+    private int total;
+
+    public MetadataLoader(Client client) {
+        this.client = client;
+        for (int i = 0; i < retry.length; i++) {
+            retry[i] = new BitSet();
+            received[i] = new BitSet();
+            failed[i] = new BitSet();
+            attempts[i] = new int[0];
+        }
+    }
+
+    public AimdWindow getWindow() {
+        return window;
+    }
+
+    public synchronized void setCache(MetadataCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * How many times an entry is requested before it is given up.
+     */
+    public synchronized void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    public synchronized boolean isLoaded(Kind kind) {
+        return received[kind.ordinal()].cardinality() == counts[kind.ordinal()];
+    }
+
+    /**
+     * Starts loading with the numbers of characters, tracks and areas the client got from PC.
+     * @param listener may be null
+     */
+    public synchronized void start(Listener listener) {
+        this.listener = listener;
+        this.running = true;
+        this.paused = false;
+        this.generation++;
+        counts[Kind.CHARACTERS.ordinal()] = client.getNumOfCharacters();
+        counts[Kind.TRACKS.ordinal()] = client.getNumOfTracks();
+        counts[Kind.AREAS.ordinal()] = client.getNumOfAreas();
+        total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            nextIds[i] = 1;
+            retry[i].clear();
+            received[i].clear();
+            failed[i].clear();
+            attempts[i] = new int[counts[i] + 1];
+            kindsReported[i] = false;
+            total += counts[i];
+        }
+        nextKind = 0;
+        window.reset();
+        inFlight = 0;
+        loaded = 0;
+        missing = 0;
+        if (loadFromCache()) {
+            // the rest is a refresh nobody waits for
+            this.listener = null;
+        } else {
+            for (Kind kind : Kind.values()) {
+                reportIfDone(kind);
+            }
+        }
+        fillWindow();
+        checkComplete();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        paused = false;
+        listener = null;
+    }
+
+    /**
+     * Stops sending requests while the connection is down, keeping what has been received.
+     */
+    public synchronized void pause() {
+        if (running) {
+            running = false;
+            paused = true;
+        }
+    }
+
+    /**
+     * Goes on with a load paused by {@link #pause()}, requesting again what was sent but not answered.
+     * Starts over if the server now announces different numbers.
+     */
+    public synchronized void resume() {
+        if (!paused) {
+            return;
+        }
+        paused = false;
+        if (countsChanged()) {
+            start(listener);
+            return;
+        }
+        restart();
+        retryUnanswered();
+        fillWindow();
+        checkComplete();
+    }
+
+    /**
+     * Requests again, through the window, everything of the kinds that has been requested so far, e.g. areas
+     * and characters after a reconnect, as populations and taken characters changed meanwhile. Entries given up
+     * are tried again. A paused load goes on as with {@link #resume()}, a finished one runs again without a listener.
+     * Does nothing if the numbers changed since the load started, the lists are not the same any more.
+     */
+    public synchronized void refresh(Kind... kinds) {
+        if (countsChanged()) {
+            return;
+        }
+        if (paused) {
+            paused = false;
+            restart();
+            retryUnanswered();
+        } else if (!running) {
+            listener = null;
+            restart();
+        }
+        for (Kind kind : kinds) {
+            int k = kind.ordinal();
+            int step = kind == Kind.CHARACTERS ? CHARACTERS_PER_REQUEST : 1;
+            for (int id = 1; id < nextIds[k]; id += step) {
+                if (retry[k].get(id)) {
+                    continue;
+                }
+                int last = Math.min(id + step - 1, counts[k]);
+                boolean settled = false;
+                for (int i = id; i <= last; i++) {
+                    settled |= received[k].get(i) || failed[k].get(i);
+                }
+                // the others are in flight
+                if (!settled) {
+                    continue;
+                }
+                for (int i = id; i <= last; i++) {
+                    if (received[k].get(i)) {
+                        received[k].clear(i);
+                        loaded--;
+                    } else if (failed[k].get(i)) {
+                        failed[k].clear(i);
+                        missing--;
+                    }
+                }
+                attempts[k][id] = 0;
+                retry[k].set(id);
+            }
+        }
+        fillWindow();
+        checkComplete();
+    }
+
+    private boolean countsChanged() {
+        return counts[Kind.CHARACTERS.ordinal()] != client.getNumOfCharacters()
+                || counts[Kind.TRACKS.ordinal()] != client.getNumOfTracks()
+                || counts[Kind.AREAS.ordinal()] != client.getNumOfAreas();
+    }
+
+    private void retryUnanswered() {
+        for (Kind kind : Kind.values()) {
+            int k = kind.ordinal();
+            int step = kind == Kind.CHARACTERS ? CHARACTERS_PER_REQUEST : 1;
+            for (int id = 1; id < nextIds[k]; id += step) {
+                boolean answered = received[k].get(id) && (step == 1 || id + 1 > counts[k] || received[k].get(id + 1));
+                if (!answered && !failed[k].get(id)) {
+                    retry[k].set(id);
+                }
+            }
+        }
+    }
+
+    private void restart() {
+        running = true;
+        // answers still on their way belong to the lost connection or to a finished load
+        generation++;
+        inFlight = 0;
+        window.reset();
+    }
+
+    private synchronized void onAnswered(int generation, Kind kind, int requestId, BaseCommand answer, long rttNanos) {
+        if (!running || generation != this.generation) {
+            return;
+        }
+        inFlight--;
+        window.onAnswer(rttNanos);
+        int k = kind.ordinal();
+        if (kind == Kind.CHARACTERS) {
+            for (CADCommand.CADInfo info : ((CADCommand) answer).getInfo()) {
+                markReceived(k, info.getCharId());
+            }
+        } else {
+            markReceived(k, requestId);
+        }
+        if (listener != null) {
+            listener.onProgress(loaded, total);
+        }
+        reportIfDone(kind);
+        fillWindow();
+        checkComplete();
+    }
+
+    private synchronized void onFailed(int generation, Kind kind, int requestId, Throwable cause) {
+        if (!running || generation != this.generation) {
+            return;
+        }
+        log.warn("Request {} {} failed: {}", kind, requestId, cause.toString());
+        inFlight--;
+        if (cause instanceof TimeoutException) {
+            window.onTimeout();
+        }
+        int k = kind.ordinal();
+        if (attempts[k][requestId] < maxAttempts) {
+            retry[k].set(requestId);
+            fillWindow();
+            return;
+        }
+        log.warn("Giving up {} {} after {} attempts", kind, requestId, attempts[k][requestId]);
+        int last = kind == Kind.CHARACTERS ? Math.min(requestId + CHARACTERS_PER_REQUEST - 1, counts[k]) : requestId;
+        for (int id = requestId; id <= last; id++) {
+            if (!received[k].get(id) && !failed[k].get(id)) {
+                failed[k].set(id);
+                missing++;
+                if (listener != null) {
+                    listener.onFailed(kind, id);
+                }
+            }
+        }
+        reportIfDone(kind);
+        fillWindow();
+        checkComplete();
+    }
+
+    private void markReceived(int k, int id) {
+        if (id >= 1 && id <= counts[k] && !received[k].get(id)) {
+            received[k].set(id);
+            loaded++;
+            if (failed[k].get(id)) {
+                // a late answer to a request that was given up
+                failed[k].clear(id);
+                missing--;
+            }
+        }
+    }
+
+    private boolean isDone(int k) {
+        return received[k].cardinality() + failed[k].cardinality() == counts[k];
+    }
+
+    private void reportIfDone(Kind kind) {
+        int k = kind.ordinal();
+        if (kindsReported[k] || !isDone(k)) {
+            return;
+        }
+        kindsReported[k] = true;
+        if (listener != null) {
+            listener.onKindLoaded(kind);
+        }
+    }
+
+    private boolean loadFromCache() {
+        if (cache == null) {
+            return false;
+        }
+        MetadataCache.Entry entry = cache.load(client.getServerHost(), client.getServerPort(),
+                counts[Kind.CHARACTERS.ordinal()], counts[Kind.TRACKS.ordinal()], counts[Kind.AREAS.ordinal()]);
+        if (entry == null) {
+            return false;
+        }
+        log.info("Using cached metadata of {}:{}", client.getServerHost(), client.getServerPort());
+        client.setCharacters(entry.getCharacters());
+        client.setTracks(entry.getTracks());
+        client.setAreas(entry.getAreas());
+        for (Kind kind : Kind.values()) {
+            kindsReported[kind.ordinal()] = true;
+        }
+        if (listener != null) {
+            listener.onProgress(total, total);
+            for (Kind kind : Kind.values()) {
+                listener.onKindLoaded(kind);
+            }
+            listener.onComplete(0);
+        }
+        return true;
+    }
+
+    private void storeToCache() {
+        if (cache == null) {
+            return;
+        }
+        final MetadataCache target = cache;
+        final String host = client.getServerHost();
+        final int port = client.getServerPort();
+        StateSnapshot snapshot = client.getSnapshot();
+        final Character[] characters = snapshot.getCharacters().toArray(new Character[0]);
+        final Track[] tracks = snapshot.getTracks().toArray(new Track[0]);
+        final Area[] areas = snapshot.getAreas().toArray(new Area[0]);
+        client.getScheduler().execute(new Runnable() {
+            @Override
+            public void run() {
+                target.store(host, port, characters, tracks, areas);
+            }
+        });
+    }
+
+    private void fillWindow() {
+        while(running && inFlight < window.size()) {
+            if (!requestNext()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Sends the next request of the next kind that still has something to request.
+     * @return false if everything has been requested
+     */
+    private boolean requestNext() {
+        Kind[] kinds = Kind.values();
+        for (int i = 0; i < kinds.length; i++) {
+            Kind kind = kinds[(nextKind + i) % kinds.length];
+            int k = kind.ordinal();
+            int id = retry[k].nextSetBit(0);
+            if (id >= 0) {
+                retry[k].clear(id);
+            } else if (nextIds[k] <= counts[k]) {
+                id = nextIds[k];
+                nextIds[k] += kind == Kind.CHARACTERS ? CHARACTERS_PER_REQUEST : 1;
+            } else {
+                continue;
+            }
+            nextKind = (k + 1) % kinds.length;
+            inFlight++;
+            attempts[k][id]++;
+            send(kind, id);
+            return true;
+        }
+        return false;
+    }
+
+    private void send(final Kind kind, final int id) {
+        // the loader repeats timed out requests itself, after the window has reacted to the timeout
+        long timeoutMillis = window.timeoutMillis();
+        final CommandFuture<? extends BaseCommand> future;
+        switch (kind) {
+            case CHARACTERS:
+                future = client.fetchCharacters(id, timeoutMillis, 1);
+                break;
+            case TRACKS:
+                future = client.fetchTrack(id, timeoutMillis, 1);
+                break;
+            default:
+                future = client.fetchArea(id, timeoutMillis, 1);
+                break;
+        }
+        final int requestGeneration = generation;
+        future.addListener(new CommandFuture.Listener<BaseCommand>() {
+            @Override
+            public void onSuccess(BaseCommand answer) {
+                onAnswered(requestGeneration, kind, id, answer, future.getRoundTripNanos());
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                onFailed(requestGeneration, kind, id, cause);
+            }
+        });
+    }
+
+    private void checkComplete() {
+        if (!running || loaded + missing < total) {
+            return;
+        }
+        running = false;
+        if (missing == 0) {
+            storeToCache();
+        }
+        Listener current = listener;
+        listener = null;
+        if (current != null) {
+            current.onComplete(missing);
+        }
+    }
+}
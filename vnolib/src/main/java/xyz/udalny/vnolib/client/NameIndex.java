@@ -0,0 +1,220 @@
+package xyz.udalny.vnolib.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Case-insensitive index of the ids of areas, characters or tracks by name, kept up to date by {@link StateStore}
+ * as they arrive; the entries themselves are looked up in a {@link StateSnapshot}.
+ * <p>
+ * One normalized name is kept per id, and one sorted array holds a number for every word of every name:
+ * the id and where the word starts. Lookups are binary searches over that array comparing the names
+ * in place, so "pur" finds "Objection - Pursuit" without a string per word. The array is rebuilt on the
+ * first lookup after a change, which during a load means once, and published for lock-free reads.
+ * Writes come from the store only.
+ */
+public class NameIndex {
+
+    private static final class Table {
+
+        static final Table EMPTY = new Table(new String[1], new long[0]);
+
+        // normalized name by id, null if none
+        final String[] names;
+        // id << 32 | start of the word, sorted by the rest of the name from there,
+        // the whole name before later words equal to it, then by id
+        final long[] words;
+
+        Table(String[] names, long[] words) {
+            this.names = names;
+            this.words = words;
+        }
+    }
+
+    private String[] names = new String[1];
+    private volatile boolean dirty = false;
+    private volatile Table table = Table.EMPTY;
+
+    /**
+     * @return the lowest id among those named so, or 0
+     */
+    public int get(String name) {
+        if (name == null) {
+            return 0;
+        }
+        String key = normalize(name);
+        Table current = table();
+        for (int i = lowerBound(current, key); i < current.words.length; i++) {
+            long word = current.words[i];
+            if (!startsWith(current, word, key) || suffixLength(current, word) != key.length()) {
+                break;
+            }
+            if (startOf(word) == 0) {
+                return idOf(word);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return ids of entries having a word that starts with the prefix, ascending
+     */
+    public int[] find(String prefix) {
+        String key = normalize(prefix);
+        if (key.isEmpty()) {
+            return new int[0];
+        }
+        Table current = table();
+        BitSet found = new BitSet();
+        for (int i = lowerBound(current, key); i < current.words.length && startsWith(current, current.words[i], key); i++) {
+            found.set(idOf(current.words[i]));
+        }
+        int[] ids = new int[found.cardinality()];
+        for (int i = 0, id = found.nextSetBit(0); id >= 0; i++, id = found.nextSetBit(id + 1)) {
+            ids[i] = id;
+        }
+        return ids;
+    }
+
+    synchronized void add(String name, int id) {
+        if (name == null) {
+            return;
+        }
+        if (id >= names.length) {
+            names = Arrays.copyOf(names, Math.max(id + 1, names.length * 2));
+        }
+        names[id] = normalize(name);
+        dirty = true;
+    }
+
+    synchronized void remove(String name, int id) {
+        if (name == null || id >= names.length || names[id] == null || !names[id].equals(normalize(name))) {
+            return;
+        }
+        names[id] = null;
+        dirty = true;
+    }
+
+    void replace(String oldName, String name, int id) {
+        if (oldName != null && oldName.equals(name)) {
+            return;
+        }
+        remove(oldName, id);
+        add(name, id);
+    }
+
+    synchronized void clear() {
+        names = new String[1];
+        dirty = false;
+        table = Table.EMPTY;
+    }
+
+    private Table table() {
+        if (dirty) {
+            synchronized (this) {
+                if (dirty) {
+                    table = build(names.clone());
+                    dirty = false;
+                }
+            }
+        }
+        return table;
+    }
+
+    private static Table build(String[] names) {
+        List<Long> words = new ArrayList<>();
+        for (int id = 0; id < names.length; id++) {
+            String name = names[id];
+            if (name == null) {
+                continue;
+            }
+            boolean inWord = false;
+            for (int i = 0; i < name.length(); i++) {
+                boolean wordChar = Character.isLetterOrDigit(name.charAt(i));
+                if (wordChar && !inWord || i == 0) {
+                    words.add((long) id << 32 | i);
+                }
+                inWord = wordChar;
+            }
+        }
+        final Table unsorted = new Table(names, null);
+        Collections.sort(words, new Comparator<Long>() {
+            @Override
+            public int compare(Long a, Long b) {
+                return compareWords(unsorted, a, b);
+            }
+        });
+        long[] sorted = new long[words.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = words.get(i);
+        }
+        return new Table(names, sorted);
+    }
+
+    private static int compareWords(Table table, long a, long b) {
+        int order = compareText(table, a, table.names[idOf(b)], startOf(b));
+        if (order != 0) {
+            return order;
+        }
+        boolean wholeA = startOf(a) == 0;
+        boolean wholeB = startOf(b) == 0;
+        if (wholeA != wholeB) {
+            return wholeA ? -1 : 1;
+        }
+        return Integer.compare(idOf(a), idOf(b));
+    }
+
+    // compares the rest of the name of the word with text from the offset on
+    private static int compareText(Table table, long word, String text, int offset) {
+        String name = table.names[idOf(word)];
+        int start = startOf(word);
+        int length = Math.min(name.length() - start, text.length() - offset);
+        for (int i = 0; i < length; i++) {
+            int order = name.charAt(start + i) - text.charAt(offset + i);
+            if (order != 0) {
+                return order;
+            }
+        }
+        return (name.length() - start) - (text.length() - offset);
+    }
+
+    // first word not ordered before the key
+    private static int lowerBound(Table table, String key) {
+        int low = 0;
+        int high = table.words.length;
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareText(table, table.words[middle], key, 0) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static boolean startsWith(Table table, long word, String prefix) {
+        return table.names[idOf(word)].startsWith(prefix, startOf(word));
+    }
+
+    private static int suffixLength(Table table, long word) {
+        return table.names[idOf(word)].length() - startOf(word);
+    }
+
+    private static int idOf(long word) {
+        return (int) (word >>> 32);
+    }
+
+    private static int startOf(long word) {
+        return (int) word;
+    }
+
+    private static String normalize(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+}
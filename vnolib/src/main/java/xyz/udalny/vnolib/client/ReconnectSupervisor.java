@@ -0,0 +1,337 @@
+package xyz.udalny.vnolib.client;
+
+import xyz.udalny.vnolib.command.servercommands.AllowedCommand;
+import xyz.udalny.vnolib.command.servercommands.PCCommand;
+import xyz.udalny.vnolib.connection.ServerConnection;
+import xyz.udalny.vnolib.exception.CharacterTakenException;
+import xyz.udalny.vnolib.exception.ConnectionException;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Connects to the server again when the connection is lost, e.g. on a switch between mobile networks,
+ * and puts the session back as it was: the same character in the same area.
+ * <p>
+ * Attempts are spaced by a {@link Backoff}, the first one comes within a fraction of a second.
+ * The lists of areas, characters and tracks are kept if the server announces the same numbers in PC,
+ * so a resumed session sends one Req and one ARC instead of loading everything again. Otherwise the old ids
+ * of the character and the area may mean something else, and the supervisor gives up on a working connection
+ * with the lists emptied, leaving it to the user to join as usual.
+ * An attempt connects on a thread of its own, waiting at most the resume timeout, so that a network
+ * swallowing the connect does not hold up the client scheduler and the request timeouts on it;
+ * everything else runs on the scheduler and the command handler thread.
+ */
+@Slf4j
+public class ReconnectSupervisor implements ServerConnection.LostListener {
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 10;
+    // from connecting to PC
+    public static final long DEFAULT_RESUME_TIMEOUT_MILLIS = 5000;
+
+    public interface Listener {
+
+        void onConnectionLost();
+
+        /**
+         * @param attempt starts from 1
+         */
+        void onReconnecting(int attempt, long delayMillis);
+
+        void onResumed();
+
+        /**
+         * The connection or the session could not be restored, e.g. the character has been taken meanwhile
+         * or the server lists changed.
+         */
+        void onGaveUp(Throwable cause);
+    }
+
+    private final Client client;
+    private final ScheduledExecutorService scheduler;
+    // one attempt at a time, the thread goes away when idle
+    private final ExecutorService connector = new ThreadPoolExecutor(0, 1, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "vnolib-reconnect");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private Backoff backoff = new Backoff();
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private long resumeTimeoutMillis = DEFAULT_RESUME_TIMEOUT_MILLIS;
+    private boolean enabled = true;
+
+    private Listener listener;
+    private boolean running = false;
+    // tasks and answers of an attempt that has been given up are ignored
+    private int generation;
+    private ScheduledFuture<?> timer;
+    private Subscription serverInfo;
+
+    public ReconnectSupervisor(Client client, ScheduledExecutorService scheduler) {
+        this.client = client;
+        this.scheduler = scheduler;
+    }
+
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public synchronized void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            stop();
+        }
+    }
+
+    public synchronized void setBackoff(Backoff backoff) {
+        this.backoff = backoff;
+    }
+
+    public synchronized void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public synchronized void setResumeTimeoutMillis(long resumeTimeoutMillis) {
+        this.resumeTimeoutMillis = resumeTimeoutMillis;
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void onConnectionLost(final ServerConnection connection) {
+        final int current;
+        Listener toNotify;
+        synchronized (this) {
+            if (!enabled) {
+                return;
+            }
+            if (running) {
+                // the connection of an attempt failed before the session was back
+                final int failed = generation;
+                scheduler.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        retry(failed, new ConnectionException("Connection lost again"));
+                    }
+                });
+                return;
+            }
+            running = true;
+            current = ++generation;
+            backoff.reset();
+            toNotify = listener;
+        }
+        log.warn("Lost connection to {}:{}", connection.getHost(), connection.getPort());
+        if (toNotify != null) {
+            toNotify.onConnectionLost();
+        }
+        // the reader or the selector thread must not wait for the lost connection to close
+        scheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                client.closeLostConnection(connection);
+                retry(current, null);
+            }
+        });
+    }
+
+    /**
+     * Gives up reconnecting, e.g. because the user left the server.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        generation++;
+        cancelWaiting();
+    }
+
+    private void attempt(int attemptGeneration) {
+        int connectTimeoutMillis;
+        synchronized (this) {
+            if (attemptGeneration != generation) {
+                return;
+            }
+            connectTimeoutMillis = (int) resumeTimeoutMillis;
+            // PC is handled before it is published, so the lists are settled when it arrives here
+            serverInfo = client.subscribeToCommand(PCCommand.class, new ServerInfoListener(attemptGeneration));
+            timer = scheduler.schedule(new Timeout(attemptGeneration), resumeTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        try {
+            client.reconnectToServer(connectTimeoutMillis);
+        } catch (IOException ex) {
+            log.warn("Reconnect failed: {}", ex.toString());
+            retry(attemptGeneration, ex);
+        }
+    }
+
+    private void onServerInfo(final int attemptGeneration) {
+        synchronized (this) {
+            if (attemptGeneration != generation) {
+                return;
+            }
+            cancelWaiting();
+        }
+        if (client.listsChanged()) {
+            giveUp(attemptGeneration, new ConnectionException("Server lists changed"));
+            return;
+        }
+        CommandFuture<AllowedCommand> picked = client.resumeSession();
+        if (picked == null) {
+            resumed(attemptGeneration);
+            return;
+        }
+        picked.addListener(new CommandFuture.Listener<AllowedCommand>() {
+            @Override
+            public void onSuccess(AllowedCommand result) {
+                client.returnToArea();
+                resumed(attemptGeneration);
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                if (cause instanceof CharacterTakenException) {
+                    giveUp(attemptGeneration, cause);
+                } else {
+                    retry(attemptGeneration, cause);
+                }
+            }
+        });
+    }
+
+    private void resumed(int attemptGeneration) {
+        Listener toNotify;
+        synchronized (this) {
+            if (attemptGeneration != generation) {
+                return;
+            }
+            running = false;
+            toNotify = listener;
+        }
+        log.info("Session resumed");
+        if (toNotify != null) {
+            toNotify.onResumed();
+        }
+    }
+
+    /**
+     * Schedules the next attempt, dropping the connection of the failed one.
+     */
+    private void retry(int attemptGeneration, Throwable cause) {
+        final int next;
+        long delayMillis;
+        int attempt;
+        Listener toNotify;
+        synchronized (this) {
+            if (attemptGeneration != generation) {
+                return;
+            }
+            if (backoff.getAttempts() >= maxAttempts) {
+                next = -1;
+                delayMillis = 0;
+                attempt = 0;
+                toNotify = null;
+            } else {
+                cancelWaiting();
+                next = ++generation;
+                delayMillis = backoff.nextDelayMillis();
+                attempt = backoff.getAttempts();
+                toNotify = listener;
+                timer = scheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        connector.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                attempt(next);
+                            }
+                        });
+                    }
+                }, delayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (next == -1) {
+            client.dropServerConnection();
+            giveUp(attemptGeneration, cause);
+            return;
+        }
+        if (cause != null) {
+            client.dropServerConnection();
+        }
+        if (toNotify != null) {
+            toNotify.onReconnecting(attempt, delayMillis);
+        }
+    }
+
+    private void giveUp(int attemptGeneration, Throwable cause) {
+        Listener toNotify;
+        synchronized (this) {
+            if (attemptGeneration != generation) {
+                return;
+            }
+            running = false;
+            generation++;
+            cancelWaiting();
+            toNotify = listener;
+        }
+        log.warn("Giving up reconnecting: {}", String.valueOf(cause));
+        if (toNotify != null) {
+            toNotify.onGaveUp(cause);
+        }
+    }
+
+    private void cancelWaiting() {
+        if (timer != null) {
+            timer.cancel(false);
+            timer = null;
+        }
+        if (serverInfo != null) {
+            serverInfo.unsubscribe();
+            serverInfo = null;
+        }
+    }
+
+    private final class ServerInfoListener implements CommandListener<PCCommand> {
+
+        private final int attemptGeneration;
+
+        ServerInfoListener(int attemptGeneration) {
+            this.attemptGeneration = attemptGeneration;
+        }
+
+        @Override
+        public void onCommand(PCCommand command) {
+            onServerInfo(attemptGeneration);
+        }
+    }
+
+    private final class Timeout implements Runnable {
+
+        private final int attemptGeneration;
+
+        Timeout(int attemptGeneration) {
+            this.attemptGeneration = attemptGeneration;
+        }
+
+        @Override
+        public void run() {
+            retry(attemptGeneration, new ConnectionException("No PC from the server"));
+        }
+    }
+}
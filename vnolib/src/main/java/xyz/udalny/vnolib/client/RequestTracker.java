@@ -0,0 +1,241 @@
+package xyz.udalny.vnolib.client;
+
+import xyz.udalny.vnolib.command.BaseCommand;
+import xyz.udalny.vnolib.connection.ServerConnection;
+import xyz.udalny.vnolib.exception.ConnectionException;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Matches answers of the server to the requests they answer.
+ * A request is identified by its type and an id (character, track, area or server index).
+ * Sending a request that is already in flight returns the future of the first one instead of sending it again.
+ * A request that is not answered in time is sent again until it runs out of attempts, then its future fails
+ * with a {@link TimeoutException}.
+ * <p>
+ * Answers are fed from the {@code handle} methods of the answering commands.
+ */
+@Slf4j
+public class RequestTracker {
+
+    public static final long DEFAULT_TIMEOUT_MILLIS = 5000;
+    public static final int DEFAULT_ATTEMPTS = 3;
+
+    private static final class Key {
+
+        final Class<? extends BaseCommand> requestType;
+        final int id;
+
+        Key(Class<? extends BaseCommand> requestType, int id) {
+            this.requestType = requestType;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return requestType == other.requestType && id == other.id;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * requestType.hashCode() + id;
+        }
+
+        @Override
+        public String toString() {
+            return requestType.getSimpleName() + "#" + id;
+        }
+    }
+
+    private static final class Entry {
+
+        final Key key;
+        final ServerConnection connection;
+        final BaseCommand request;
+        final CommandFuture<BaseCommand> future;
+        final long timeoutMillis;
+        final long sentAtNanos;
+        int attemptsLeft;
+        boolean resent = false;
+        ScheduledFuture<?> timer;
+
+        Entry(Key key, ServerConnection connection, BaseCommand request, long timeoutMillis, int attempts) {
+            this.key = key;
+            this.connection = connection;
+            this.request = request;
+            this.future = new CommandFuture<>();
+            this.timeoutMillis = timeoutMillis;
+            this.sentAtNanos = System.nanoTime();
+            this.attemptsLeft = attempts;
+        }
+
+        boolean complete(BaseCommand response) {
+            // an answer to a request sent twice can not tell which one it answers
+            future.setRoundTripNanos(resent ? -1 : System.nanoTime() - sentAtNanos);
+            return future.complete(response);
+        }
+    }
+
+    private final ScheduledExecutorService scheduler;
+
+    // in the order the requests were sent, so that answers without an id match the oldest request
+    private final Map<Key, Entry> pending = new LinkedHashMap<>();
+
+    public RequestTracker(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public <T extends BaseCommand> CommandFuture<T> request(ServerConnection connection, BaseCommand request, int id) {
+        return request(connection, request, id, DEFAULT_TIMEOUT_MILLIS, DEFAULT_ATTEMPTS);
+    }
+
+    /**
+     * Sends the request unless an identical one is already waiting for its answer.
+     * @param attempts how many times the request is sent at most, 1 for no retries
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends BaseCommand> CommandFuture<T> request(ServerConnection connection, BaseCommand request, int id,
+                                                            long timeoutMillis, int attempts) {
+        Key key = new Key(request.getClass(), id);
+        Entry entry;
+        Entry displaced;
+        synchronized (this) {
+            Entry existing = pending.get(key);
+            if (existing != null && existing.connection == connection) {
+                return (CommandFuture<T>) (CommandFuture<?>) existing.future;
+            }
+            // the same request on another connection, which can no longer answer it here
+            displaced = remove(existing);
+            entry = new Entry(key, connection, request, timeoutMillis, Math.max(1, attempts));
+            pending.put(key, entry);
+            schedule(entry);
+        }
+        if (displaced != null) {
+            displaced.future.fail(new ConnectionException(String.format("%s was sent again on another connection", key)));
+        }
+        connection.sendCommand(request);
+        return (CommandFuture<T>) (CommandFuture<?>) entry.future;
+    }
+
+    /**
+     * Completes the request with the given type and id.
+     * @return false if no such request is in flight, e.g. it already timed out
+     */
+    public boolean onResponse(Class<? extends BaseCommand> requestType, int id, BaseCommand response) {
+        Entry entry;
+        synchronized (this) {
+            entry = remove(pending.get(new Key(requestType, id)));
+        }
+        return entry != null && entry.complete(response);
+    }
+
+    /**
+     * Completes the oldest request of the given type, for answers that do not repeat the id.
+     */
+    public boolean onResponse(Class<? extends BaseCommand> requestType, BaseCommand response) {
+        Entry entry;
+        synchronized (this) {
+            entry = remove(oldest(requestType));
+        }
+        return entry != null && entry.complete(response);
+    }
+
+    /**
+     * Fails the oldest request of the given type, for answers that refuse the request.
+     */
+    public boolean onFailure(Class<? extends BaseCommand> requestType, Throwable cause) {
+        Entry entry;
+        synchronized (this) {
+            entry = remove(oldest(requestType));
+        }
+        return entry != null && entry.future.fail(cause);
+    }
+
+    /**
+     * Fails every request sent through the connection, e.g. when it is closed.
+     */
+    public void failAll(ServerConnection connection, Throwable cause) {
+        List<Entry> failed = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Entry> iterator = pending.values().iterator();
+            while(iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.connection == connection) {
+                    iterator.remove();
+                    entry.timer.cancel(false);
+                    failed.add(entry);
+                }
+            }
+        }
+        for (Entry entry : failed) {
+            entry.future.fail(cause);
+        }
+    }
+
+    public synchronized int getInFlight() {
+        return pending.size();
+    }
+
+    private Entry oldest(Class<? extends BaseCommand> requestType) {
+        for (Entry entry : pending.values()) {
+            if (entry.key.requestType == requestType) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private Entry remove(Entry entry) {
+        if (entry != null) {
+            pending.remove(entry.key);
+            entry.timer.cancel(false);
+        }
+        return entry;
+    }
+
+    private void schedule(final Entry entry) {
+        entry.timer = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                onTimeout(entry);
+            }
+        }, entry.timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void onTimeout(Entry entry) {
+        boolean resend;
+        synchronized (this) {
+            if (pending.get(entry.key) != entry) {
+                return;
+            }
+            entry.attemptsLeft--;
+            resend = entry.attemptsLeft > 0 && !entry.future.isDone();
+            if (resend) {
+                entry.resent = true;
+                schedule(entry);
+            } else {
+                pending.remove(entry.key);
+            }
+        }
+        if (resend) {
+            log.debug("No answer to {}, sending it again", entry.key);
+            entry.connection.sendCommand(entry.request);
+        } else {
+            entry.future.fail(new TimeoutException(String.format("No answer to %s", entry.key)));
+        }
+    }
+}
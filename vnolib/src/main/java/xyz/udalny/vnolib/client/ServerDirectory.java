@@ -0,0 +1,211 @@
+package xyz.udalny.vnolib.client;
+
+import xyz.udalny.vnolib.client.model.Server;
+import xyz.udalny.vnolib.command.ascommands.SDPCommand;
+
+import java.util.BitSet;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Downloads the list of published servers from the master.
+ * Keeps several RPS requests in flight instead of asking for the next server only after
+ * the previous SDP came back. The number of requests in flight is controlled by an {@link AimdWindow}.
+ * Master does not answer RPS past the end of the list, so the list is considered complete
+ * when no SDP arrives for {@code endOfListTimeoutMillis}, or the request timeout if it is longer.
+ */
+@Slf4j
+public class ServerDirectory {
+
+    public static final long DEFAULT_END_OF_LIST_TIMEOUT_MILLIS = 1500;
+
+    // gaps below the last received index are requested again this many times before giving up
+    private static final int MAX_GAP_RETRIES = 1;
+
+    public interface Listener {
+
+        /**
+         * Called for every SDP in the order they arrive, not necessarily by index.
+         */
+        void onServer(Server server);
+
+        /**
+         * Called once the end of the list is detected.
+         * @param count number of servers received
+         */
+        void onComplete(int count);
+    }
+
+    private final Client client;
+    private final ScheduledExecutorService scheduler;
+
+    private final AimdWindow window = new AimdWindow();
+    private long endOfListTimeoutMillis = DEFAULT_END_OF_LIST_TIMEOUT_MILLIS;
+
+    private Listener listener;
+    private boolean running = false;
+    // answers to requests of a previous start are ignored
+    private int generation;
+
+    private final BitSet received = new BitSet();
+    private int nextIndex;
+    private int inFlight;
+    private int gapRetries;
+    private ScheduledFuture<?> endOfListTimer;
+    // a timer that was cancelled too late to stop it must not end a newer wait
+    private int timerGeneration;
+
+    public ServerDirectory(Client client, ScheduledExecutorService scheduler) {
+        this.client = client;
+        this.scheduler = scheduler;
+    }
+
+    public AimdWindow getWindow() {
+        return window;
+    }
+
+    public synchronized void setEndOfListTimeoutMillis(long endOfListTimeoutMillis) {
+        this.endOfListTimeoutMillis = endOfListTimeoutMillis;
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Starts downloading the list from the first server, cancelling a download already in progress.
+     * @param listener may be null
+     */
+    public synchronized void start(Listener listener) {
+        cancelTimer();
+        this.listener = listener;
+        this.running = true;
+        this.generation++;
+        this.received.clear();
+        this.nextIndex = 0;
+        this.inFlight = 0;
+        this.gapRetries = 0;
+        fillWindow();
+        restartTimer();
+    }
+
+    public synchronized void stop() {
+        cancelTimer();
+        running = false;
+        listener = null;
+    }
+
+    private synchronized void onServer(int generation, SDPCommand answer, long rttNanos) {
+        if (!running || generation != this.generation) {
+            return;
+        }
+        inFlight--;
+        window.onAnswer(rttNanos);
+        if (received.get(answer.getIndex())) {
+            return;
+        }
+        received.set(answer.getIndex());
+        if (listener != null) {
+            listener.onServer(answer.toServer());
+        }
+        fillWindow();
+        restartTimer();
+    }
+
+    private synchronized void onFailed(int generation, int index, Throwable cause) {
+        if (!running || generation != this.generation) {
+            return;
+        }
+        inFlight--;
+        // requests past the end of the list are never answered, only a gap means the master is overloaded
+        if (cause instanceof TimeoutException && index < received.length()) {
+            window.onTimeout();
+        }
+    }
+
+    private synchronized void onEndOfListTimeout(int generation) {
+        if (!running || generation != timerGeneration) {
+            return;
+        }
+        int count = received.length();
+        int missing = received.nextClearBit(0);
+        if (missing < count && gapRetries < MAX_GAP_RETRIES) {
+            gapRetries++;
+            for (int i = missing; i < count; i = received.nextClearBit(i + 1)) {
+                request(i);
+            }
+            restartTimer();
+            return;
+        }
+        finish();
+    }
+
+    /**
+     * Requests the next servers while the window allows, but never further than
+     * a window past the last received server: past the end of the list nothing comes back.
+     */
+    private void fillWindow() {
+        int limit = received.length() + window.size();
+        while(running && inFlight < window.size() && nextIndex < limit) {
+            request(nextIndex);
+            nextIndex++;
+        }
+    }
+
+    private void request(final int index) {
+        if (!client.connectedToMaster()) {
+            log.warn("Lost connection to master while requesting servers");
+            finish();
+            return;
+        }
+        inFlight++;
+        final int requestGeneration = generation;
+        final CommandFuture<SDPCommand> future = client.fetchServer(index, window.timeoutMillis(), 1);
+        future.addListener(new CommandFuture.Listener<SDPCommand>() {
+            @Override
+            public void onSuccess(SDPCommand answer) {
+                onServer(requestGeneration, answer, future.getRoundTripNanos());
+            }
+
+            @Override
+            public void onFailure(Throwable cause) {
+                onFailed(requestGeneration, index, cause);
+            }
+        });
+    }
+
+    private void finish() {
+        if (!running) {
+            return;
+        }
+        cancelTimer();
+        running = false;
+        Listener current = listener;
+        listener = null;
+        if (current != null) {
+            current.onComplete(received.cardinality());
+        }
+    }
+
+    private void restartTimer() {
+        cancelTimer();
+        final int generation = ++timerGeneration;
+        endOfListTimer = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                onEndOfListTimeout(generation);
+            }
+        }, Math.max(endOfListTimeoutMillis, window.timeoutMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelTimer() {
+        if (endOfListTimer != null) {
+            endOfListTimer.cancel(false);
+            endOfListTimer = null;
+        }
+    }
+}
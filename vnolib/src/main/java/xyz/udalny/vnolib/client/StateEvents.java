@@ -0,0 +1,127 @@
+package xyz.udalny.vnolib.client;
+
+import xyz.udalny.vnolib.client.model.Area;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Passes state changes on to the {@link StateListener}s of the client, each on its {@link DeliveryLane}.
+ */
+@Slf4j
+class StateEvents extends StateListener {
+
+    private final CommandPublisher publisher;
+    private final CopyOnWriteArrayList<Registration> registrations = new CopyOnWriteArrayList<>();
+
+    private final class Registration implements Subscription {
+
+        final StateListener listener;
+        // null to call on the changing thread
+        final Executor executor;
+        volatile boolean active = true;
+
+        Registration(StateListener listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+
+        @Override
+        public void unsubscribe() {
+            active = false;
+            registrations.remove(this);
+        }
+
+        @Override
+        public boolean isActive() {
+            return active;
+        }
+    }
+
+    /**
+     * @param publisher gives the executors of the lanes
+     */
+    StateEvents(CommandPublisher publisher) {
+        this.publisher = publisher;
+    }
+
+    Subscription add(StateListener listener, DeliveryLane lane) {
+        Registration registration = new Registration(listener, publisher.newLaneExecutor(lane));
+        registrations.add(registration);
+        return registration;
+    }
+
+    @Override
+    public void onAreaPopulationChanged(final int areaId, final int oldPopulation, final int newPopulation) {
+        for (final Registration registration : registrations) {
+            dispatch(registration, new Runnable() {
+                @Override
+                public void run() {
+                    registration.listener.onAreaPopulationChanged(areaId, oldPopulation, newPopulation);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void onCharacterTakenChanged(final int charId, final int oldTaken, final int newTaken) {
+        for (final Registration registration : registrations) {
+            dispatch(registration, new Runnable() {
+                @Override
+                public void run() {
+                    registration.listener.onCharacterTakenChanged(charId, oldTaken, newTaken);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void onAreaSwitched(final Area oldArea, final Area newArea) {
+        for (final Registration registration : registrations) {
+            dispatch(registration, new Runnable() {
+                @Override
+                public void run() {
+                    registration.listener.onAreaSwitched(oldArea, newArea);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void onTracksUpdated(final int firstId, final int count) {
+        for (final Registration registration : registrations) {
+            dispatch(registration, new Runnable() {
+                @Override
+                public void run() {
+                    registration.listener.onTracksUpdated(firstId, count);
+                }
+            });
+        }
+    }
+
+    private static void dispatch(final Registration registration, final Runnable call) {
+        if (registration.executor == null) {
+            call(registration, call);
+            return;
+        }
+        registration.executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                call(registration, call);
+            }
+        });
+    }
+
+    private static void call(Registration registration, Runnable call) {
+        if (!registration.active) {
+            return;
+        }
+        try {
+            call.run();
+        } catch (Exception ex) {
+            log.error("When publishing state change: ", ex);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package xyz.udalny.vnolib.client;
+
+import xyz.udalny.vnolib.client.model.Area;
+
+/**
+ * Told what changed in the client's state, so a screen can update the rows that changed instead of the whole list.
+ * Ids start from 1, i.e. the index of an entry in the lists of {@link StateSnapshot} is id - 1.
+ * Every change comes after the snapshot that contains it, override the ones of interest.
+ */
+public abstract class StateListener {
+
+    /**
+     * Also called when the area is received again with another population.
+     */
+    public void onAreaPopulationChanged(int areaId, int oldPopulation, int newPopulation) {
+    }
+
+    public void onCharacterTakenChanged(int charId, int oldTaken, int newTaken) {
+    }
+
+    /**
+     * @param oldArea null if the client was in no area yet
+     */
+    public void onAreaSwitched(Area oldArea, Area newArea) {
+    }
+
+    /**
+     * Tracks firstId to firstId + count - 1 were received; after a new track list firstId is 1 and count its size.
+     */
+    public void onTracksUpdated(int firstId, int count) {
+    }
+}
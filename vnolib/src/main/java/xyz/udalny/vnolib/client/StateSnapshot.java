@@ -0,0 +1,439 @@
+package xyz.udalny.vnolib.client;
+
+import xyz.udalny.vnolib.client.model.Area;
+import xyz.udalny.vnolib.client.model.Character;
+import xyz.udalny.vnolib.client.model.Item;
+import xyz.udalny.vnolib.client.model.Track;
+import xyz.udalny.vnolib.util.StringPool;
+
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * Immutable view of the lists of the current server.
+ * Ids of areas, characters, items and tracks start from 1, slots not received yet are null.
+ * Changes are published as a new snapshot with a higher version, so a snapshot can be read from any thread without locking.
+ * <p>
+ * The lists are kept as columns, i.e. one array per field, with the strings that repeat across a list pooled:
+ * area backgrounds and arguments, and track locations. Names are unique and are kept as received.
+ * A model object is made the first time it is asked for and kept with its columns, so it is shared by the following
+ * snapshots until that entry changes, and only the entries actually looked at cost an object.
+ * <p>
+ * Changes are made through an {@link Editor}, which copies a column once for any number of changes
+ * published together, and only the columns they touch, e.g. population changes copy one int[].
+ */
+public final class StateSnapshot {
+
+    public static final StateSnapshot EMPTY = new StateSnapshot(0,
+            AreaColumns.of(new Area[0]), CharacterColumns.of(new Character[0]), new boolean[0], TrackColumns.of(new Track[0]));
+
+    private final long version;
+
+    private final AreaColumns areas;
+    private final CharacterColumns characters;
+    private final boolean[] items;
+    private final TrackColumns tracks;
+
+    private final List<Area> areaList = new AbstractList<Area>() {
+        @Override
+        public Area get(int index) {
+            checkIndex(index, size());
+            return areas.get(index);
+        }
+
+        @Override
+        public int size() {
+            return areas.size();
+        }
+    };
+
+    private final List<Character> characterList = new AbstractList<Character>() {
+        @Override
+        public Character get(int index) {
+            checkIndex(index, size());
+            return characters.get(index);
+        }
+
+        @Override
+        public int size() {
+            return characters.size();
+        }
+    };
+
+    private final List<Item> itemList = new AbstractList<Item>() {
+        @Override
+        public Item get(int index) {
+            checkIndex(index, size());
+            return items[index] ? new Item(index + 1) : null;
+        }
+
+        @Override
+        public int size() {
+            return items.length;
+        }
+    };
+
+    private final List<Track> trackList = new AbstractList<Track>() {
+        @Override
+        public Track get(int index) {
+            checkIndex(index, size());
+            return tracks.get(index);
+        }
+
+        @Override
+        public int size() {
+            return tracks.size();
+        }
+    };
+
+    private StateSnapshot(long version, AreaColumns areas, CharacterColumns characters, boolean[] items, TrackColumns tracks) {
+        this.version = version;
+        this.areas = areas;
+        this.characters = characters;
+        this.items = items;
+        this.tracks = tracks;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<Area> getAreas() {
+        return areaList;
+    }
+
+    /**
+     * @return null if there is no such area or it has not been received yet
+     */
+    public Area getArea(int id) {
+        return id < 1 || id > areas.size() ? null : areas.get(id - 1);
+    }
+
+    public List<Character> getCharacters() {
+        return characterList;
+    }
+
+    public Character getCharacter(int id) {
+        return id < 1 || id > characters.size() ? null : characters.get(id - 1);
+    }
+
+    public List<Item> getItems() {
+        return itemList;
+    }
+
+    public Item getItem(int id) {
+        return id < 1 || id > items.length || !items[id - 1] ? null : new Item(id);
+    }
+
+    public List<Track> getTracks() {
+        return trackList;
+    }
+
+    public Track getTrack(int id) {
+        return id < 1 || id > tracks.size() ? null : tracks.get(id - 1);
+    }
+
+    /**
+     * Changes the columns of the last snapshot it made and makes the next one. A column is copied by its first change
+     * after {@link #publish()}, later changes before the next publish are made in place. Belongs to one writer.
+     */
+    static final class Editor {
+
+        private long version;
+        private AreaColumns areas;
+        private CharacterColumns characters;
+        private boolean[] items;
+        private TrackColumns tracks;
+
+        // whether the column has been copied since the last publish and may be changed in place
+        private boolean areasOwned;
+        private boolean populationsOwned;
+        private boolean charactersOwned;
+        private boolean itemsOwned;
+        private boolean tracksOwned;
+
+        Editor(StateSnapshot snapshot) {
+            this.version = snapshot.version;
+            this.areas = snapshot.areas;
+            this.characters = snapshot.characters;
+            this.items = snapshot.items;
+            this.tracks = snapshot.tracks;
+        }
+
+        int areaCount() {
+            return areas.size();
+        }
+
+        Area getArea(int id) {
+            return id < 1 || id > areas.size() ? null : areas.get(id - 1);
+        }
+
+        void setAreas(Area[] areas) {
+            this.areas = AreaColumns.of(areas);
+            areasOwned = true;
+            populationsOwned = true;
+        }
+
+        void setArea(Area area) {
+            if (!areasOwned) {
+                areas = areas.copy();
+                areasOwned = true;
+                populationsOwned = true;
+            }
+            areas.set(area.getLocationId() - 1, area);
+        }
+
+        void setAreaPopulation(int id, int population) {
+            if (!populationsOwned) {
+                areas = areas.withPopulations(areas.populations.clone());
+                populationsOwned = true;
+            }
+            areas.setPopulation(id - 1, population);
+        }
+
+        int characterCount() {
+            return characters.size();
+        }
+
+        Character getCharacter(int id) {
+            return id < 1 || id > characters.size() ? null : characters.get(id - 1);
+        }
+
+        void setCharacters(Character[] characters) {
+            this.characters = CharacterColumns.of(characters);
+            charactersOwned = true;
+        }
+
+        void setCharacter(Character character) {
+            if (!charactersOwned) {
+                characters = characters.copy();
+                charactersOwned = true;
+            }
+            characters.set(character.getCharId() - 1, character);
+        }
+
+        int itemCount() {
+            return items.length;
+        }
+
+        void setItems(Item[] items) {
+            boolean[] present = new boolean[items.length];
+            for (int i = 0; i < items.length; i++) {
+                present[i] = items[i] != null;
+            }
+            this.items = present;
+            itemsOwned = true;
+        }
+
+        void setItem(Item item) {
+            if (!itemsOwned) {
+                items = items.clone();
+                itemsOwned = true;
+            }
+            items[item.getItemId() - 1] = true;
+        }
+
+        int trackCount() {
+            return tracks.size();
+        }
+
+        Track getTrack(int id) {
+            return id < 1 || id > tracks.size() ? null : tracks.get(id - 1);
+        }
+
+        void setTracks(Track[] tracks) {
+            this.tracks = TrackColumns.of(tracks);
+            tracksOwned = true;
+        }
+
+        void setTrack(Track track) {
+            if (!tracksOwned) {
+                tracks = tracks.copy();
+                tracksOwned = true;
+            }
+            tracks.set(track.getTrackId() - 1, track);
+        }
+
+        /**
+         * @return a snapshot of the changes so far, which are not changed any more
+         */
+        StateSnapshot publish() {
+            areasOwned = false;
+            populationsOwned = false;
+            charactersOwned = false;
+            itemsOwned = false;
+            tracksOwned = false;
+            return new StateSnapshot(++version, areas, characters, items, tracks);
+        }
+    }
+
+    private static void checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+    }
+
+    // a null name marks a slot not received yet; the pool is shared by the copies of one list and dropped with it,
+    // values replaced by later answers stay in it until then, so it holds at most every value received for the list.
+    // built holds the model objects made so far; readers fill it racily, which is harmless as the objects are immutable,
+    // and a change in place clears the slot it changes
+    private static final class AreaColumns {
+
+        final StringPool pool;
+        final String[] names;
+        final int[] populations;
+        final String[] backgrounds;
+        final String[] args;
+        final Area[] built;
+
+        AreaColumns(StringPool pool, String[] names, int[] populations, String[] backgrounds, String[] args, Area[] built) {
+            this.pool = pool;
+            this.names = names;
+            this.populations = populations;
+            this.backgrounds = backgrounds;
+            this.args = args;
+            this.built = built;
+        }
+
+        static AreaColumns of(Area[] areas) {
+            int n = areas.length;
+            AreaColumns columns = new AreaColumns(new StringPool(), new String[n], new int[n], new String[n], new String[n], new Area[n]);
+            for (int i = 0; i < n; i++) {
+                if (areas[i] != null) {
+                    columns.set(i, areas[i]);
+                }
+            }
+            return columns;
+        }
+
+        int size() {
+            return names.length;
+        }
+
+        Area get(int index) {
+            Area area = built[index];
+            if (area == null && names[index] != null) {
+                area = new Area(index + 1, names[index], populations[index], backgrounds[index], args[index]);
+                built[index] = area;
+            }
+            return area;
+        }
+
+        AreaColumns copy() {
+            return new AreaColumns(pool, names.clone(), populations.clone(), backgrounds.clone(), args.clone(), built.clone());
+        }
+
+        AreaColumns withPopulations(int[] populations) {
+            return new AreaColumns(pool, names, populations, backgrounds, args, built.clone());
+        }
+
+        void set(int index, Area area) {
+            names[index] = area.getLocationName();
+            populations[index] = area.getLocationPopulation();
+            backgrounds[index] = pool.intern(area.getBackgroundNamePattern());
+            args[index] = pool.intern(area.getArg5());
+            built[index] = null;
+        }
+
+        void setPopulation(int index, int population) {
+            populations[index] = population;
+            built[index] = null;
+        }
+    }
+
+    private static final class CharacterColumns {
+
+        final String[] names;
+        final int[] taken;
+        final Character[] built;
+
+        CharacterColumns(String[] names, int[] taken, Character[] built) {
+            this.names = names;
+            this.taken = taken;
+            this.built = built;
+        }
+
+        static CharacterColumns of(Character[] characters) {
+            int n = characters.length;
+            CharacterColumns columns = new CharacterColumns(new String[n], new int[n], new Character[n]);
+            for (int i = 0; i < n; i++) {
+                if (characters[i] != null) {
+                    columns.set(i, characters[i]);
+                }
+            }
+            return columns;
+        }
+
+        int size() {
+            return names.length;
+        }
+
+        Character get(int index) {
+            Character character = built[index];
+            if (character == null && names[index] != null) {
+                character = new Character(index + 1, names[index], taken[index]);
+                built[index] = character;
+            }
+            return character;
+        }
+
+        CharacterColumns copy() {
+            return new CharacterColumns(names.clone(), taken.clone(), built.clone());
+        }
+
+        void set(int index, Character character) {
+            names[index] = character.getCharName();
+            taken[index] = character.getTaken();
+            built[index] = null;
+        }
+    }
+
+    private static final class TrackColumns {
+
+        final StringPool pool;
+        final String[] names;
+        final String[] locations;
+        final Track[] built;
+
+        TrackColumns(StringPool pool, String[] names, String[] locations, Track[] built) {
+            this.pool = pool;
+            this.names = names;
+            this.locations = locations;
+            this.built = built;
+        }
+
+        static TrackColumns of(Track[] tracks) {
+            int n = tracks.length;
+            TrackColumns columns = new TrackColumns(new StringPool(), new String[n], new String[n], new Track[n]);
+            for (int i = 0; i < n; i++) {
+                if (tracks[i] != null) {
+                    columns.set(i, tracks[i]);
+                }
+            }
+            return columns;
+        }
+
+        int size() {
+            return names.length;
+        }
+
+        Track get(int index) {
+            Track track = built[index];
+            if (track == null && names[index] != null) {
+                track = new Track(index + 1, names[index], locations[index]);
+                built[index] = track;
+            }
+            return track;
+        }
+
+        TrackColumns copy() {
+            return new TrackColumns(pool, names.clone(), locations.clone(), built.clone());
+        }
+
+        void set(int index, Track track) {
+            names[index] = track.getTrackName();
+            locations[index] = pool.intern(track.getTrackLocation());
+            built[index] = null;
+        }
+    }
+}
@@ -0,0 +1,387 @@
+package xyz.udalny.vnolib.client;
+
+import xyz.udalny.vnolib.client.model.Area;
+import xyz.udalny.vnolib.client.model.Character;
+import xyz.udalny.vnolib.client.model.Item;
+import xyz.udalny.vnolib.client.model.Track;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Holds the current {@link StateSnapshot}. Readers take the snapshot without locking,
+ * writers, i.e. the command handler, are serialized and publish a changed copy.
+ * <p>
+ * Publishing copies the changed columns, so a list loaded one answer at a time must not be published per answer.
+ * Between {@link #beginBatch()} and {@link #endBatch()}, which the command handler calls around every run
+ * of commands it handles, changes are collected and published together, at the latest after {@link #BATCH_LIMIT}
+ * of them. A reader asking for the snapshot meanwhile gets the changes so far, so nothing written is ever missed.
+ * <p>
+ * Names of areas, characters and tracks are indexed along the way, see {@link NameIndex},
+ * and the listener is told about the changes once the snapshot containing them is published,
+ * on the writing thread but outside the lock.
+ */
+@Slf4j
+public class StateStore {
+
+    public static final int BATCH_LIMIT = 256;
+
+    private final AtomicReference<StateSnapshot> current = new AtomicReference<>(StateSnapshot.EMPTY);
+    private final StateSnapshot.Editor editor = new StateSnapshot.Editor(StateSnapshot.EMPTY);
+    // the editor holds changes not published yet
+    private volatile boolean dirty = false;
+    private boolean batching = false;
+    private int staged;
+
+    private final NameIndex areaNames = new NameIndex();
+    private final NameIndex characterNames = new NameIndex();
+    private final NameIndex trackNames = new NameIndex();
+
+    private final StateListener listener;
+    // changes to tell the listener about on the next publish
+    private final List<Runnable> pendingChanges = new ArrayList<>();
+    // range of received tracks, 0 if none
+    private int tracksFrom;
+    private int tracksTo;
+
+    public StateStore() {
+        this(new StateListener() {
+        });
+    }
+
+    public StateStore(StateListener listener) {
+        this.listener = listener;
+    }
+
+    public StateSnapshot snapshot() {
+        if (dirty) {
+            synchronized (this) {
+                if (dirty) {
+                    current.set(editor.publish());
+                    dirty = false;
+                }
+            }
+        }
+        return current.get();
+    }
+
+    public NameIndex areaNames() {
+        return areaNames;
+    }
+
+    public NameIndex characterNames() {
+        return characterNames;
+    }
+
+    public NameIndex trackNames() {
+        return trackNames;
+    }
+
+    public synchronized void beginBatch() {
+        batching = true;
+    }
+
+    /**
+     * Publishes the changes made since {@link #beginBatch()}.
+     */
+    public void endBatch() {
+        List<Runnable> changes;
+        synchronized (this) {
+            batching = false;
+            changes = publish();
+        }
+        tell(changes);
+    }
+
+    public void setAreas(Area[] areas) {
+        List<Runnable> changes;
+        synchronized (this) {
+            editor.setAreas(areas);
+            staged();
+            areaNames.clear();
+            for (int i = 0; i < areas.length; i++) {
+                if (areas[i] != null) {
+                    areaNames.add(areas[i].getLocationName(), i + 1);
+                }
+            }
+            changes = publishUnlessBatching();
+        }
+        tell(changes);
+    }
+
+    public void addArea(Area area) {
+        List<Runnable> changes;
+        synchronized (this) {
+            stageArea(area);
+            changes = publishUnlessBatching();
+        }
+        tell(changes);
+    }
+
+    /**
+     * Changes several areas with one publish.
+     */
+    public void addAreas(Area... areas) {
+        List<Runnable> changes;
+        synchronized (this) {
+            for (Area area : areas) {
+                stageArea(area);
+            }
+            changes = publishUnlessBatching();
+        }
+        tell(changes);
+    }
+
+    public void changeAreaPopulation(final int areaId, final int newPopulation) {
+        List<Runnable> changes;
+        synchronized (this) {
+            Area area = editor.getArea(areaId);
+            if (area == null) {
+                log.warn("Population of unknown area {}", areaId);
+                return;
+            }
+            editor.setAreaPopulation(areaId, newPopulation);
+            staged();
+            final int oldPopulation = area.getLocationPopulation();
+            if (oldPopulation != newPopulation) {
+                pendingChanges.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onAreaPopulationChanged(areaId, oldPopulation, newPopulation);
+                    }
+                });
+            }
+            changes = publishUnlessBatching();
+        }
+        tell(changes);
+    }
+
+    public void setCharacters(Character[] characters) {
+        List<Runnable> changes;
+        synchronized (this) {
+            editor.setCharacters(characters);
+            staged();
+            characterNames.clear();
+            for (int i = 0; i < characters.length; i++) {
+                if (characters[i] != null) {
+                    characterNames.add(characters[i].getCharName(), i + 1);
+                }
+            }
+            changes = publishUnlessBatching();
+        }
+        tell(changes);
+    }
+
+    public void addCharacter(Character character) {
+        List<Runnable> changes;
+        synchronized (this) {
+            stageCharacter(character);
+            changes = publishUnlessBatching();
+        }
+        tell(changes);
+    }
+
+    /**
+     * Changes several characters with one publish, e.g. those of one CAD.
+     */
+    public void addCharacters(Character... characters) {
+        List<Runnable> changes;
+        synchronized (this) {
+            for (Character character : characters) {
+                stageCharacter(character);
+            }
+            changes = publishUnlessBatching();
+        }
+        tell(changes);
+    }
+
+    public void setItems(Item[] items) {
+        List<Runnable> changes;
+        synchronized (this) {
+            editor.setItems(items);
+            staged();
+            changes = publishUnlessBatching();
+        }
+        tell(changes);
+    }
+
+    public void addItem(Item item) {
+        List<Runnable> changes;
+        synchronized (this) {
+            if (!inRange(item.getItemId(), editor.itemCount(), "item")) {
+                return;
+            }
+            editor.setItem(item);
+            staged();
+            changes = publishUnlessBatching();
+        }
+        tell(changes);
+    }
+
+    public void setTracks(Track[] tracks) {
+        List<Runnable> changes;
+        synchronized (this) {
+            editor.setTracks(tracks);
+            staged();
+            trackNames.clear();
+            for (int i = 0; i < tracks.length; i++) {
+                if (tracks[i] != null) {
+                    trackNames.add(tracks[i].getTrackName(), i + 1);
+                }
+            }
+            // tracks received before belong to the old list
+            tracksFrom = 0;
+            tracksTo = 0;
+            final int count = tracks.length;
+            pendingChanges.add(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onTracksUpdated(1, count);
+                }
+            });
+            changes = publishUnlessBatching();
+        }
+        tell(changes);
+    }
+
+    public void addTrack(Track track) {
+        List<Runnable> changes;
+        synchronized (this) {
+            stageTrack(track);
+            changes = publishUnlessBatching();
+        }
+        tell(changes);
+    }
+
+    /**
+     * Changes several tracks with one publish.
+     */
+    public void addTracks(Track... tracks) {
+        List<Runnable> changes;
+        synchronized (this) {
+            for (Track track : tracks) {
+                stageTrack(track);
+            }
+            changes = publishUnlessBatching();
+        }
+        tell(changes);
+    }
+
+    private void stageArea(Area area) {
+        if (!inRange(area.getLocationId(), editor.areaCount(), "area")) {
+            return;
+        }
+        final int areaId = area.getLocationId();
+        Area old = editor.getArea(areaId);
+        editor.setArea(area);
+        staged();
+        areaNames.replace(old == null ? null : old.getLocationName(), area.getLocationName(), areaId);
+        // e.g. the areas requested again after a reconnect
+        if (old != null && old.getLocationPopulation() != area.getLocationPopulation()) {
+            final int oldPopulation = old.getLocationPopulation();
+            final int newPopulation = area.getLocationPopulation();
+            pendingChanges.add(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onAreaPopulationChanged(areaId, oldPopulation, newPopulation);
+                }
+            });
+        }
+    }
+
+    private void stageCharacter(Character character) {
+        if (!inRange(character.getCharId(), editor.characterCount(), "character")) {
+            return;
+        }
+        final int charId = character.getCharId();
+        Character old = editor.getCharacter(charId);
+        editor.setCharacter(character);
+        staged();
+        characterNames.replace(old == null ? null : old.getCharName(), character.getCharName(), charId);
+        if (old != null && old.getTaken() != character.getTaken()) {
+            final int oldTaken = old.getTaken();
+            final int newTaken = character.getTaken();
+            pendingChanges.add(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onCharacterTakenChanged(charId, oldTaken, newTaken);
+                }
+            });
+        }
+    }
+
+    private void stageTrack(Track track) {
+        int trackId = track.getTrackId();
+        if (!inRange(trackId, editor.trackCount(), "track")) {
+            return;
+        }
+        Track old = editor.getTrack(trackId);
+        editor.setTrack(track);
+        staged();
+        trackNames.replace(old == null ? null : old.getTrackName(), track.getTrackName(), trackId);
+        tracksFrom = tracksFrom == 0 ? trackId : Math.min(tracksFrom, trackId);
+        tracksTo = Math.max(tracksTo, trackId);
+    }
+
+    // before the names are indexed, so a reader finding a new name also finds the change unpublished
+    private void staged() {
+        dirty = true;
+        staged++;
+    }
+
+    private List<Runnable> publishUnlessBatching() {
+        if (!batching || staged >= BATCH_LIMIT) {
+            return publish();
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return the changes to tell the listener about, once out of the lock
+     */
+    private List<Runnable> publish() {
+        if (dirty) {
+            current.set(editor.publish());
+            dirty = false;
+        }
+        staged = 0;
+        if (tracksFrom != 0) {
+            final int firstId = tracksFrom;
+            final int count = tracksTo - tracksFrom + 1;
+            tracksFrom = 0;
+            tracksTo = 0;
+            pendingChanges.add(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onTracksUpdated(firstId, count);
+                }
+            });
+        }
+        if (pendingChanges.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Runnable> changes = new ArrayList<>(pendingChanges);
+        pendingChanges.clear();
+        return changes;
+    }
+
+    // listeners on the inline lane must not run under the lock, they may read or change the store
+    private static void tell(List<Runnable> changes) {
+        for (Runnable change : changes) {
+            change.run();
+        }
+    }
+
+    // a bad id from the server must not kill the command handler
+    private static boolean inRange(int id, int size, String what) {
+        if (id < 1 || id > size) {
+            log.warn("Ignoring {} {}, expected 1..{}", what, id, size);
+            return false;
+        }
+        return true;
+    }
+}
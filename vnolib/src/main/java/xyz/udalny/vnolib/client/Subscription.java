@@ -0,0 +1,17 @@
+package xyz.udalny.vnolib.client;
+
+/**
+ * Handle of one subscription to one command type, returned when subscribing.
+ */
+public interface Subscription {
+
+    /**
+     * Stops delivery, including of commands already waiting on the subscriber's lane. Safe to call more than once.
+     */
+    void unsubscribe();
+
+    /**
+     * @return false once unsubscribed or the subscriber has been garbage collected
+     */
+    boolean isActive();
+}
@@ -3,21 +3,24 @@ package xyz.udalny.vnolib.client.model;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 
+/**
+ * Immutable, a change of population makes a new area.
+ */
 @AllArgsConstructor
 @Getter
 public class Area {
 
-    int locationId;
+    final int locationId;
 
-    String locationName;
+    final String locationName;
 
-    int locationPopulation;
+    final int locationPopulation;
 
-    String backgroundNamePattern;
+    final String backgroundNamePattern;
 
-    String arg5;
+    final String arg5;
 
-    public void setPopulation(int newPopulation) {
-        this.locationPopulation = newPopulation;
+    public Area withPopulation(int newPopulation) {
+        return new Area(locationId, locationName, newPopulation, backgroundNamePattern, arg5);
     }
 }
@@ -6,7 +6,7 @@ import lombok.Getter;
 @AllArgsConstructor
 @Getter
 public class Character {
-    int charId;
-    String charName;
-    int taken;
+    final int charId;
+    final String charName;
+    final int taken;
 }
@@ -7,5 +7,5 @@ import lombok.Getter;
 @Getter
 public class Item {
 
-    int itemId;
+    final int itemId;
 }
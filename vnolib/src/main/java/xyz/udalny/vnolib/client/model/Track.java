@@ -6,7 +6,7 @@ import lombok.Getter;
 @AllArgsConstructor
 @Getter
 public class Track {
-    int trackId;
-    String trackName;
-    String trackLocation;
+    final int trackId;
+    final String trackName;
+    final String trackLocation;
 }
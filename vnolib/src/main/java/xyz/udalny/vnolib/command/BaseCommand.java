@@ -2,74 +2,22 @@ package xyz.udalny.vnolib.command;
 
 
 import xyz.udalny.vnolib.client.Client;
-import xyz.udalny.vnolib.command.servercommands.enums.CommandEnum;
 import xyz.udalny.vnolib.exception.CommandException;
 
-import java.lang.reflect.Field;
-
-import lombok.extern.slf4j.Slf4j;
-
-@Slf4j
 public abstract class BaseCommand {
 
-    private String name;
-
-    public BaseCommand() {
-        Class<? extends BaseCommand> commandClass = this.getClass();
-        Command commandAnnotation = commandClass.getAnnotation(Command.class);
-        this.name = commandAnnotation.name();
-    }
-
     public void handle(Client client) {
 
     }
 
+    @SuppressWarnings("unchecked")
     public String toVnoString() throws CommandException {
-        Class<? extends BaseCommand> thisClass = this.getClass();
-        if (!thisClass.isAnnotationPresent(Command.class)) {
+        CommandCodec<BaseCommand> codec = (CommandCodec<BaseCommand>) CommandCodecRegistry.forClass(getClass());
+        if (codec == null) {
             throw new CommandException("Command is not annotated.");
         }
-
-        Command commandAnnotation = thisClass.getAnnotation(Command.class);
-        Object[] args = new Object[commandAnnotation.numOfArguments()];
-
-        for (Field field : thisClass.getDeclaredFields()) {
-            if (field.isAnnotationPresent(CommandArgument.class)) {
-
-                field.setAccessible(true);
-
-
-                CommandArgument commandArgument = field.getAnnotation(CommandArgument.class);
-                try {
-                    args[commandArgument.index()] = field.get(this);
-                } catch (Exception ex) {
-                    log.error("toVnoString: ", ex);
-                }
-
-                field.setAccessible(false);
-            }
-        }
-
-        StringBuilder builder = new StringBuilder();
-        builder.append(name);
-        for (Object arg : args) {
-            builder.append("#");
-            if(arg == null) {
-                builder.append("");
-                continue;
-            }
-            if(CommandEnum.class.isAssignableFrom(arg.getClass())) {
-                CommandEnum commandEnum = (CommandEnum) arg;
-                builder.append(commandEnum.asRequestArgument());
-                continue;
-            }
-            builder.append(
-                    arg.toString()
-                    .replace("#", "<pound>")
-                    .replace("%", "<percent>"));
-        }
-        builder.append("#%");
-
-        return builder.toString();
+        StringCommandSink sink = new StringCommandSink();
+        codec.encode(this, sink);
+        return sink.toString();
     }
 }
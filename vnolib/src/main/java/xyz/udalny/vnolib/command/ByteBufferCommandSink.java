@@ -0,0 +1,125 @@
+package xyz.udalny.vnolib.command;
+
+import xyz.udalny.vnolib.command.servercommands.enums.CommandEnum;
+import xyz.udalny.vnolib.util.Cp1251Codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writes a command as escaped cp1251 bytes straight into a heap buffer, without building a string first.
+ * The buffer is replaced by a bigger one when a command does not fit, see {@link #getBuffer()}.
+ */
+public class ByteBufferCommandSink implements CommandSink {
+
+    private static final byte[] POUND = {'<', 'p', 'o', 'u', 'n', 'd', '>'};
+    private static final byte[] PERCENT = {'<', 'p', 'e', 'r', 'c', 'e', 'n', 't', '>'};
+
+    // enough for '#', a sign and ten digits
+    private static final int MAX_INT_LENGTH = 12;
+
+    // always in write mode
+    private ByteBuffer buffer;
+
+    public ByteBufferCommandSink(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * @return the buffer written to, which is not the one given to the constructor if it had to grow
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public void setBuffer(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Grows the buffer so that it has at least length bytes remaining.
+     */
+    public void ensureRemaining(int length) {
+        if (buffer.remaining() >= length) {
+            return;
+        }
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + length));
+        buffer.flip();
+        bigger.put(buffer);
+        buffer = bigger;
+    }
+
+    @Override
+    public void beginCommand(String name) {
+        ensureRemaining(name.length());
+        Cp1251Codec.encode(name, buffer);
+    }
+
+    @Override
+    public void writeString(String value) {
+        if (value == null) {
+            writeEmpty();
+            return;
+        }
+        int length = value.length();
+        int encodedLength = 1 + length;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c == '#') {
+                encodedLength += POUND.length - 1;
+            } else if (c == '%') {
+                encodedLength += PERCENT.length - 1;
+            }
+        }
+        ensureRemaining(encodedLength);
+        buffer.put((byte) '#');
+        if (encodedLength == 1 + length) {
+            Cp1251Codec.encode(value, buffer);
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c == '#') {
+                buffer.put(POUND);
+            } else if (c == '%') {
+                buffer.put(PERCENT);
+            } else {
+                buffer.put(Cp1251Codec.encode(c));
+            }
+        }
+    }
+
+    @Override
+    public void writeInt(int value) {
+        ensureRemaining(MAX_INT_LENGTH);
+        buffer.put((byte) '#');
+        long remaining = value;
+        if (remaining < 0) {
+            buffer.put((byte) '-');
+            remaining = -remaining;
+        }
+        long divisor = 1;
+        while(divisor * 10 <= remaining) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            buffer.put((byte) ('0' + remaining / divisor % 10));
+        }
+    }
+
+    @Override
+    public void writeEnum(CommandEnum value) {
+        writeString(value == null ? null : value.asRequestArgument());
+    }
+
+    @Override
+    public void writeEmpty() {
+        ensureRemaining(1);
+        buffer.put((byte) '#');
+    }
+
+    @Override
+    public void endCommand() {
+        ensureRemaining(2);
+        buffer.put((byte) '#').put((byte) '%');
+    }
+}
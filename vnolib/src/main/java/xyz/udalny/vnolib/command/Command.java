@@ -10,4 +10,10 @@ import java.lang.annotation.Target;
 public @interface Command {
     String name();
     int numOfArguments() default 0;
+
+    /**
+     * false if the command comes with a hand-written {@code <ClassName>Codec} in its package,
+     * for commands that do not fit the fixed list of {@link CommandArgument}s.
+     */
+    boolean generatedCodec() default true;
 }
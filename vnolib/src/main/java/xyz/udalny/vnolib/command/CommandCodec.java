@@ -0,0 +1,28 @@
+package xyz.udalny.vnolib.command;
+
+import xyz.udalny.vnolib.exception.CommandException;
+
+/**
+ * Converts one kind of command from and to its wire form without reflection.
+ * Codecs are generated at build time for every class annotated with {@link Command},
+ * classes with {@code generatedCodec = false} provide a hand-written {@code <ClassName>Codec} next to them.
+ */
+public interface CommandCodec<T extends BaseCommand> {
+
+    Class<T> commandClass();
+
+    /**
+     * @throws UnsupportedOperationException if the command can only be sent, not received
+     */
+    T newInstance();
+
+    /**
+     * @return false if the command does not override {@link BaseCommand#handle}, i.e. receiving it
+     *         has no effect unless somebody subscribed to it
+     */
+    boolean hasHandler();
+
+    void decode(T command, CommandFields fields) throws CommandException;
+
+    void encode(T command, CommandSink sink);
+}
@@ -0,0 +1,40 @@
+package xyz.udalny.vnolib.command;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Codecs of all commands, looked up by {@link CommandType} when parsing and by class when sending.
+ */
+public final class CommandCodecRegistry {
+
+    private static final CommandCodec<?>[] BY_TYPE = new CommandCodec<?>[CommandType.values().length];
+    private static final Map<Class<?>, CommandCodec<?>> BY_CLASS = new HashMap<>();
+
+    static {
+        for (CommandCodec<?> codec : CommandCodecIndex.codecs()) {
+            BY_CLASS.put(codec.commandClass(), codec);
+        }
+        for (CommandType type : CommandType.values()) {
+            BY_TYPE[type.ordinal()] = BY_CLASS.get(type.commandClass);
+        }
+    }
+
+    private CommandCodecRegistry() {
+    }
+
+    /**
+     * @return null if the command type has no codec
+     */
+    public static CommandCodec<?> forType(CommandType type) {
+        return BY_TYPE[type.ordinal()];
+    }
+
+    /**
+     * @return null if the class is not annotated with {@link Command}
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends BaseCommand> CommandCodec<T> forClass(Class<T> commandClass) {
+        return (CommandCodec<T>) BY_CLASS.get(commandClass);
+    }
+}
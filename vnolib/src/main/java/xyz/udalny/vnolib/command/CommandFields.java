@@ -0,0 +1,18 @@
+package xyz.udalny.vnolib.command;
+
+import xyz.udalny.vnolib.exception.CommandException;
+
+/**
+ * Arguments of a received command, i.e. the fields between the name and the final '%'.
+ */
+public interface CommandFields {
+
+    int size();
+
+    /**
+     * @return the argument with &lt;pound&gt; and &lt;percent&gt; replaced back
+     */
+    String getString(int index) throws CommandException;
+
+    int getInt(int index) throws CommandException;
+}
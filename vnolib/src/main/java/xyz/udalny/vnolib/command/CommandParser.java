@@ -1,157 +1,47 @@
 package xyz.udalny.vnolib.command;
 
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
-import java.util.Arrays;
-import java.util.regex.Pattern;
-
 import lombok.extern.slf4j.Slf4j;
-import xyz.udalny.vnolib.command.servercommands.ADCommand;
-import xyz.udalny.vnolib.command.servercommands.CADCommand;
-import xyz.udalny.vnolib.command.servercommands.enums.CommandEnum;
 import xyz.udalny.vnolib.exception.CommandException;
 
 @Slf4j
 public class CommandParser {
 
-    public static final Pattern COMMAND_PATTERN = Pattern.compile("[^#]+#([^#]*#)*%");
-
-    private static <T extends CommandEnum> T fromStringArgToEnum(String arg, Class<T> clazz) {
-        for(T t: clazz.getEnumConstants()) {
-            if(t.asRequestArgument().equals(arg)) {
-                return t;
-            }
-        }
-        return null;
-    }
-
-    private static void fillField(Field field, Object object, String value) throws IllegalAccessException {
-        field.setAccessible(true);
-        if(field.getType().isAssignableFrom(String.class)) {
-            value = value
-                    .replace("<pound>", "#")
-                    .replace("<percent>", "%");
-            field.set(object, value);
-        }
-        else if(field.getType().isAssignableFrom(int.class)) {
-            field.set(object, Integer.parseInt(value));
-        }
-        else if(CommandEnum.class.isAssignableFrom(field.getType())) {
-            for(Object obj : field.getType().getEnumConstants()) {
-                CommandEnum commandEnum = (CommandEnum) obj;
-                if(commandEnum.asRequestArgument().equals(value)) {
-                    field.set(object, field.getType().cast(commandEnum));
-                    break;
-                }
-            }
-        }
-        field.setAccessible(false);
-    }
-
-    private static CADCommand parseCAD(String commandString) {
-        String[] nameAndArgs = commandString.split("#");
-        String name = nameAndArgs[0];
-        String[] args = Arrays.copyOfRange(nameAndArgs, 1, nameAndArgs.length - 1);
-
-        CADCommand cadCommand = new CADCommand();
-
-        for(int i = 0; i < args.length / 3; i++) {
-
-            int charId = Integer.parseInt(args[3 * i]);
-            String charName = args[3 * i + 1];
-            int taken = Integer.parseInt(args[3 * i + 2]);
-
-            CADCommand.CADInfo info = new CADCommand.CADInfo(charId, charName, taken);
-            cadCommand.getInfo().add(info);
-        }
-
-        return cadCommand;
-    }
-
-    // developers thought it would be very convenient if
-    // sometimes the password to the location just wouldn't be passed
-    // as an argument.
-    // so now we have the whole method which handles this situation :))))))))))))))))))))))
-    private static ADCommand parseAD(String commandString) {
-
-        String[] nameAndArgs = commandString.split("#");
-        String name = nameAndArgs[0];
-        String[] args = Arrays.copyOfRange(nameAndArgs, 1, nameAndArgs.length - 1);
-
-
-        if(args.length < 4) {
-            return null;
-        }
-
-        ADCommand adCommand = new ADCommand();
-
-        adCommand.setLocationId(Integer.parseInt(args[0]));
-        adCommand.setLocationName(args[1]);
-        adCommand.setLocationPopulation(Integer.parseInt(args[2]));
-        adCommand.setBackgroundNamePattern(args[3]);
-        if(args.length == 5) {
-            adCommand.setArg5(args[4]);
-        }
-        return adCommand;
-    }
-
     public static BaseCommand parse(String commandString) throws CommandException {
         log.debug("Command string: {}", commandString);
 
-        commandString = commandString.trim();
-
-        if(commandString.startsWith(CommandType.CAD + "#")) {
-            return parseCAD(commandString);
+        FrameTokenizer tokenizer = new FrameTokenizer();
+        if(!tokenizer.tokenize(commandString)) {
+            throw new CommandException("Command does not match the pattern");
         }
+        return parse(tokenizer);
+    }
 
-        if(commandString.startsWith(CommandType.AD + "#")) {
-            return parseAD(commandString);
+    /**
+     * @param frame a tokenizer holding a valid frame
+     */
+    @SuppressWarnings("unchecked")
+    public static BaseCommand parse(FrameTokenizer frame) throws CommandException {
+        String name = frame.name();
+        CommandType type;
+        try {
+            type = CommandType.valueOf(name);
+        } catch (IllegalArgumentException ex) {
+            throw new CommandException("Unknown command " + name, ex);
         }
 
-        if(!COMMAND_PATTERN.matcher(commandString).matches()) {
-            throw new CommandException("Command does not match the pattern");
+        CommandCodec<BaseCommand> codec = (CommandCodec<BaseCommand>) CommandCodecRegistry.forType(type);
+        if(codec == null) {
+            throw new CommandException("No codec for command " + name);
         }
 
-        String[] nameAndArgs = commandString.split("#");
-        String name = nameAndArgs[0];
-        String[] args = Arrays.copyOfRange(nameAndArgs, 1, nameAndArgs.length - 1);
-
-
-        Class<? extends BaseCommand> baseClass = BaseCommand.class;
-        Class<? extends BaseCommand> commandClass = CommandType.valueOf(name).commandClass;
         BaseCommand command;
         try {
-            Field nameField = baseClass.getDeclaredField("name");
-
-            nameField.setAccessible(true);
-
-            Constructor<? extends BaseCommand> constructor = commandClass.getConstructor();
-            command = constructor.newInstance();
-            nameField.set(command, name);
-
-            nameField.setAccessible(false);
-        } catch (Exception ex) {
-            log.error("Failed to create command: ", ex);
+            command = codec.newInstance();
+        } catch (UnsupportedOperationException ex) {
             throw new CommandException("Failed to create command", ex);
         }
-
-        for (Field field : commandClass.getDeclaredFields()) {
-            if(field.isAnnotationPresent(CommandArgument.class)) {
-
-                field.setAccessible(true);
-
-                CommandArgument commandArgument = field.getAnnotation(CommandArgument.class);
-                try {
-                    fillField(field, command, args[commandArgument.index()]);
-                } catch (IllegalAccessException e) {
-                    log.error("parse: ", e);
-                }
-
-                field.setAccessible(false);
-            }
-        }
-
+        codec.decode(command, frame);
         return command;
     }
 }
@@ -0,0 +1,28 @@
+package xyz.udalny.vnolib.command;
+
+import xyz.udalny.vnolib.command.servercommands.enums.CommandEnum;
+
+/**
+ * Receives a command being sent, one argument at a time.
+ * Implementations take care of escaping and of the separators.
+ */
+public interface CommandSink {
+
+    void beginCommand(String name);
+
+    /**
+     * @param value null is written as an empty argument
+     */
+    void writeString(String value);
+
+    void writeInt(int value);
+
+    /**
+     * @param value null is written as an empty argument
+     */
+    void writeEnum(CommandEnum value);
+
+    void writeEmpty();
+
+    void endCommand();
+}
@@ -35,6 +35,9 @@ import xyz.udalny.vnolib.command.servercommands.SERVURLCommand;
 import xyz.udalny.vnolib.command.servercommands.SHOWURLCommand;
 import xyz.udalny.vnolib.command.servercommands.TKNCommand;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public enum CommandType {
 
     CV(CVCommand.class),
@@ -71,10 +74,59 @@ public enum CommandType {
     POPUP(POPUPCommand.class),
     CT(CTCommand.class);
 
+    // open addressing by the hash of the name, so that a name can be looked up without creating a string
+    private static final CommandType[] BY_NAME_HASH = new CommandType[128];
+    private static final Map<Class<?>, CommandType> BY_CLASS = new HashMap<>();
+
+    static {
+        for (CommandType type : values()) {
+            int slot = type.name().hashCode() & (BY_NAME_HASH.length - 1);
+            while(BY_NAME_HASH[slot] != null) {
+                slot = (slot + 1) & (BY_NAME_HASH.length - 1);
+            }
+            BY_NAME_HASH[slot] = type;
+            BY_CLASS.put(type.commandClass, type);
+        }
+    }
+
     CommandType(Class<? extends BaseCommand> clazz) {
         this.commandClass = clazz;
     }
 
 
     public final Class<? extends BaseCommand> commandClass;
+
+    /**
+     * Looks up the type by its name given as bytes, names are ASCII.
+     * @return null if there is no such command
+     */
+    public static CommandType fromName(byte[] buffer, int offset, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + (buffer[offset + i] & 0xFF);
+        }
+        for (int slot = hash & (BY_NAME_HASH.length - 1); BY_NAME_HASH[slot] != null; slot = (slot + 1) & (BY_NAME_HASH.length - 1)) {
+            String name = BY_NAME_HASH[slot].name();
+            if (name.length() == length && matches(name, buffer, offset)) {
+                return BY_NAME_HASH[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return null if commands of this class are never received
+     */
+    public static CommandType forClass(Class<?> commandClass) {
+        return BY_CLASS.get(commandClass);
+    }
+
+    private static boolean matches(String name, byte[] buffer, int offset) {
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != (buffer[offset + i] & 0xFF)) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
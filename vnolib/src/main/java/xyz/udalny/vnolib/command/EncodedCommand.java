@@ -0,0 +1,52 @@
+package xyz.udalny.vnolib.command;
+
+import xyz.udalny.vnolib.util.Cp1251Codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A command already encoded to its wire bytes by a {@link PreparedCommand}.
+ * Goes through the send queue like any other command, the writer copies the bytes and
+ * gives the instance back to its {@link PreparedCommand} for the next send.
+ */
+public final class EncodedCommand extends BaseCommand {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final PreparedCommand<?> owner;
+    private final ByteBufferCommandSink sink = new ByteBufferCommandSink(ByteBuffer.allocate(INITIAL_CAPACITY));
+
+    EncodedCommand(PreparedCommand<?> owner) {
+        this.owner = owner;
+    }
+
+    ByteBufferCommandSink reset() {
+        sink.getBuffer().clear();
+        return sink;
+    }
+
+    public int length() {
+        return sink.getBuffer().position();
+    }
+
+    /**
+     * Copies the bytes into the destination, which must have {@link #length()} bytes remaining,
+     * and releases this instance. It must not be used afterwards.
+     */
+    public void transferTo(ByteBuffer destination) {
+        ByteBuffer buffer = sink.getBuffer();
+        destination.put(buffer.array(), buffer.arrayOffset(), buffer.position());
+        owner.release(this);
+    }
+
+    @Override
+    public String toVnoString() {
+        ByteBuffer buffer = sink.getBuffer();
+        return new Cp1251Codec().decode(buffer.array(), buffer.arrayOffset(), buffer.position());
+    }
+
+    @Override
+    public String toString() {
+        return "EncodedCommand(" + toVnoString() + ")";
+    }
+}
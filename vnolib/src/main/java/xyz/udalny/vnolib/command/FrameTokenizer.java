@@ -0,0 +1,193 @@
+package xyz.udalny.vnolib.command;
+
+import xyz.udalny.vnolib.exception.CommandException;
+import xyz.udalny.vnolib.util.Cp1251Codec;
+
+/**
+ * Splits a frame like {@code NAME#arg0#arg1#%} into its name and arguments.
+ * The frame is copied into a reusable char buffer, then validated, split and unescaped in one pass:
+ * &lt;pound&gt; and &lt;percent&gt; are replaced in place and only the offsets of the arguments are kept.
+ * Strings are created only for the arguments that are actually read, numbers are parsed straight from the buffer.
+ * <p>
+ * An instance is reused for every frame of a connection and must be confined to one thread.
+ * The arguments of a frame are valid until the next call to {@code tokenize}.
+ */
+public class FrameTokenizer implements CommandFields {
+
+    private static final char[] POUND = "<pound>".toCharArray();
+    private static final char[] PERCENT = "<percent>".toCharArray();
+
+    private char[] chars = new char[256];
+
+    private int nameStart;
+    private int nameEnd;
+
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int size;
+
+    /**
+     * @return false if the frame is not a command, in which case nothing can be read from the tokenizer
+     */
+    public boolean tokenize(CharSequence frame) {
+        int length = frame.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            chars[i] = frame.charAt(i);
+        }
+        return scan(length);
+    }
+
+    /**
+     * Same as {@link #tokenize(CharSequence)} for a cp1251 encoded frame.
+     */
+    public boolean tokenize(byte[] buffer, int offset, int length) {
+        ensureCapacity(length);
+        Cp1251Codec.decode(buffer, offset, length, chars);
+        return scan(length);
+    }
+
+    public String name() {
+        return new String(chars, nameStart, nameEnd - nameStart);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String getString(int index) throws CommandException {
+        checkIndex(index);
+        return new String(chars, starts[index], ends[index] - starts[index]);
+    }
+
+    @Override
+    public int getInt(int index) throws CommandException {
+        checkIndex(index);
+        int position = starts[index];
+        int end = ends[index];
+        boolean negative = false;
+        if (position < end && (chars[position] == '-' || chars[position] == '+')) {
+            negative = chars[position] == '-';
+            position++;
+        }
+        if (position == end) {
+            throw notANumber(index);
+        }
+        long value = 0;
+        for (; position < end; position++) {
+            int digit = chars[position] - '0';
+            if (digit < 0 || digit > 9) {
+                throw notANumber(index);
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw notANumber(index);
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw notANumber(index);
+        }
+        return (int) value;
+    }
+
+    private boolean scan(int length) {
+        size = 0;
+        int start = 0;
+        int end = length;
+        while(start < end && chars[start] <= ' ') {
+            start++;
+        }
+        while(end > start && chars[end - 1] <= ' ') {
+            end--;
+        }
+        // the shortest command is a name, '#' and '%'
+        if (end - start < 3 || chars[end - 1] != '%' || chars[end - 2] != '#') {
+            return false;
+        }
+
+        int read = start;
+        while(chars[read] != '#') {
+            read++;
+        }
+        if (read == start) {
+            return false;
+        }
+        nameStart = start;
+        nameEnd = read;
+
+        // the '#' before the final '%' ends the last argument
+        int limit = end - 1;
+        read++;
+        int write = read;
+        int fieldStart = write;
+        while(read < limit) {
+            char c = chars[read];
+            if (c == '#') {
+                addField(fieldStart, write);
+                fieldStart = write;
+                read++;
+                continue;
+            }
+            if (c == '<') {
+                if (matches(read, limit, POUND)) {
+                    chars[write++] = '#';
+                    read += POUND.length;
+                    continue;
+                }
+                if (matches(read, limit, PERCENT)) {
+                    chars[write++] = '%';
+                    read += PERCENT.length;
+                    continue;
+                }
+            }
+            chars[write++] = c;
+            read++;
+        }
+        return true;
+    }
+
+    private boolean matches(int position, int limit, char[] escape) {
+        if (position + escape.length > limit) {
+            return false;
+        }
+        for (int i = 1; i < escape.length; i++) {
+            if (chars[position + i] != escape[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void addField(int start, int end) {
+        if (size == starts.length) {
+            int[] newStarts = new int[size * 2];
+            int[] newEnds = new int[size * 2];
+            System.arraycopy(starts, 0, newStarts, 0, size);
+            System.arraycopy(ends, 0, newEnds, 0, size);
+            starts = newStarts;
+            ends = newEnds;
+        }
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    private void ensureCapacity(int length) {
+        if (chars.length < length) {
+            chars = new char[Integer.highestOneBit(length) << 1];
+        }
+    }
+
+    private void checkIndex(int index) throws CommandException {
+        if (index < 0 || index >= size) {
+            throw new CommandException(String.format("%s has no argument %d", name(), index));
+        }
+    }
+
+    private CommandException notANumber(int index) {
+        return new CommandException(String.format("Argument %d of %s is not a number", index, name()));
+    }
+}
@@ -0,0 +1,58 @@
+package xyz.udalny.vnolib.command;
+
+/**
+ * A reusable template for a command sent over and over, e.g. chat messages.
+ * The template is changed in place and {@link #encode()} turns its current content into bytes right away,
+ * so it can be changed again before the writer gets to the previous send.
+ * The encoded copies are recycled once written, a steady stream of sends allocates nothing
+ * but the nodes of the send queue.
+ * <p>
+ * Changing the template and encoding it should happen under the lock of this instance
+ * if more than one thread sends through it.
+ */
+public class PreparedCommand<T extends BaseCommand> {
+
+    // copies waiting in the send queue beyond this number are left to the garbage collector
+    private static final int MAX_POOLED = 8;
+
+    private final T command;
+    private final CommandCodec<T> codec;
+
+    private final EncodedCommand[] pool = new EncodedCommand[MAX_POOLED];
+    private int pooled;
+
+    /**
+     * @throws IllegalArgumentException if the command class is not annotated with {@link Command}
+     */
+    @SuppressWarnings("unchecked")
+    public PreparedCommand(T command) {
+        this.command = command;
+        this.codec = (CommandCodec<T>) CommandCodecRegistry.forClass(command.getClass());
+        if (codec == null) {
+            throw new IllegalArgumentException("Command is not annotated.");
+        }
+    }
+
+    /**
+     * @return the template, changes to it affect the next {@link #encode()}
+     */
+    public T getCommand() {
+        return command;
+    }
+
+    /**
+     * @return the current content of the template, ready to be passed to {@code sendCommand}
+     */
+    public synchronized EncodedCommand encode() {
+        EncodedCommand encoded = pooled > 0 ? pool[--pooled] : new EncodedCommand(this);
+        pool[pooled] = null;
+        codec.encode(command, encoded.reset());
+        return encoded;
+    }
+
+    synchronized void release(EncodedCommand encoded) {
+        if (pooled < MAX_POOLED) {
+            pool[pooled++] = encoded;
+        }
+    }
+}
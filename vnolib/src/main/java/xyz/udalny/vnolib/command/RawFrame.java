@@ -0,0 +1,94 @@
+package xyz.udalny.vnolib.command;
+
+import xyz.udalny.vnolib.exception.CommandException;
+
+/**
+ * A received frame of which only the command name has been looked at.
+ * The arguments are decoded the first time the command is asked for, on the thread that handles it,
+ * so that frames dropped on the way are never decoded at all. Decoding is all or nothing: code that needs
+ * a single field before deciding what to do with the frame, like the coalescing in {@link
+ * xyz.udalny.vnolib.connection.CommandQueue}, reads it with {@link #peekType} or {@link #peekInt} instead.
+ * <p>
+ * Not thread safe, a frame is handed over through a queue and then used by one thread only.
+ */
+public class RawFrame {
+
+    private final CommandType type;
+    private final byte[] bytes;
+
+    private BaseCommand command;
+
+    /**
+     * @param bytes the cp1251 frame, owned by the new instance
+     */
+    public RawFrame(CommandType type, byte[] bytes) {
+        this.type = type;
+        this.bytes = bytes;
+    }
+
+    /**
+     * @return the type of the command in the frame, null if the name is unknown or the frame has no name
+     */
+    public static CommandType peekType(byte[] buffer, int offset, int length) {
+        int start = offset;
+        int end = offset + length;
+        while(start < end && buffer[start] <= ' ' && buffer[start] >= 0) {
+            start++;
+        }
+        for (int i = start; i < end; i++) {
+            if (buffer[i] == '#') {
+                return CommandType.fromName(buffer, start, i - start);
+            }
+        }
+        return null;
+    }
+
+    public CommandType getType() {
+        return type;
+    }
+
+    /**
+     * Reads a non-negative number argument straight from the bytes, without decoding the frame.
+     * @return -1 if there is no such argument or it is not a non-negative number
+     */
+    public int peekInt(int index) {
+        int position = 0;
+        while(position < bytes.length && bytes[position] != '#') {
+            position++;
+        }
+        for (int i = 0; i < index && position < bytes.length; i++) {
+            position++;
+            while(position < bytes.length && bytes[position] != '#') {
+                position++;
+            }
+        }
+        position++;
+        long value = 0;
+        int digits = 0;
+        for (; position < bytes.length && bytes[position] != '#'; position++, digits++) {
+            int digit = bytes[position] - '0';
+            if (digit < 0 || digit > 9 || value > Integer.MAX_VALUE) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        if (position >= bytes.length || digits == 0 || value > Integer.MAX_VALUE) {
+            return -1;
+        }
+        return (int) value;
+    }
+
+    /**
+     * Decodes the command on the first call and returns the same instance afterwards.
+     * @param tokenizer used for decoding, its content is replaced
+     */
+    public BaseCommand getCommand(FrameTokenizer tokenizer) throws CommandException {
+        if (command == null) {
+            if (!tokenizer.tokenize(bytes, 0, bytes.length)) {
+                throw new CommandException("Command does not match the pattern");
+            }
+            command = CommandParser.parse(tokenizer);
+        }
+        return command;
+    }
+}
@@ -0,0 +1,62 @@
+package xyz.udalny.vnolib.command;
+
+import xyz.udalny.vnolib.command.servercommands.enums.CommandEnum;
+
+/**
+ * Builds the wire string of a command, e.g. {@code CT#user#message#%}.
+ */
+public class StringCommandSink implements CommandSink {
+
+    private final StringBuilder builder = new StringBuilder();
+
+    @Override
+    public void beginCommand(String name) {
+        builder.append(name);
+    }
+
+    @Override
+    public void writeString(String value) {
+        builder.append('#');
+        if (value == null) {
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '#') {
+                builder.append("<pound>");
+            } else if (c == '%') {
+                builder.append("<percent>");
+            } else {
+                builder.append(c);
+            }
+        }
+    }
+
+    @Override
+    public void writeInt(int value) {
+        builder.append('#').append(value);
+    }
+
+    @Override
+    public void writeEnum(CommandEnum value) {
+        builder.append('#');
+        if (value != null) {
+            builder.append(value.asRequestArgument());
+        }
+    }
+
+    @Override
+    public void writeEmpty() {
+        builder.append('#');
+    }
+
+    @Override
+    public void endCommand() {
+        builder.append("#%");
+    }
+
+    @Override
+    public String toString() {
+        return builder.toString();
+    }
+}
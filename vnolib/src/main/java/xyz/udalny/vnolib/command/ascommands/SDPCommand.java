@@ -8,12 +8,10 @@ import xyz.udalny.vnolib.command.CommandArgument;
 
 import lombok.Getter;
 import lombok.ToString;
-import lombok.extern.slf4j.Slf4j;
 
 /**
  * This command is sent by master to client in response to {@link RPSCommand}. It gives information about published servers.
  */
-@Slf4j
 @Getter
 @ToString
 @Command(name = "SDP", numOfArguments = 7)
@@ -40,9 +38,8 @@ public class SDPCommand extends BaseCommand {
     @CommandArgument(index = 6)
     String arg14;
 
-    @Override
-    public void handle(Client client) {
-        Server server = Server.builder()
+    public Server toServer() {
+        return Server.builder()
                 .index(index)
                 .name(name)
                 .ip(ip)
@@ -51,11 +48,11 @@ public class SDPCommand extends BaseCommand {
                 .link(link)
                 .arg14(arg14)
                 .build();
-        client.addServer(server);
-        try {
-            client.requestServer(index + 1);
-        } catch (Exception ex) {
-            log.error("While requesting new server: ", ex);
-        }
+    }
+
+    @Override
+    public void handle(Client client) {
+        client.addServer(toServer());
+        client.getRequestTracker().onResponse(RPSCommand.class, index, this);
     }
 }
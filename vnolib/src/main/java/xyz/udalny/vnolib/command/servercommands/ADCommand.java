@@ -35,5 +35,6 @@ public class ADCommand extends BaseCommand {
     @Override
     public void handle(Client client) {
         client.addArea(new Area(locationId, locationName, locationPopulation, backgroundNamePattern, arg5));
+        client.getRequestTracker().onResponse(RADCommand.class, locationId, this);
     }
 }
@@ -29,5 +29,6 @@ public class AllowedCommand extends BaseCommand {
         } catch (Exception ex) {
             log.error("Failed to set character: ", ex);
         }
+        client.getRequestTracker().onResponse(ReqCommand.class, this);
     }
 }
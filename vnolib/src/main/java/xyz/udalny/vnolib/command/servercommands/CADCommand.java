@@ -9,13 +9,15 @@ import java.util.ArrayList;
 import java.util.List;
 
 import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.ToString;
 
 @ToString
-@Command(name = "CAD", numOfArguments = 6)
+@Command(name = "CAD", numOfArguments = 6, generatedCodec = false)
 public class CADCommand extends BaseCommand {
 
     @AllArgsConstructor
+    @Getter
     @ToString
     public static class CADInfo {
         int charId;
@@ -35,8 +37,14 @@ public class CADCommand extends BaseCommand {
 
     @Override
     public void handle(Client client) {
-        for (CADInfo cadInfo : this.info) {
-            client.addCharacter(new Character(cadInfo.charId, cadInfo.charName, cadInfo.taken));
+        Character[] characters = new Character[info.size()];
+        for (int i = 0; i < characters.length; i++) {
+            CADInfo cadInfo = info.get(i);
+            characters[i] = new Character(cadInfo.charId, cadInfo.charName, cadInfo.taken);
+        }
+        client.addCharacters(characters);
+        if (!info.isEmpty()) {
+            client.getRequestTracker().onResponse(RCDCommand.class, info.get(0).charId, this);
         }
     }
 }
@@ -0,0 +1,48 @@
+package xyz.udalny.vnolib.command.servercommands;
+
+import xyz.udalny.vnolib.command.CommandCodec;
+import xyz.udalny.vnolib.command.CommandFields;
+import xyz.udalny.vnolib.command.CommandSink;
+import xyz.udalny.vnolib.exception.CommandException;
+
+/**
+ * CAD carries any number of (id, name, taken) triples, so its codec is written by hand.
+ */
+public final class CADCommandCodec implements CommandCodec<CADCommand> {
+
+    @Override
+    public Class<CADCommand> commandClass() {
+        return CADCommand.class;
+    }
+
+    @Override
+    public CADCommand newInstance() {
+        return new CADCommand();
+    }
+
+    @Override
+    public boolean hasHandler() {
+        return true;
+    }
+
+    @Override
+    public void decode(CADCommand command, CommandFields fields) throws CommandException {
+        for (int i = 0; i < fields.size() / 3; i++) {
+            int charId = fields.getInt(3 * i);
+            String charName = fields.getString(3 * i + 1);
+            int taken = fields.getInt(3 * i + 2);
+            command.info.add(new CADCommand.CADInfo(charId, charName, taken));
+        }
+    }
+
+    @Override
+    public void encode(CADCommand command, CommandSink sink) {
+        sink.beginCommand("CAD");
+        for (CADCommand.CADInfo info : command.info) {
+            sink.writeInt(info.charId);
+            sink.writeString(info.charName);
+            sink.writeInt(info.taken);
+        }
+        sink.endCommand();
+    }
+}
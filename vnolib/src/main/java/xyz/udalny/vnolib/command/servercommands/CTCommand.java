@@ -7,6 +7,7 @@ import xyz.udalny.vnolib.command.CommandArgument;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
 import lombok.ToString;
 
 /**
@@ -15,13 +16,14 @@ import lombok.ToString;
 @AllArgsConstructor
 @NoArgsConstructor
 @Getter
+@Setter
 @ToString
 @Command(name = "CT", numOfArguments = 2)
 public class CTCommand extends BaseCommand {
 
     @CommandArgument(index = 0, optional = false)
-    private String username;
+    String username;
 
     @CommandArgument(index = 1)
-    private String message;
+    String message;
 }
@@ -1,5 +1,6 @@
 package xyz.udalny.vnolib.command.servercommands;
 
+import xyz.udalny.vnolib.command.BaseCommand;
 import xyz.udalny.vnolib.command.Command;
 import xyz.udalny.vnolib.command.CommandArgument;
 
@@ -16,7 +17,7 @@ import lombok.ToString;
 @NoArgsConstructor
 @ToString
 @Command(name = "GmB", numOfArguments = 1)
-public class GmBRequestCommand {
+public class GmBRequestCommand extends BaseCommand {
 
     @CommandArgument(index = 0, optional = false)
     int modId;
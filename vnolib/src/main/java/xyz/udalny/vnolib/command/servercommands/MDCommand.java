@@ -27,5 +27,6 @@ public class MDCommand extends BaseCommand {
     @Override
     public void handle(Client client) {
         client.addTrack(new Track(trackId, trackName, trackLocation));
+        client.getRequestTracker().onResponse(RMDCommand.class, trackId, this);
     }
 }
@@ -1,6 +1,7 @@
 package xyz.udalny.vnolib.command.servercommands;
 
 import xyz.udalny.vnolib.command.BaseCommand;
+import xyz.udalny.vnolib.command.Command;
 import xyz.udalny.vnolib.command.CommandArgument;
 
 import lombok.AllArgsConstructor;
@@ -13,11 +14,12 @@ import lombok.ToString;
 @AllArgsConstructor
 @NoArgsConstructor
 @ToString
+@Command(name = "MOD", numOfArguments = 2)
 public class MODCommand extends BaseCommand {
 
     @CommandArgument(index = 0, optional = false)
-    private static final String argument1 = "AUTH";
+    static final String argument1 = "AUTH";
 
     @CommandArgument(index = 1, optional = false)
-    private String password;
+    String password;
 }
@@ -16,6 +16,7 @@ import lombok.ToString;
 
 @ToString
 @Getter
+@Setter
 @Builder
 @AllArgsConstructor
 @NoArgsConstructor
@@ -40,7 +41,6 @@ public class MSCommand extends BaseCommand {
     @CommandArgument(index = 5, optional = false)
     int characterId;
 
-    @Setter
     @CommandArgument(index = 6, optional = false)
     String backgroundImageName;
 
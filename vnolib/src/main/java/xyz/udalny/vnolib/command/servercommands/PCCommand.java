@@ -2,10 +2,6 @@ package xyz.udalny.vnolib.command.servercommands;
 
 
 import xyz.udalny.vnolib.client.Client;
-import xyz.udalny.vnolib.client.model.Area;
-import xyz.udalny.vnolib.client.model.Character;
-import xyz.udalny.vnolib.client.model.Item;
-import xyz.udalny.vnolib.client.model.Track;
 import xyz.udalny.vnolib.command.BaseCommand;
 import xyz.udalny.vnolib.command.Command;
 import xyz.udalny.vnolib.command.CommandArgument;
@@ -22,32 +18,29 @@ import lombok.ToString;
 public class PCCommand extends BaseCommand {
 
     @CommandArgument(index = 0, optional = false)
-    private int numberOfPlayers;
+    int numberOfPlayers;
 
     @CommandArgument(index = 1, optional = false)
-    private int playerLimit;
+    int playerLimit;
 
     @CommandArgument(index = 2, optional = false)
-    private int numberOfCharacters;
+    int numberOfCharacters;
 
     @CommandArgument(index = 3, optional = false)
-    private int numberOfTracks;
+    int numberOfTracks;
 
     @CommandArgument(index = 4, optional = false)
-    private int numberOfAreas;
+    int numberOfAreas;
 
     @CommandArgument(index = 5, optional = false)
-    private int numberOfItems;
+    int numberOfItems;
 
     @CommandArgument(index = 6, optional = false)
-    private String argument7;
+    String argument7;
 
     @Override
     public void handle(Client client) {
-        client.setAreas(new Area[numberOfAreas]);
-        client.setCharacters(new Character[numberOfCharacters]);
-        client.setItems(new Item[numberOfItems]);
-        client.setTracks(new Track[numberOfTracks]);
+        client.resetLists(numberOfAreas, numberOfCharacters, numberOfItems, numberOfTracks);
         client.setServerPlayerLimit(playerLimit);
         client.setServerNumberOfPlayers(numberOfPlayers);
     }
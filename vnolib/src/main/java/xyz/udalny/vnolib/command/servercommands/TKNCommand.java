@@ -1,7 +1,9 @@
 package xyz.udalny.vnolib.command.servercommands;
 
+import xyz.udalny.vnolib.client.Client;
 import xyz.udalny.vnolib.command.BaseCommand;
 import xyz.udalny.vnolib.command.Command;
+import xyz.udalny.vnolib.exception.CharacterTakenException;
 
 import lombok.ToString;
 
@@ -11,4 +13,9 @@ import lombok.ToString;
 @ToString
 @Command(name = "TKN")
 public class TKNCommand extends BaseCommand {
+
+    @Override
+    public void handle(Client client) {
+        client.getRequestTracker().onFailure(ReqCommand.class, new CharacterTakenException("This character is already in use"));
+    }
 }
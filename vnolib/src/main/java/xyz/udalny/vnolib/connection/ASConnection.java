@@ -1,9 +1,7 @@
 package xyz.udalny.vnolib.connection;
 
 import java.security.NoSuchAlgorithmException;
-import java.util.concurrent.LinkedBlockingQueue;
 
-import xyz.udalny.vnolib.command.BaseCommand;
 import xyz.udalny.vnolib.command.ascommands.COCommand;
 import xyz.udalny.vnolib.command.ascommands.RPSCommand;
 import xyz.udalny.vnolib.command.ascommands.VERCommand;
@@ -14,7 +12,7 @@ public class ASConnection extends ServerConnection {
         super(host, port, handler);
     }
 
-    public ASConnection(String host, Integer port, LinkedBlockingQueue<BaseCommand> commandsToReadReference, CommandHandler handler) {
+    public ASConnection(String host, Integer port, CommandQueue commandsToReadReference, CommandHandler handler) {
         super(host, port, commandsToReadReference, handler);
     }
 
@@ -1,6 +1,14 @@
 package xyz.udalny.vnolib.connection;
 
+import xyz.udalny.vnolib.command.CommandType;
+
 public interface CommandHandler {
 
     public void notifyAboutNewCommand();
+
+    /**
+     * Called by the transport for every frame before it is decoded.
+     * @return false to drop frames of this type without decoding them
+     */
+    public boolean isInterestedIn(CommandType type);
 }
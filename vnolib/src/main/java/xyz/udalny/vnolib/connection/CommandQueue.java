@@ -0,0 +1,259 @@
+package xyz.udalny.vnolib.connection;
+
+import xyz.udalny.vnolib.command.CommandType;
+import xyz.udalny.vnolib.command.RawFrame;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Bounded queue of received frames between the transports and the command handler.
+ * <p>
+ * What happens to a frame depends on the policy of its type:
+ * <ul>
+ *     <li>{@link Policy#KEEP_ALL}: every frame is delivered. When the queue is full the transports stop
+ *     reading the socket until the handler catches up, so TCP slows the server down.</li>
+ *     <li>{@link Policy#KEEP_LATEST}: a frame replaces the queued frame about the same thing, e.g. the population
+ *     of the same area, so a stalled handler only ever has the latest value waiting.
+ *     The new frame goes to the end of the queue, after everything that arrived before it.</li>
+ * </ul>
+ * The queue never refuses a frame, it may go over capacity by what the transport has already read
+ * from the socket. Transports check {@link #isFull()} before reading more.
+ * <p>
+ * Frames are taken by {@link TrafficClass}: interactive ones first, in the order they arrived,
+ * bulk ones in between as described there.
+ */
+public class CommandQueue {
+
+    public static final int DEFAULT_CAPACITY = 2048;
+
+    public enum Policy {
+        KEEP_ALL, KEEP_LATEST
+    }
+
+    private static final class Node {
+
+        final RawFrame frame;
+        // null unless the frame can be replaced
+        final Long key;
+        final int lane;
+        Node previous;
+        Node next;
+
+        Node(RawFrame frame, Long key) {
+            this.frame = frame;
+            this.key = key;
+            this.lane = TrafficClass.of(frame.getType()).ordinal();
+        }
+    }
+
+    private final int capacity;
+    // reading resumes once the queue is drained below this size, so that it does not flip on every frame
+    private final int resumeSize;
+
+    private final Policy[] policies = new Policy[CommandType.values().length];
+
+    // a list per traffic class
+    private final Node[] heads = new Node[TrafficClass.values().length];
+    private final Node[] tails = new Node[TrafficClass.values().length];
+    private int size;
+    private int interactiveInARow;
+    // queued frames that a newer frame replaces, by coalescing key
+    private final Map<Long, Node> replaceable = new HashMap<>();
+
+    private boolean paused = false;
+    private final List<Runnable> resumeListeners = new CopyOnWriteArrayList<>();
+
+    public CommandQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public CommandQueue(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.resumeSize = Math.max(1, this.capacity / 2);
+        for (CommandType type : CommandType.values()) {
+            policies[type.ordinal()] = Policy.KEEP_ALL;
+        }
+        // absolute numbers, only the latest one matters
+        policies[CommandType.PC.ordinal()] = Policy.KEEP_LATEST;
+        policies[CommandType.RoC.ordinal()] = Policy.KEEP_LATEST;
+        policies[CommandType.RaC.ordinal()] = Policy.KEEP_LATEST;
+    }
+
+    public synchronized void setPolicy(CommandType type, Policy policy) {
+        policies[type.ordinal()] = policy;
+    }
+
+    /**
+     * Called when the queue was full and has been drained enough for the transports to read again.
+     * Runs on the thread that takes frames from the queue.
+     */
+    public void addResumeListener(Runnable listener) {
+        resumeListeners.add(listener);
+    }
+
+    public void removeResumeListener(Runnable listener) {
+        resumeListeners.remove(listener);
+    }
+
+    public void add(RawFrame frame) {
+        synchronized (this) {
+            Long key = policies[frame.getType().ordinal()] == Policy.KEEP_LATEST ? coalescingKey(frame) : null;
+            if (key != null) {
+                Node replaced = replaceable.remove(key);
+                if (replaced != null) {
+                    unlink(replaced);
+                }
+            }
+            Node node = new Node(frame, key);
+            if (key != null) {
+                replaceable.put(key, node);
+            }
+            link(node);
+            if (size >= capacity) {
+                paused = true;
+            }
+        }
+    }
+
+    /**
+     * @return null if the queue is empty
+     */
+    public RawFrame poll() {
+        boolean resumed = false;
+        RawFrame frame;
+        synchronized (this) {
+            Node node = next();
+            if (node == null) {
+                return null;
+            }
+            unlink(node);
+            if (node.key != null) {
+                replaceable.remove(node.key);
+            }
+            if (paused && size < resumeSize) {
+                paused = false;
+                resumed = true;
+                notifyAll();
+            }
+            frame = node.frame;
+        }
+        if (resumed) {
+            for (Runnable listener : resumeListeners) {
+                listener.run();
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * @return true if transports should stop reading until the queue is drained
+     */
+    public synchronized boolean isFull() {
+        return paused;
+    }
+
+    /**
+     * Waits until the queue is no longer full.
+     * @return false if it is still full after timeoutMillis
+     */
+    public synchronized boolean awaitSpace(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while(paused) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                return false;
+            }
+            wait(left);
+        }
+        return true;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(heads, null);
+        Arrays.fill(tails, null);
+        size = 0;
+        interactiveInARow = 0;
+        replaceable.clear();
+        if (paused) {
+            paused = false;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Frames with the same key describe the same thing, null if the frame can not be replaced.
+     */
+    private static Long coalescingKey(RawFrame frame) {
+        long type = frame.getType().ordinal();
+        switch (frame.getType()) {
+            case PC:
+                return type << 56;
+            case RaC: {
+                int area = frame.peekInt(0);
+                return area < 0 ? null : type << 56 | area;
+            }
+            case RoC: {
+                // both areas are updated by one frame, so only frames about the same pair replace each other
+                int leave = frame.peekInt(0);
+                int join = frame.peekInt(2);
+                if (leave < 0 || join < 0 || leave > 0xFFFFFFF || join > 0xFFFFFFF) {
+                    return null;
+                }
+                return type << 56 | (long) leave << 28 | join;
+            }
+            default:
+                return null;
+        }
+    }
+
+    private Node next() {
+        Node interactive = heads[TrafficClass.INTERACTIVE.ordinal()];
+        Node bulk = heads[TrafficClass.BULK.ordinal()];
+        if (interactive != null && (bulk == null || interactiveInARow < TrafficClass.MAX_INTERACTIVE_BURST)) {
+            interactiveInARow = bulk == null ? 0 : interactiveInARow + 1;
+            return interactive;
+        }
+        interactiveInARow = 0;
+        return bulk;
+    }
+
+    private void link(Node node) {
+        Node tail = tails[node.lane];
+        if (tail == null) {
+            heads[node.lane] = node;
+        } else {
+            tail.next = node;
+            node.previous = tail;
+        }
+        tails[node.lane] = node;
+        size++;
+    }
+
+    private void unlink(Node node) {
+        if (node.previous == null) {
+            heads[node.lane] = node.next;
+        } else {
+            node.previous.next = node.next;
+        }
+        if (node.next == null) {
+            tails[node.lane] = node.previous;
+        } else {
+            node.next.previous = node.previous;
+        }
+        node.previous = null;
+        node.next = null;
+        size--;
+    }
+}
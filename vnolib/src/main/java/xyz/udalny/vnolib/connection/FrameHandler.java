@@ -0,0 +1,9 @@
+package xyz.udalny.vnolib.connection;
+
+public interface FrameHandler {
+
+    /**
+     * The bytes are only valid during the call, the buffer is reused afterwards.
+     */
+    public void onFrame(byte[] buffer, int offset, int length);
+}
@@ -0,0 +1,141 @@
+package xyz.udalny.vnolib.connection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Splits the incoming byte stream into frames terminated by '%'.
+ *
+ * Bytes are read into a ring buffer and every byte is examined exactly once. Consumed frames
+ * only move the head of the ring, so the rest of the data is never shifted. When a single frame
+ * does not fit, the ring grows, so frames of any size (up to {@link #MAX_CAPACITY}) are handled.
+ *
+ * Positions are free running ints, the index in the ring is {@code position & mask}.
+ */
+public class FrameSplitter {
+
+    public static final int MAX_CAPACITY = 1 << 24;
+
+    private final FrameHandler handler;
+
+    private byte[] ring;
+    private int mask;
+    private ByteBuffer ringView;
+
+    // start of the frame being assembled
+    private int head;
+    // next byte to examine
+    private int scan;
+    // next free position
+    private int tail;
+
+    // frames wrapping around the end of the ring are joined here
+    private byte[] scratch;
+
+    public FrameSplitter(int initialCapacity, FrameHandler handler) {
+        int capacity = Integer.highestOneBit(Math.max(initialCapacity, 16) - 1) << 1;
+        this.handler = handler;
+        this.ring = new byte[capacity];
+        this.mask = capacity - 1;
+        this.ringView = ByteBuffer.wrap(ring);
+        this.scratch = new byte[0];
+    }
+
+    /**
+     * Reads once from the stream and hands every completed frame to the handler.
+     * @return number of bytes read or -1 on end of stream
+     */
+    public int readFrom(InputStream in) throws IOException {
+        ensureFreeSpace();
+        int start = tail & mask;
+        int read = in.read(ring, start, freeContiguous(start));
+        if (read > 0) {
+            tail += read;
+            split();
+        }
+        return read;
+    }
+
+    /**
+     * Same as {@link #readFrom(InputStream)} for non-blocking channels, may return 0.
+     */
+    public int readFrom(ReadableByteChannel channel) throws IOException {
+        ensureFreeSpace();
+        int start = tail & mask;
+        ringView.limit(start + freeContiguous(start));
+        ringView.position(start);
+        int read = channel.read(ringView);
+        if (read > 0) {
+            tail += read;
+            split();
+        }
+        return read;
+    }
+
+    /**
+     * Number of bytes of the unfinished frame.
+     */
+    public int pending() {
+        return tail - head;
+    }
+
+    private int freeContiguous(int start) {
+        return Math.min(ring.length - start, ring.length - (tail - head));
+    }
+
+    private void ensureFreeSpace() throws IOException {
+        if (tail - head < ring.length) {
+            return;
+        }
+        if (ring.length >= MAX_CAPACITY) {
+            throw new IOException(String.format("Frame exceeds %d bytes", MAX_CAPACITY));
+        }
+        byte[] bigger = new byte[ring.length * 2];
+        int used = tail - head;
+        copyOut(head, used, bigger);
+        scan -= head;
+        tail = used;
+        head = 0;
+        ring = bigger;
+        mask = bigger.length - 1;
+        ringView = ByteBuffer.wrap(ring);
+    }
+
+    private void split() {
+        while(scan != tail) {
+            if (ring[scan & mask] == '%') {
+                deliver(head, scan + 1 - head);
+                head = scan + 1;
+            }
+            scan++;
+        }
+        if (head == tail) {
+            // nothing pending, start from the beginning so that next frames rarely wrap
+            head = 0;
+            scan = 0;
+            tail = 0;
+        }
+    }
+
+    private void deliver(int from, int length) {
+        int start = from & mask;
+        if (start + length <= ring.length) {
+            handler.onFrame(ring, start, length);
+            return;
+        }
+        if (scratch.length < length) {
+            scratch = new byte[Integer.highestOneBit(length) << 1];
+        }
+        copyOut(from, length, scratch);
+        handler.onFrame(scratch, 0, length);
+    }
+
+    private void copyOut(int from, int length, byte[] destination) {
+        int start = from & mask;
+        int firstPart = Math.min(length, ring.length - start);
+        System.arraycopy(ring, start, destination, 0, firstPart);
+        System.arraycopy(ring, 0, destination, firstPart, length - firstPart);
+    }
+}
@@ -0,0 +1,84 @@
+package xyz.udalny.vnolib.connection;
+
+import xyz.udalny.vnolib.command.BaseCommand;
+import xyz.udalny.vnolib.command.ByteBufferCommandSink;
+import xyz.udalny.vnolib.command.CommandCodec;
+import xyz.udalny.vnolib.command.CommandCodecRegistry;
+import xyz.udalny.vnolib.command.EncodedCommand;
+import xyz.udalny.vnolib.exception.CommandException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Reusable buffer the writer encodes a whole batch of commands into,
+ * so that the batch goes to the socket with a single write.
+ * Commands are encoded by their codecs straight into the buffer.
+ */
+public class OutgoingBuffer {
+
+    // a buffer grown above this size by a burst is dropped once it is drained
+    private static final int MAX_RETAINED_CAPACITY = 256 * 1024;
+
+    private final int initialCapacity;
+
+    // owns the buffer, which is replaced when it grows
+    private final ByteBufferCommandSink sink;
+
+    public OutgoingBuffer(int initialCapacity) {
+        this.initialCapacity = initialCapacity;
+        this.sink = new ByteBufferCommandSink(ByteBuffer.allocate(initialCapacity));
+    }
+
+    public int size() {
+        return sink.getBuffer().position();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void append(BaseCommand command) throws CommandException {
+        if (command instanceof EncodedCommand) {
+            EncodedCommand encoded = (EncodedCommand) command;
+            sink.ensureRemaining(encoded.length());
+            encoded.transferTo(sink.getBuffer());
+            return;
+        }
+        CommandCodec<BaseCommand> codec = (CommandCodec<BaseCommand>) CommandCodecRegistry.forClass(command.getClass());
+        if (codec == null) {
+            throw new CommandException("Command is not annotated.");
+        }
+        codec.encode(command, sink);
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        ByteBuffer buffer = sink.getBuffer();
+        out.write(buffer.array(), buffer.arrayOffset(), buffer.position());
+        out.flush();
+        buffer.clear();
+        shrinkIfDrained();
+    }
+
+    /**
+     * Writes as much as the channel accepts.
+     * @return true if everything was written
+     */
+    public boolean writeTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = sink.getBuffer();
+        buffer.flip();
+        channel.write(buffer);
+        buffer.compact();
+        shrinkIfDrained();
+        return isEmpty();
+    }
+
+    private void shrinkIfDrained() {
+        if (isEmpty() && sink.getBuffer().capacity() > MAX_RETAINED_CAPACITY) {
+            sink.setBuffer(ByteBuffer.allocate(initialCapacity));
+        }
+    }
+}
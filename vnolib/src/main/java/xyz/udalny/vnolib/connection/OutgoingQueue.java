@@ -0,0 +1,45 @@
+package xyz.udalny.vnolib.connection;
+
+import xyz.udalny.vnolib.command.BaseCommand;
+import xyz.udalny.vnolib.util.MpscQueue;
+
+/**
+ * Commands waiting for the writer, one lock-free queue per {@link TrafficClass}.
+ * Any thread may offer, {@link #poll()} and {@link #isEmpty()} belong to the writer.
+ */
+public class OutgoingQueue {
+
+    private final MpscQueue<BaseCommand> interactive = new MpscQueue<>();
+    private final MpscQueue<BaseCommand> bulk = new MpscQueue<>();
+
+    // writer side only
+    private int interactiveInARow;
+
+    public void offer(BaseCommand command) {
+        if (TrafficClass.of(command) == TrafficClass.BULK) {
+            bulk.offer(command);
+        } else {
+            interactive.offer(command);
+        }
+    }
+
+    /**
+     * @return null if nothing is waiting
+     */
+    public BaseCommand poll() {
+        boolean bulkWaiting = bulk.peek() != null;
+        if (!bulkWaiting || interactiveInARow < TrafficClass.MAX_INTERACTIVE_BURST) {
+            BaseCommand command = interactive.poll();
+            if (command != null) {
+                interactiveInARow = bulkWaiting ? interactiveInARow + 1 : 0;
+                return command;
+            }
+        }
+        interactiveInARow = 0;
+        return bulk.poll();
+    }
+
+    public boolean isEmpty() {
+        return interactive.isEmpty() && bulk.isEmpty();
+    }
+}
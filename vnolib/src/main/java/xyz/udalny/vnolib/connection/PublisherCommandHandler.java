@@ -1,11 +1,18 @@
 package xyz.udalny.vnolib.connection;
 
 import xyz.udalny.vnolib.client.Client;
+import xyz.udalny.vnolib.client.CommandListener;
 import xyz.udalny.vnolib.client.CommandPublisher;
+import xyz.udalny.vnolib.client.DeliveryLane;
+import xyz.udalny.vnolib.client.Subscription;
 import xyz.udalny.vnolib.command.BaseCommand;
+import xyz.udalny.vnolib.command.CommandCodecRegistry;
+import xyz.udalny.vnolib.command.CommandType;
+import xyz.udalny.vnolib.command.FrameTokenizer;
+import xyz.udalny.vnolib.command.RawFrame;
+import xyz.udalny.vnolib.exception.CommandException;
 
-import java.lang.reflect.InvocationTargetException;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Executor;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -14,26 +21,45 @@ public class PublisherCommandHandler extends Thread implements CommandHandler {
 
     private final CommandPublisher publisher;
     private boolean running;
-    private final LinkedBlockingQueue<BaseCommand> commandsToRead;
+    private final CommandQueue commandsToRead;
     private final Client client;
+    // frames are decoded only by this thread
+    private final FrameTokenizer tokenizer = new FrameTokenizer();
 
-    public PublisherCommandHandler(LinkedBlockingQueue<BaseCommand> commandsToRead, Client client) {
+    public PublisherCommandHandler(CommandQueue commandsToRead, Client client) {
         super();
         this.commandsToRead = commandsToRead;
         this.publisher = new CommandPublisher();
         this.client = client;
     }
 
-    public void subscribeToCommand(Class<? extends BaseCommand> commandClass, Object object) {
-        synchronized (publisher) {
-            publisher.subscribe(commandClass, object);
-        }
+    public Subscription subscribeToCommand(Class<? extends BaseCommand> commandClass, Object object) {
+        return publisher.subscribe(commandClass, object);
+    }
+
+    public Subscription subscribeToCommand(Class<? extends BaseCommand> commandClass, Object object, DeliveryLane lane) {
+        return publisher.subscribe(commandClass, object, lane);
+    }
+
+    public <T extends BaseCommand> Subscription subscribeToCommand(Class<T> commandClass, CommandListener<? super T> listener) {
+        return publisher.subscribe(commandClass, listener);
+    }
+
+    public <T extends BaseCommand> Subscription subscribeToCommand(Class<T> commandClass, CommandListener<? super T> listener,
+                                                                   DeliveryLane lane) {
+        return publisher.subscribe(commandClass, listener, lane);
+    }
+
+    public CommandPublisher getPublisher() {
+        return publisher;
+    }
+
+    public void setMainExecutor(Executor mainExecutor) {
+        publisher.setMainExecutor(mainExecutor);
     }
 
     public void unsubscribeFromCommand(Class<? extends BaseCommand> commandClass, Object object) {
-        synchronized (publisher) {
-            publisher.unsubscribe(commandClass, object);
-        }
+        publisher.unsubscribe(commandClass, object);
     }
 
     public void unsubscribeAll() {
@@ -60,6 +86,14 @@ public class PublisherCommandHandler extends Thread implements CommandHandler {
         notify();
     }
 
+    /**
+     * A command is decoded only if it changes the state of the client or somebody subscribed to it.
+     */
+    @Override
+    public boolean isInterestedIn(CommandType type) {
+        return CommandCodecRegistry.forType(type).hasHandler() || publisher.hasSubscribers(type);
+    }
+
     @Override
     public synchronized void start() {
         running = true;
@@ -72,22 +106,46 @@ public class PublisherCommandHandler extends Thread implements CommandHandler {
         while(running) {
             try {
                 synchronized (this) {
-                    wait();
-                }
-                while(true) {
-                    BaseCommand command = commandsToRead.poll();
-                    if (command == null) {
-                        break;
+                    // frames are queued before the notification, so a frame queued while
+                    // the previous ones were handled is not left waiting for the next one
+                    if (running && commandsToRead.isEmpty()) {
+                        wait();
                     }
-                    command.handle(client);
-                    publisher.publish(command);
+                }
+                // e.g. a burst of list answers is published as one snapshot
+                client.beginStateBatch();
+                try {
+                    handleQueued();
+                } finally {
+                    client.endStateBatch();
                 }
             } catch (InterruptedException ex) {
                 log.warn("Interrupted while taking the command to handle");
-            } catch (InvocationTargetException | IllegalAccessException e) {
-                log.error("When publishing command: ", e);
             }
         }
     }
 
+    private void handleQueued() {
+        while(true) {
+            RawFrame frame = commandsToRead.poll();
+            if (frame == null) {
+                break;
+            }
+            // subscribers may have left while the frame was waiting
+            if (!isInterestedIn(frame.getType())) {
+                continue;
+            }
+            BaseCommand command;
+            try {
+                command = frame.getCommand(tokenizer);
+            } catch (CommandException ex) {
+                log.warn("While decoding {}: ", frame.getType(), ex);
+                continue;
+            }
+            log.debug(command.toString());
+            command.handle(client);
+            publisher.publish(frame.getType(), command);
+        }
+    }
+
 }
@@ -0,0 +1,121 @@
+package xyz.udalny.vnolib.connection;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Single I/O thread serving any number of non-blocking connections.
+ *
+ * Connections using the engine do not start threads of their own: reads, framing and writes
+ * of every registered {@link SelectorTransport} happen here. One engine can be shared by
+ * several {@link xyz.udalny.vnolib.client.Client}s.
+ */
+@Slf4j
+public class SelectorEngine extends Thread {
+
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<SelectorTransport> pendingUpdates;
+    private volatile boolean running;
+
+    public SelectorEngine() throws IOException {
+        super("vnolib-selector");
+        setDaemon(true);
+        this.selector = Selector.open();
+        this.pendingUpdates = new ConcurrentLinkedQueue<>();
+    }
+
+    @Override
+    public synchronized void start() {
+        running = true;
+        super.start();
+    }
+
+    public void stopEngine() {
+        running = false;
+        selector.wakeup();
+        boolean interrupted = false;
+        while(true) {
+            try {
+                join();
+                break;
+            } catch (InterruptedException e) {
+                // the I/O thread is still running, wait for it and pass the interrupt on afterwards
+                log.warn("Interrupted while stopping selector engine");
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Asks the I/O thread to (re)apply the interest set of the transport:
+     * register it, enable writes or drop it after close.
+     */
+    void requestUpdate(SelectorTransport transport) {
+        pendingUpdates.add(transport);
+        selector.wakeup();
+    }
+
+    private void applyPendingUpdates() {
+        while(true) {
+            SelectorTransport transport = pendingUpdates.poll();
+            if (transport == null) {
+                break;
+            }
+            try {
+                transport.applyInterest(selector);
+            } catch (IOException | CancelledKeyException ex) {
+                log.warn("While updating connection interest: ", ex);
+                transport.release();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        while(running) {
+            try {
+                selector.select();
+            } catch (IOException ex) {
+                log.error("While selecting: ", ex);
+                break;
+            }
+            applyPendingUpdates();
+
+            Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+            while(iterator.hasNext()) {
+                SelectionKey key = iterator.next();
+                iterator.remove();
+                SelectorTransport transport = (SelectorTransport) key.attachment();
+                try {
+                    if (key.isReadable()) {
+                        transport.onReadable();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        transport.onWritable();
+                    }
+                } catch (IOException | CancelledKeyException ex) {
+                    log.warn("While serving connection: ", ex);
+                    transport.release();
+                }
+            }
+        }
+
+        for (SelectionKey key : selector.keys()) {
+            ((SelectorTransport) key.attachment()).release();
+        }
+        try {
+            selector.close();
+        } catch (IOException ex) {
+            log.warn("While closing selector: ", ex);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package xyz.udalny.vnolib.connection;
+
+import xyz.udalny.vnolib.command.BaseCommand;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Non-blocking counterpart of {@link SocketThread}. Everything except {@link #notifyWriter()}
+ * and {@link #join()} runs on the thread of the {@link SelectorEngine}.
+ */
+@Slf4j
+public class SelectorTransport implements Transport {
+
+    private static final int BUF_SIZE = 4096;
+
+    private final ServerConnection connection;
+    private final SocketChannel channel;
+    private final SelectorEngine engine;
+
+    private final FrameSplitter splitter;
+
+    private final OutgoingBuffer writeBuffer;
+
+    private final AtomicBoolean writeRequested;
+    private final AtomicBoolean resumeRequested;
+    // OP_READ is off while the command handler is behind
+    private boolean readPaused;
+    private final CountDownLatch released;
+    private SelectionKey key;
+
+    public SelectorTransport(ServerConnection connection, SocketChannel channel, SelectorEngine engine) {
+        this.connection = connection;
+        this.channel = channel;
+        this.engine = engine;
+        this.splitter = new FrameSplitter(BUF_SIZE, connection);
+        this.writeBuffer = new OutgoingBuffer(BUF_SIZE);
+        this.writeRequested = new AtomicBoolean(false);
+        this.resumeRequested = new AtomicBoolean(false);
+        this.released = new CountDownLatch(1);
+    }
+
+    @Override
+    public void start() {
+        engine.requestUpdate(this);
+    }
+
+    @Override
+    public void notifyWriter() {
+        if (writeRequested.compareAndSet(false, true)) {
+            engine.requestUpdate(this);
+        }
+    }
+
+    @Override
+    public void resumeReading() {
+        if (resumeRequested.compareAndSet(false, true)) {
+            engine.requestUpdate(this);
+        }
+    }
+
+    @Override
+    public void join() throws InterruptedException {
+        released.await();
+    }
+
+    void applyInterest(Selector selector) throws IOException {
+        if (!channel.isOpen() || connection.getStatus().equals(ConnectionStatus.DISCONNECTED)) {
+            release();
+            return;
+        }
+        if (key == null) {
+            key = channel.register(selector, SelectionKey.OP_READ, this);
+        }
+        if (resumeRequested.getAndSet(false) && readPaused && !connection.getCommandsToRead().isFull()) {
+            readPaused = false;
+            key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        }
+        if (writeRequested.getAndSet(false)) {
+            flush();
+        }
+    }
+
+    void onReadable() throws IOException {
+        if (splitter.readFrom(channel) < 0) {
+            throw new EOFException("Connection closed by server");
+        }
+        if (connection.getCommandsToRead().isFull()) {
+            // the rest stays in the socket, the server is slowed down by TCP until the queue is drained
+            readPaused = true;
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            // the queue may have been drained before the flag was set
+            if (!connection.getCommandsToRead().isFull()) {
+                resumeReading();
+            }
+        }
+    }
+
+    void onWritable() throws IOException {
+        flush();
+    }
+
+    /**
+     * Everything queued since the last flush is encoded and written at once.
+     * Whatever the socket does not accept stays in the buffer until the channel is writable again.
+     */
+    private void flush() throws IOException {
+        while(true) {
+            while(writeBuffer.size() < connection.getMaxWriteBatchSize()) {
+                BaseCommand command = connection.getCommandsToSend().poll();
+                if (command == null) {
+                    break;
+                }
+                try {
+                    writeBuffer.append(command);
+                } catch (Exception ex) {
+                    log.error("While encoding command: ", ex);
+                }
+            }
+            if (!writeBuffer.writeTo(channel)) {
+                key.interestOps(readInterest() | SelectionKey.OP_WRITE);
+                return;
+            }
+            if (connection.getCommandsToSend().isEmpty()) {
+                key.interestOps(readInterest());
+                return;
+            }
+        }
+    }
+
+    private int readInterest() {
+        return readPaused ? 0 : SelectionKey.OP_READ;
+    }
+
+    void release() {
+        if (released.getCount() == 0) {
+            return;
+        }
+        connection.connectionLost();
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            log.warn("While closing channel: ", ex);
+        }
+        released.countDown();
+    }
+}
@@ -1,43 +1,74 @@
 package xyz.udalny.vnolib.connection;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
 
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import xyz.udalny.vnolib.command.BaseCommand;
+import xyz.udalny.vnolib.command.CommandType;
+import xyz.udalny.vnolib.command.RawFrame;
+import xyz.udalny.vnolib.util.Cp1251Codec;
 
 @Slf4j
 @Getter
-public abstract class ServerConnection {
+public abstract class ServerConnection implements FrameHandler {
 
-    protected final LinkedBlockingQueue<BaseCommand> commandsToSend;
-    protected final LinkedBlockingQueue<BaseCommand> commandsToRead;
+    public static final int DEFAULT_MAX_WRITE_BATCH_SIZE = 64 * 1024;
+    public static final long DEFAULT_WRITE_LINGER_MILLIS = 2;
+    // 0 leaves it to the system, which may take minutes
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 0;
 
-    protected Socket socket;
+    public interface LostListener {
+
+        /**
+         * Called once by the thread that noticed the connection failing, never after {@link #disconnect()}.
+         * Must not block, it may be the reader or the selector thread.
+         */
+        void onConnectionLost(ServerConnection connection);
+    }
+
+    // filled by any thread, drained only by the transport's writer
+    protected final OutgoingQueue commandsToSend;
+    protected final CommandQueue commandsToRead;
+
+    // set before connecting, so that closing it from another thread cancels the connect
+    protected volatile Socket socket;
     protected ConnectionStatus status;
-    protected SocketThread socketThread;
+    protected Transport transport;
+    protected SelectorEngine selectorEngine;
 
     protected final String host;
     protected final Integer port;
 
     protected final CommandHandler commandHandler;
 
+    protected volatile int maxWriteBatchSize = DEFAULT_MAX_WRITE_BATCH_SIZE;
+    protected volatile long writeLingerMillis = DEFAULT_WRITE_LINGER_MILLIS;
+    protected volatile int connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    // lets the transport read again once the handler drained a full queue
+    protected Runnable readResumer;
+    protected volatile LostListener lostListener;
+    // System.nanoTime() of the last frame received, or of connecting
+    protected volatile long lastReceivedNanos;
+
     public ServerConnection(String host, Integer port, CommandHandler handler) {
         this.host = host;
         this.port = port;
         this.status = ConnectionStatus.DISCONNECTED;
-        this.commandsToSend = new LinkedBlockingQueue<>();
-        this.commandsToRead = new LinkedBlockingQueue<>();
+        this.commandsToSend = new OutgoingQueue();
+        this.commandsToRead = new CommandQueue();
         this.commandHandler = handler;
     }
 
-    public ServerConnection(String host, Integer port, LinkedBlockingQueue<BaseCommand> commandsToReadReference, CommandHandler handler) {
+    public ServerConnection(String host, Integer port, CommandQueue commandsToReadReference, CommandHandler handler) {
         this.host = host;
         this.port = port;
         this.status = ConnectionStatus.DISCONNECTED;
-        this.commandsToSend = new LinkedBlockingQueue<>();
+        this.commandsToSend = new OutgoingQueue();
         this.commandsToRead = commandsToReadReference;
         this.commandHandler = handler;
     }
@@ -50,42 +81,143 @@ public abstract class ServerConnection {
         return status;
     }
 
-    public void connect() throws IOException {
-        socket = new Socket(host, port);
-        status = ConnectionStatus.CONNECTED;
+    /**
+     * Makes the next {@link #connect()} use a non-blocking channel served by the engine
+     * instead of starting a reader and a writer thread. Pass null to go back to threads.
+     */
+    public void setSelectorEngine(SelectorEngine selectorEngine) {
+        this.selectorEngine = selectorEngine;
+    }
+
+    /**
+     * Upper bound in bytes of what the writer sends with one write call.
+     */
+    public void setMaxWriteBatchSize(int maxWriteBatchSize) {
+        this.maxWriteBatchSize = maxWriteBatchSize;
+    }
 
-        socketThread = new SocketThread(this);
-        socketThread.start();
+    /**
+     * How long the writer keeps collecting a burst of commands before sending it.
+     * A single command is always sent right away. 0 disables lingering.
+     */
+    public void setWriteLingerMillis(long writeLingerMillis) {
+        this.writeLingerMillis = writeLingerMillis;
+    }
+
+    /**
+     * How long {@link #connect()} waits for the server to accept the connection. 0 means no limit of our own.
+     */
+    public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    public void setLostListener(LostListener lostListener) {
+        this.lostListener = lostListener;
+    }
+
+    public void connect() throws IOException {
+        InetSocketAddress address = new InetSocketAddress(host, port);
+        if (selectorEngine != null) {
+            SocketChannel channel = SocketChannel.open();
+            socket = channel.socket();
+            // a timeout is only honoured in blocking mode
+            socket.connect(address, connectTimeoutMillis);
+            channel.configureBlocking(false);
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            status = ConnectionStatus.CONNECTED;
+            transport = new SelectorTransport(this, channel, selectorEngine);
+        } else {
+            socket = new Socket();
+            socket.connect(address, connectTimeoutMillis);
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            status = ConnectionStatus.CONNECTED;
+            transport = new SocketThread(this);
+        }
+        lastReceivedNanos = System.nanoTime();
+        final Transport current = transport;
+        readResumer = new Runnable() {
+            @Override
+            public void run() {
+                current.resumeReading();
+            }
+        };
+        commandsToRead.addResumeListener(readResumer);
+        transport.start();
     }
 
     public void disconnect() throws IOException {
-        socket.close();
-        status = ConnectionStatus.DISCONNECTED;
-        socketThread.notifyWriter();
+        // before closing, so the failing reader does not report the connection lost
+        setStatus(ConnectionStatus.DISCONNECTED);
+        if (socket != null) {
+            socket.close();
+        }
+        if (transport == null) {
+            // connect() failed, nothing was started
+            return;
+        }
+        transport.notifyWriter();
         while(true) {
             try {
-                socketThread.join();
+                transport.join();
                 break;
             } catch (InterruptedException e) {
                 log.warn("Interrupted while stopping the threads");
             }
         }
+        commandsToRead.removeResumeListener(readResumer);
+    }
+
+    /**
+     * Called by the transport when reading or writing fails. The writer is woken up so that it does not stay parked,
+     * and the listener is told unless the connection was already closed.
+     */
+    public void connectionLost() {
+        synchronized (this) {
+            if (status != ConnectionStatus.CONNECTED) {
+                return;
+            }
+            status = ConnectionStatus.DISCONNECTED;
+        }
+        transport.notifyWriter();
+        LostListener listener = lostListener;
+        if (listener != null) {
+            listener.onConnectionLost(this);
+        }
     }
 
     public void notifyAboutNewCommand() {
         commandHandler.notifyAboutNewCommand();
     }
 
-    protected void sendCommand(BaseCommand command) {
-        log.debug("Sending command: {}", command);
-        while (true) {
-            try {
-                this.commandsToSend.put(command);
-                break;
-            } catch (InterruptedException e) {
-                log.warn("Interrupted while putting command to queue... Repeating");
+    /**
+     * Called by the transport for every complete frame, i.e. bytes up to and including '%'.
+     */
+    @Override
+    public void onFrame(byte[] buffer, int offset, int length) {
+        lastReceivedNanos = System.nanoTime();
+        try {
+            CommandType type = RawFrame.peekType(buffer, offset, length);
+            if (type == null) {
+                log.warn("Dropping a frame that is not a known command: {}",
+                        new String(buffer, offset, length, Cp1251Codec.CHARSET_NAME));
+                return;
             }
+            if (!commandHandler.isInterestedIn(type)) {
+                return;
+            }
+            RawFrame frame = new RawFrame(type, Arrays.copyOfRange(buffer, offset, offset + length));
+            commandsToRead.add(frame);
+            notifyAboutNewCommand();
+        } catch (Exception ex) {
+            log.error("While receiving frame: ", ex);
         }
-        socketThread.notifyWriter();
+    }
+
+    public void sendCommand(BaseCommand command) {
+        log.debug("Sending command: {}", command);
+        this.commandsToSend.offer(command);
+        transport.notifyWriter();
     }
 }
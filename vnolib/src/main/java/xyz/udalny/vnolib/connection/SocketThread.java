@@ -2,24 +2,23 @@ package xyz.udalny.vnolib.connection;
 
 
 import xyz.udalny.vnolib.command.BaseCommand;
-import xyz.udalny.vnolib.command.CommandParser;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.SocketException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
-public class SocketThread {
-
-    private static final String SERVER_ENCODING = "cp1251";
+public class SocketThread implements Transport {
 
     private final ServerConnection connection;
 
     private final Thread reader;
-    private final Thread writer;
+    private final WriterThread writer;
 
     public SocketThread(ServerConnection connection) {
         this.connection = connection;
@@ -27,25 +26,33 @@ public class SocketThread {
         this.writer = new WriterThread(this.connection);
     }
 
+    @Override
     public void start() {
         reader.start();
         writer.start();
     }
 
+    @Override
     public void join() throws InterruptedException {
         reader.join();
         writer.join();
     }
 
+    @Override
     public void notifyWriter() {
-        synchronized (writer) {
-            writer.notify();
-        }
+        writer.wakeUp();
+    }
+
+    @Override
+    public void resumeReading() {
+        // the reader waits on the queue itself
     }
 
     private static class ReaderThread extends Thread {
 
         private static final int BUF_SIZE = 4096;
+        // how often a reader waiting for the command handler checks that the connection is still open
+        private static final long SPACE_CHECK_MILLIS = 200;
 
         private final ServerConnection connection;
 
@@ -53,88 +60,140 @@ public class SocketThread {
             this.connection = connection;
         }
 
-        private static void moveToStart(byte[] content, int offset, int size) {
-            int i = 0;
-            int stopOffset = offset + size;
-            for (int j = offset; j < stopOffset; j++) {
-                content[i] = content[j];
-                i++;
-            }
-        }
-
         @Override
         public void run() {
-            byte[] buffer = new byte[BUF_SIZE];
-            int filled = 0;
+            FrameSplitter splitter = new FrameSplitter(BUF_SIZE, connection);
             try (InputStream inputStream = connection.getSocket().getInputStream()) {
                 while (connection.getStatus().equals(ConnectionStatus.CONNECTED)) {
                     try {
-                        filled += inputStream.read(buffer, filled, BUF_SIZE - filled);
+                        if (splitter.readFrom(inputStream) < 0) {
+                            log.warn("Connection closed by server");
+                            connection.connectionLost();
+                            break;
+                        }
+                        awaitReceiveSpace();
                     } catch (IOException ex) {
                         log.warn("While reading from socket: ", ex);
-                        connection.setStatus(ConnectionStatus.DISCONNECTED);
+                        connection.connectionLost();
                         break;
                     }
-                    int i = 0;
-                    while (filled > 0 && i < filled) {
-                        if (buffer[i] == '%') {
-                            try {
-                                String commandString = new String(buffer, 0, i + 1, SERVER_ENCODING);
-                                BaseCommand command = CommandParser.parse(commandString);
-                                log.debug(command.toString());
-                                connection.getCommandsToRead().put(command);
-                                connection.notifyAboutNewCommand();
-                            } catch (Exception ex) {
-                                log.error("While parsing command: ", ex);
-                            }
-                            filled -= i + 1;
-                            moveToStart(buffer, i + 1, filled);
-                            i = 0;
-                        }
-                        i++;
-                    }
                 }
             } catch (Exception ex) {
                 log.error("run: ", ex);
+                connection.connectionLost();
+            }
+        }
+
+        /**
+         * Stops reading while the command handler is behind, the server then sees a full TCP window.
+         */
+        private void awaitReceiveSpace() throws InterruptedException {
+            CommandQueue queue = connection.getCommandsToRead();
+            while(connection.getStatus().equals(ConnectionStatus.CONNECTED) && !queue.awaitSpace(SPACE_CHECK_MILLIS)) {
+                log.debug("Command queue is full, not reading");
             }
         }
     }
 
     private static class WriterThread extends Thread {
 
+        private static final int BUF_SIZE = 4096;
+
         private final ServerConnection connection;
 
+        // set while the writer is parked or about to park
+        private final AtomicBoolean parked;
+
         public WriterThread(ServerConnection connection) {
             this.connection = connection;
+            this.parked = new AtomicBoolean(false);
+        }
+
+        /**
+         * Called by producers after they have enqueued a command. Costs one volatile read unless the writer sleeps.
+         */
+        void wakeUp() {
+            if (parked.get() && parked.compareAndSet(true, false)) {
+                LockSupport.unpark(this);
+            }
+        }
+
+        /**
+         * The flag is raised before the queue is checked and producers check it after enqueueing,
+         * so either the writer sees the command or the producer sees the flag and unparks it.
+         * @param nanos how long to sleep at most, 0 for no limit
+         */
+        private void park(long nanos) {
+            parked.set(true);
+            if (connection.getCommandsToSend().isEmpty() && connection.getStatus().equals(ConnectionStatus.CONNECTED)) {
+                if (nanos > 0) {
+                    LockSupport.parkNanos(this, nanos);
+                } else {
+                    LockSupport.park(this);
+                }
+            }
+            parked.set(false);
+        }
+
+        /**
+         * Encodes queued commands into the buffer until the queue is empty or the batch is full.
+         * @return number of commands taken from the queue
+         */
+        private int drain(OutgoingBuffer buffer) {
+            int drained = 0;
+            while(buffer.size() < connection.getMaxWriteBatchSize()) {
+                BaseCommand command = connection.getCommandsToSend().poll();
+                if (command == null) {
+                    break;
+                }
+                drained++;
+                try {
+                    buffer.append(command);
+                } catch (Exception ex) {
+                    log.error("While encoding command: ", ex);
+                }
+            }
+            return drained;
+        }
+
+        /**
+         * A burst (e.g. a batch of RCD requests) is still being enqueued: keep collecting it
+         * for at most the linger time so that it leaves in as few segments as possible.
+         */
+        private void linger(OutgoingBuffer buffer) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(connection.getWriteLingerMillis());
+            while(buffer.size() < connection.getMaxWriteBatchSize()) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    break;
+                }
+                park(left);
+                drain(buffer);
+            }
         }
 
         @Override
         public void run() {
+            OutgoingBuffer buffer = new OutgoingBuffer(BUF_SIZE);
             try (OutputStream out = connection.getSocket().getOutputStream()) {
                 while (connection.getStatus().equals(ConnectionStatus.CONNECTED)) {
-                    synchronized (this) {
-                        wait();
-                    }
+                    park(0);
                     try {
-                        while(true) {
-                            BaseCommand command = connection.getCommandsToSend().poll();
-                            if (command == null) {
-                                break;
-                            }
-                            try {
-                                out.write(command.toVnoString().getBytes(SERVER_ENCODING));
-                            } catch (SocketException ex) {
-                                log.warn("While reading from socket: ", ex);
-                                connection.setStatus(ConnectionStatus.DISCONNECTED);
-                                break;
-                            }
+                        if (drain(buffer) > 1 && connection.getWriteLingerMillis() > 0) {
+                            linger(buffer);
+                        }
+                        if (!buffer.isEmpty()) {
+                            buffer.writeTo(out);
                         }
-                    } catch (Exception ex) {
-                        log.error("run: ", ex);
+                    } catch (IOException ex) {
+                        log.warn("While writing to socket: ", ex);
+                        connection.connectionLost();
+                        break;
                     }
                 }
             } catch (Exception ex) {
                 log.error("run: ", ex);
+                connection.connectionLost();
             }
         }
     }
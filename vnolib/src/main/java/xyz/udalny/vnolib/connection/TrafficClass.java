@@ -0,0 +1,39 @@
+package xyz.udalny.vnolib.connection;
+
+import xyz.udalny.vnolib.command.BaseCommand;
+import xyz.udalny.vnolib.command.CommandType;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Priority of a command in the send and receive queues.
+ * Messages and music are taken first, so chat is not stuck behind the lists loaded on joining a server.
+ * To keep loading going while people talk, a bulk command is taken after every
+ * {@link #MAX_INTERACTIVE_BURST} interactive ones when both are waiting.
+ * <p>
+ * Only commands that change nothing but what is shown are interactive. Everything else, e.g. a population
+ * change, stays in order with the list answers, which would otherwise overwrite it with older values.
+ */
+public enum TrafficClass {
+
+    INTERACTIVE, BULK;
+
+    public static final int MAX_INTERACTIVE_BURST = 8;
+
+    // IC and OOC messages and music changes
+    private static final Set<CommandType> INTERACTIVE_TYPES = EnumSet.of(
+            CommandType.MS, CommandType.CT, CommandType.MC);
+
+    public static TrafficClass of(CommandType type) {
+        return INTERACTIVE_TYPES.contains(type) ? INTERACTIVE : BULK;
+    }
+
+    /**
+     * Commands that are never received, e.g. prepared messages, are interactive.
+     */
+    public static TrafficClass of(BaseCommand command) {
+        CommandType type = CommandType.forClass(command.getClass());
+        return type == null ? INTERACTIVE : of(type);
+    }
+}
@@ -0,0 +1,21 @@
+package xyz.udalny.vnolib.connection;
+
+/**
+ * Moves commands between a {@link ServerConnection} and its socket.
+ *
+ * {@link SocketThread} does it with a blocking reader and writer per connection,
+ * {@link SelectorTransport} multiplexes connections on the I/O thread of a {@link SelectorEngine}.
+ */
+public interface Transport {
+
+    void start();
+
+    void notifyWriter();
+
+    /**
+     * Called when the received commands have been drained after {@link CommandQueue#isFull()}.
+     */
+    void resumeReading();
+
+    void join() throws InterruptedException;
+}
@@ -1,7 +1,7 @@
 package xyz.udalny.vnolib.connection;
 
 import xyz.udalny.vnolib.client.model.Server;
-import xyz.udalny.vnolib.command.BaseCommand;
+import xyz.udalny.vnolib.command.PreparedCommand;
 import xyz.udalny.vnolib.command.servercommands.ARCCommand;
 import xyz.udalny.vnolib.command.servercommands.CTCommand;
 import xyz.udalny.vnolib.command.servercommands.ChangeCommand;
@@ -17,18 +17,22 @@ import xyz.udalny.vnolib.command.servercommands.enums.MessageColor;
 import xyz.udalny.vnolib.command.servercommands.enums.SpriteFlip;
 import xyz.udalny.vnolib.command.servercommands.enums.SpritePosition;
 
-import java.util.concurrent.LinkedBlockingQueue;
 
 public class VNOConnection extends ServerConnection {
 
     private final Server server;
 
+    // chat and music commands are sent often, their templates are filled and encoded in place
+    private final PreparedCommand<MSCommand> icMessage = new PreparedCommand<>(new MSCommand());
+    private final PreparedCommand<CTCommand> oocMessage = new PreparedCommand<>(new CTCommand());
+    private final PreparedCommand<MCCommand> playTrackRequest = new PreparedCommand<>(new MCCommand());
+
     public VNOConnection(Server server, CommandHandler handler) {
         super(server.getIp(), server.getPort(), handler);
         this.server = server;
     }
 
-    public VNOConnection(Server server, LinkedBlockingQueue<BaseCommand> commandsToReadReference, CommandHandler handler) {
+    public VNOConnection(Server server, CommandQueue commandsToReadReference, CommandHandler handler) {
         super(server.getIp(), server.getPort(), commandsToReadReference, handler);
         this.server = server;
     }
@@ -41,7 +45,7 @@ public class VNOConnection extends ServerConnection {
                 .build();
     }
 
-    public VNOConnection(String host, Integer port, LinkedBlockingQueue<BaseCommand> commandsToReadReference, CommandHandler handler) {
+    public VNOConnection(String host, Integer port, CommandQueue commandsToReadReference, CommandHandler handler) {
         super(host, port, commandsToReadReference, handler);
         this.server = Server.builder()
                 .ip(host)
@@ -78,32 +82,41 @@ public class VNOConnection extends ServerConnection {
     }
 
     public void sendICMessage(String charName, String spriteName, String message, String boxNameString, MessageColor color, int charId, String backgroundImageName, SpritePosition position, SpriteFlip flip, String sfx) {
-        sendCommand(MSCommand.builder()
-                .characterName(charName)
-                .spriteName(spriteName)
-                .message(message)
-                .boxName(boxNameString)
-                .messageColor(color)
-                .characterId(charId)
-                .backgroundImageName(backgroundImageName)
-                .position(position)
-                .flip(flip)
-                .sfx(sfx)
-                .build());
+        synchronized (icMessage) {
+            MSCommand command = icMessage.getCommand();
+            command.setCharacterName(charName);
+            command.setSpriteName(spriteName);
+            command.setMessage(message);
+            command.setBoxName(boxNameString);
+            command.setMessageColor(color);
+            command.setCharacterId(charId);
+            command.setBackgroundImageName(backgroundImageName);
+            command.setPosition(position);
+            command.setFlip(flip);
+            command.setSfx(sfx);
+            sendCommand(icMessage.encode());
+        }
     }
 
     public void sendOOCMessage(String username, String message) {
-        sendCommand(new CTCommand(username, message));
+        synchronized (oocMessage) {
+            CTCommand command = oocMessage.getCommand();
+            command.setUsername(username);
+            command.setMessage(message);
+            sendCommand(oocMessage.encode());
+        }
     }
 
     public void sendPlayTrackRequest(String charName, String trackName, int trackId, int charId, LoopingStatus loopingStatus) {
-        sendCommand(MCCommand.builder()
-                .characterName(charName)
-                .trackName(trackName)
-                .trackId(trackId)
-                .characterId(charId)
-                .loopingStatus(loopingStatus)
-                .build());
+        synchronized (playTrackRequest) {
+            MCCommand command = playTrackRequest.getCommand();
+            command.setCharacterName(charName);
+            command.setTrackName(trackName);
+            command.setTrackId(trackId);
+            command.setCharacterId(charId);
+            command.setLoopingStatus(loopingStatus);
+            sendCommand(playTrackRequest.encode());
+        }
     }
 
     public void sendChangeAreaRequest(int locationId) {
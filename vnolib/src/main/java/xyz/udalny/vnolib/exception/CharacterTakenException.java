@@ -0,0 +1,7 @@
+package xyz.udalny.vnolib.exception;
+
+public class CharacterTakenException extends Exception {
+    public CharacterTakenException(String message) {
+        super(message);
+    }
+}
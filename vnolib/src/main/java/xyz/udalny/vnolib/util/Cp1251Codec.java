@@ -0,0 +1,106 @@
+package xyz.udalny.vnolib.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * cp1251 is the encoding of the VNO protocol. Every byte maps to exactly one char,
+ * so both directions are plain table lookups without going through {@link Charset}.
+ *
+ * Static methods are thread safe. An instance keeps a reusable char buffer for
+ * {@link #decode(byte[], int, int)} and must be confined to one thread.
+ */
+public class Cp1251Codec {
+
+    public static final String CHARSET_NAME = "cp1251";
+
+    private static final byte UNMAPPABLE = '?';
+
+    private static final char[] DECODE_TABLE = new char[256];
+
+    // indexed by the high byte of a char, entries hold byte value + 1 so that 0 means unmappable
+    private static final char[][] ENCODE_PAGES = new char[256][];
+
+    static {
+        byte[] allBytes = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            allBytes[i] = (byte) i;
+        }
+        String decoded = new String(allBytes, Charset.forName(CHARSET_NAME));
+        for (int i = 0; i < 256; i++) {
+            char c = decoded.charAt(i);
+            DECODE_TABLE[i] = c;
+            if (c == '\uFFFD') {
+                continue;
+            }
+            char[] page = ENCODE_PAGES[c >>> 8];
+            if (page == null) {
+                page = new char[256];
+                ENCODE_PAGES[c >>> 8] = page;
+            }
+            page[c & 0xFF] = (char) (i + 1);
+        }
+    }
+
+    private char[] chars = new char[256];
+
+    public static char decode(byte b) {
+        return DECODE_TABLE[b & 0xFF];
+    }
+
+    public static byte encode(char c) {
+        char[] page = ENCODE_PAGES[c >>> 8];
+        if (page == null || page[c & 0xFF] == 0) {
+            return UNMAPPABLE;
+        }
+        return (byte) (page[c & 0xFF] - 1);
+    }
+
+    /**
+     * Decodes length bytes into destination starting at index 0.
+     */
+    public static void decode(byte[] source, int offset, int length, char[] destination) {
+        for (int i = 0; i < length; i++) {
+            destination[i] = DECODE_TABLE[source[offset + i] & 0xFF];
+        }
+    }
+
+    /**
+     * Encodes the whole string into destination starting at offset.
+     * @return index after the last written byte
+     */
+    public static int encode(CharSequence source, byte[] destination, int offset) {
+        int length = source.length();
+        for (int i = 0; i < length; i++) {
+            destination[offset + i] = encode(source.charAt(i));
+        }
+        return offset + length;
+    }
+
+    /**
+     * Encodes the whole string into the buffer, which must have source.length() bytes remaining.
+     */
+    public static void encode(CharSequence source, ByteBuffer destination) {
+        int length = source.length();
+        if (destination.hasArray()) {
+            int position = destination.position();
+            encode(source, destination.array(), destination.arrayOffset() + position);
+            destination.position(position + length);
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            destination.put(encode(source.charAt(i)));
+        }
+    }
+
+    /**
+     * Decodes using the reusable buffer of this instance, the only allocation is the resulting string.
+     */
+    public String decode(byte[] source, int offset, int length) {
+        if (chars.length < length) {
+            chars = new char[Integer.highestOneBit(length) << 1];
+        }
+        decode(source, offset, length, chars);
+        return new String(chars, 0, length);
+    }
+}
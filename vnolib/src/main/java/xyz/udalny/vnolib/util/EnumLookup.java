@@ -0,0 +1,27 @@
+package xyz.udalny.vnolib.util;
+
+import xyz.udalny.vnolib.command.servercommands.enums.CommandEnum;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Finds the constant of a {@link CommandEnum} by its wire form with one map lookup.
+ */
+public class EnumLookup<E extends Enum<E> & CommandEnum> {
+
+    private final Map<String, E> byArgument = new HashMap<>();
+
+    public EnumLookup(Class<E> enumClass) {
+        for (E constant : enumClass.getEnumConstants()) {
+            byArgument.put(constant.asRequestArgument(), constant);
+        }
+    }
+
+    /**
+     * @return null if no constant has the given wire form
+     */
+    public E get(String argument) {
+        return byArgument.get(argument);
+    }
+}
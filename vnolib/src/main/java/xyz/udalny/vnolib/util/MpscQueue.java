@@ -0,0 +1,66 @@
+package xyz.udalny.vnolib.util;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unbounded lock-free queue for many producers and a single consumer.
+ * Producers only swap the tail, so offering never blocks and never takes a lock.
+ * {@link #poll()}, {@link #peek()} and {@link #isEmpty()} may only be called by the consumer thread.
+ */
+public class MpscQueue<E> {
+
+    private static class Node<E> {
+
+        E value;
+        volatile Node<E> next;
+
+        Node(E value) {
+            this.value = value;
+        }
+    }
+
+    // last node appended by a producer
+    private final AtomicReference<Node<E>> tail;
+
+    // consumer side: the node before the first element, its value is always null
+    private Node<E> head;
+
+    public MpscQueue() {
+        Node<E> stub = new Node<>(null);
+        this.head = stub;
+        this.tail = new AtomicReference<>(stub);
+    }
+
+    public void offer(E value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        Node<E> node = new Node<>(value);
+        Node<E> previous = tail.getAndSet(node);
+        // until this write the node is invisible to the consumer, which then sees the queue as empty
+        previous.next = node;
+    }
+
+    public E poll() {
+        Node<E> next = head.next;
+        if (next == null) {
+            return null;
+        }
+        E value = next.value;
+        next.value = null;
+        head = next;
+        return value;
+    }
+
+    public E peek() {
+        Node<E> next = head.next;
+        return next == null ? null : next.value;
+    }
+
+    /**
+     * Only true once every offer that has returned is visible to the consumer.
+     */
+    public boolean isEmpty() {
+        return head.next == null && head == tail.get();
+    }
+}
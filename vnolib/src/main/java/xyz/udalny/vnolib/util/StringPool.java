@@ -0,0 +1,32 @@
+package xyz.udalny.vnolib.util;
+
+import java.util.HashMap;
+
+/**
+ * Keeps one instance of every distinct string, e.g. area backgrounds repeated across a server's area list.
+ * Nothing is ever removed, a pool is meant to live as long as the list it serves.
+ * Not thread safe, meant for a single writer.
+ */
+public class StringPool {
+
+    private final HashMap<String, String> strings = new HashMap<>();
+
+    /**
+     * @return the pooled string equal to the given one, the given one if it is new, null for null
+     */
+    public String intern(String string) {
+        if (string == null) {
+            return null;
+        }
+        String pooled = strings.get(string);
+        if (pooled == null) {
+            strings.put(string, string);
+            return string;
+        }
+        return pooled;
+    }
+
+    public int size() {
+        return strings.size();
+    }
+}
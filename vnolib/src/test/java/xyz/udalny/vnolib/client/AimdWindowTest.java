@@ -0,0 +1,66 @@
+package xyz.udalny.vnolib.client;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class AimdWindowTest extends TestCase {
+
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static void answerWholeWindow(AimdWindow window) {
+        int size = window.size();
+        for (int i = 0; i < size; i++) {
+            window.onAnswer(RTT);
+        }
+    }
+
+    public void testDoublesEveryRoundTripUntilFirstTimeout() {
+        AimdWindow window = new AimdWindow(4, 64);
+        answerWholeWindow(window);
+        assertEquals(8, window.size());
+        answerWholeWindow(window);
+        assertEquals(16, window.size());
+    }
+
+    public void testTimeoutHalvesThenGrowsByOnePerRoundTrip() {
+        AimdWindow window = new AimdWindow(16, 64);
+        window.onAnswer(RTT);
+        window.onTimeout();
+        assertEquals(8, window.size());
+        answerWholeWindow(window);
+        assertEquals(9, window.size());
+    }
+
+    public void testTimeoutsOfOneRoundTripCountOnce() {
+        AimdWindow window = new AimdWindow(16, 64);
+        window.onAnswer(TimeUnit.SECONDS.toNanos(10));
+        window.onTimeout();
+        window.onTimeout();
+        window.onTimeout();
+        assertEquals(8, window.size());
+    }
+
+    public void testNeverLeavesBounds() {
+        AimdWindow window = new AimdWindow(2, 8);
+        for (int i = 0; i < 100; i++) {
+            window.onAnswer(RTT);
+        }
+        assertEquals(8, window.size());
+        window.reset();
+        // without a round trip estimate every timeout counts
+        for (int i = 0; i < 10; i++) {
+            window.onTimeout();
+        }
+        assertEquals(1, window.size());
+    }
+
+    public void testTimeoutFollowsRoundTripTime() {
+        AimdWindow window = new AimdWindow();
+        for (int i = 0; i < 50; i++) {
+            window.onAnswer(TimeUnit.MILLISECONDS.toNanos(1000));
+        }
+        long timeout = window.timeoutMillis();
+        assertTrue("timeout " + timeout, timeout >= 1000 && timeout < 1500);
+    }
+}
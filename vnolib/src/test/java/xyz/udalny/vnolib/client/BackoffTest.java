@@ -0,0 +1,51 @@
+package xyz.udalny.vnolib.client;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class BackoffTest extends TestCase {
+
+    public void testCeilingDoublesUpToTheMaximum() {
+        Backoff backoff = new Backoff(250, 30000, new Random(1));
+
+        assertEquals(250, backoff.ceilingMillis(0));
+        assertEquals(500, backoff.ceilingMillis(1));
+        assertEquals(16000, backoff.ceilingMillis(6));
+        assertEquals(30000, backoff.ceilingMillis(7));
+        assertEquals(30000, backoff.ceilingMillis(100));
+    }
+
+    public void testDelaysStayBelowTheCeiling() {
+        Backoff backoff = new Backoff(250, 30000, new Random(7));
+        for (int attempt = 0; attempt < 20; attempt++) {
+            long delay = backoff.nextDelayMillis();
+            assertTrue(delay >= 0);
+            assertTrue(delay <= backoff.ceilingMillis(attempt));
+        }
+        assertEquals(20, backoff.getAttempts());
+    }
+
+    public void testDelaysAreSpread() {
+        Backoff backoff = new Backoff(1000, 1000, new Random(3));
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        for (int i = 0; i < 100; i++) {
+            long delay = backoff.nextDelayMillis();
+            min = Math.min(min, delay);
+            max = Math.max(max, delay);
+        }
+        assertTrue(min < 250);
+        assertTrue(max > 750);
+    }
+
+    public void testResetStartsOver() {
+        Backoff backoff = new Backoff(250, 30000, new Random(1));
+        backoff.nextDelayMillis();
+        backoff.nextDelayMillis();
+        backoff.reset();
+
+        assertEquals(0, backoff.getAttempts());
+        assertTrue(backoff.nextDelayMillis() <= 250);
+    }
+}
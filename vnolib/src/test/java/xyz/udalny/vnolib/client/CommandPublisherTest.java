@@ -0,0 +1,226 @@
+package xyz.udalny.vnolib.client;
+
+import xyz.udalny.vnolib.command.BaseCommand;
+import xyz.udalny.vnolib.command.CommandType;
+import xyz.udalny.vnolib.command.servercommands.CTCommand;
+import xyz.udalny.vnolib.command.servercommands.PCCommand;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class CommandPublisherTest extends TestCase {
+
+    private static class Subscriber {
+
+        final List<Object> received = new ArrayList<>();
+
+        @OnCommand(CTCommand.class)
+        private void onMessage(CTCommand command) {
+            received.add(command);
+        }
+
+        @OnCommand(PCCommand.class)
+        private void onPlayerCount(PCCommand command) {
+            received.add(command);
+        }
+    }
+
+    private static class ThrowingSubscriber {
+
+        @OnCommand(CTCommand.class)
+        private void onMessage(CTCommand command) {
+            throw new IllegalStateException("test");
+        }
+    }
+
+    public void testDeliversOnlyTheSubscribedType() {
+        CommandPublisher publisher = new CommandPublisher();
+        Subscriber subscriber = new Subscriber();
+        publisher.subscribe(CTCommand.class, subscriber);
+        CTCommand message = new CTCommand();
+        publisher.publish(message);
+        publisher.publish(new PCCommand());
+        assertEquals(1, subscriber.received.size());
+        assertSame(message, subscriber.received.get(0));
+        assertTrue(publisher.hasSubscribers(CommandType.CT));
+        assertFalse(publisher.hasSubscribers(CommandType.PC));
+    }
+
+    public void testUnsubscribeStopsDelivery() {
+        CommandPublisher publisher = new CommandPublisher();
+        Subscriber subscriber = new Subscriber();
+        publisher.subscribe(CTCommand.class, subscriber);
+        publisher.subscribe(CTCommand.class, subscriber);
+        publisher.unsubscribe(CTCommand.class, subscriber);
+        publisher.publish(new CTCommand());
+        assertTrue(subscriber.received.isEmpty());
+        assertFalse(publisher.hasSubscribers(CTCommand.class));
+    }
+
+    private static class NeverReceivedCommand extends BaseCommand {
+    }
+
+    public void testCommandThatIsNeverReceivedIsIgnored() {
+        CommandPublisher publisher = new CommandPublisher();
+        Subscription subscription = publisher.subscribe(NeverReceivedCommand.class, new Subscriber());
+        assertFalse(subscription.isActive());
+        subscription.unsubscribe();
+        subscription = publisher.subscribe(NeverReceivedCommand.class, new CommandListener<NeverReceivedCommand>() {
+            @Override
+            public void onCommand(NeverReceivedCommand command) {
+            }
+        });
+        assertFalse(subscription.isActive());
+    }
+
+    public void testTypedListener() {
+        CommandPublisher publisher = new CommandPublisher();
+        final List<CTCommand> received = new ArrayList<>();
+        publisher.subscribe(CTCommand.class, new CommandListener<CTCommand>() {
+            @Override
+            public void onCommand(CTCommand command) {
+                received.add(command);
+            }
+        });
+        publisher.publish(CommandType.CT, new CTCommand());
+        assertEquals(1, received.size());
+    }
+
+    public void testFailingSubscriberDoesNotStopOthers() {
+        CommandPublisher publisher = new CommandPublisher();
+        Subscriber subscriber = new Subscriber();
+        publisher.subscribe(CTCommand.class, new ThrowingSubscriber());
+        publisher.subscribe(CTCommand.class, subscriber);
+        publisher.publish(new CTCommand());
+        assertEquals(1, subscriber.received.size());
+    }
+
+    public void testSubscriberMayLeaveWhilePublishing() {
+        final CommandPublisher publisher = new CommandPublisher();
+        final Subscriber second = new Subscriber();
+        publisher.subscribe(CTCommand.class, new CommandListener<CTCommand>() {
+            @Override
+            public void onCommand(CTCommand command) {
+                publisher.unsubscribe(CTCommand.class, second);
+            }
+        });
+        publisher.subscribe(CTCommand.class, second);
+        // nothing is delivered after unsubscribing, even a command that is being published
+        publisher.publish(new CTCommand());
+        publisher.publish(new CTCommand());
+        assertTrue(second.received.isEmpty());
+    }
+
+    public void testSlowBackgroundSubscriberDoesNotHoldBackOthers() throws InterruptedException {
+        CommandPublisher publisher = new CommandPublisher();
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch fastDone = new CountDownLatch(3);
+        final List<Integer> slowOrder = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<CTCommand> inline = new ArrayList<>();
+        publisher.subscribe(CTCommand.class, new CommandListener<CTCommand>() {
+            @Override
+            public void onCommand(CTCommand command) {
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                slowOrder.add(Integer.parseInt(command.getMessage()));
+            }
+        }, DeliveryLane.BACKGROUND);
+        publisher.subscribe(CTCommand.class, new CommandListener<CTCommand>() {
+            @Override
+            public void onCommand(CTCommand command) {
+                fastDone.countDown();
+            }
+        }, DeliveryLane.BACKGROUND);
+        publisher.subscribe(CTCommand.class, new CommandListener<CTCommand>() {
+            @Override
+            public void onCommand(CTCommand command) {
+                inline.add(command);
+            }
+        });
+        for (int i = 0; i < 3; i++) {
+            publisher.publish(new CTCommand("user", String.valueOf(i)));
+        }
+        assertEquals(3, inline.size());
+        assertTrue(fastDone.await(5, TimeUnit.SECONDS));
+        assertTrue(slowOrder.isEmpty());
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while(slowOrder.size() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(Arrays.asList(0, 1, 2), slowOrder);
+    }
+
+    public void testMainLaneRunsOnGivenExecutorUntilUnsubscribed() {
+        CommandPublisher publisher = new CommandPublisher();
+        final List<Runnable> posted = new ArrayList<>();
+        publisher.setMainExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                posted.add(command);
+            }
+        });
+        Subscriber subscriber = new Subscriber();
+        publisher.subscribe(CTCommand.class, subscriber, DeliveryLane.MAIN);
+        publisher.publish(new CTCommand());
+        publisher.publish(new CTCommand());
+        assertTrue(subscriber.received.isEmpty());
+        // the next command is posted only after the previous one ran
+        assertEquals(1, posted.size());
+        posted.remove(0).run();
+        assertEquals(1, subscriber.received.size());
+        publisher.unsubscribe(CTCommand.class, subscriber);
+        posted.remove(0).run();
+        assertEquals(1, subscriber.received.size());
+    }
+
+    public void testMainLaneNeedsExecutor() {
+        try {
+            new CommandPublisher().subscribe(CTCommand.class, new Subscriber(), DeliveryLane.MAIN);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    public void testCollectedSubscriberIsDroppedOnPublish() throws InterruptedException {
+        CommandPublisher publisher = new CommandPublisher();
+        Subscriber subscriber = new Subscriber();
+        Subscription subscription = publisher.subscribe(CTCommand.class, subscriber);
+        WeakReference<Subscriber> probe = new WeakReference<>(subscriber);
+        subscriber = null;
+        for (int i = 0; i < 50 && probe.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(probe.get());
+        assertFalse(subscription.isActive());
+        assertTrue(publisher.hasSubscribers(CommandType.CT));
+        publisher.publish(new CTCommand());
+        assertFalse(publisher.hasSubscribers(CommandType.CT));
+    }
+
+    public void testSubscriptionHandle() {
+        CommandPublisher publisher = new CommandPublisher();
+        Subscriber subscriber = new Subscriber();
+        Subscription subscription = publisher.subscribe(CTCommand.class, subscriber);
+        assertSame(subscription, publisher.subscribe(CTCommand.class, subscriber));
+        assertTrue(subscription.isActive());
+        subscription.unsubscribe();
+        subscription.unsubscribe();
+        assertFalse(subscription.isActive());
+        publisher.publish(new CTCommand());
+        assertTrue(subscriber.received.isEmpty());
+        assertFalse(publisher.subscribe(CTCommand.class, new Object()).isActive());
+    }
+}
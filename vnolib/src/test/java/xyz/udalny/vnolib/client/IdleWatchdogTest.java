@@ -0,0 +1,98 @@
+package xyz.udalny.vnolib.client;
+
+import xyz.udalny.vnolib.client.model.Server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import junit.framework.TestCase;
+
+public class IdleWatchdogTest extends TestCase {
+
+    // 1 player of 10, no characters, no tracks, 1 area, no items
+    private static final String SERVER_INFO = "PC#1#10#0#0#1#0#0#%";
+
+    private ServerSocket serverSocket;
+    private Socket accepted;
+    private Client client;
+
+    @Override
+    protected void setUp() throws Exception {
+        serverSocket = new ServerSocket(0);
+        client = new Client();
+        client.startCommandHandler();
+        // the connection is only reported lost, not connected again
+        client.getReconnectSupervisor().setEnabled(false);
+        client.getIdleWatchdog().setIdleMillis(200);
+        client.getIdleWatchdog().setProbeTimeoutMillis(200);
+
+        client.connectToServer(Server.builder().ip("127.0.0.1").port(serverSocket.getLocalPort()).build());
+        accepted = serverSocket.accept();
+        send(SERVER_INFO);
+        long deadline = System.currentTimeMillis() + 5000;
+        while(client.getNumOfAreas() != 1) {
+            assertTrue("no PC", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (client.connectedToServer()) {
+            client.disconnectFromServer();
+        }
+        client.getIdleWatchdog().stop();
+        client.stopCommandHandler();
+        accepted.close();
+        serverSocket.close();
+    }
+
+    public void testSilentServerIsReportedLost() throws Exception {
+        assertEquals("RAD#1#", readFrame("RAD#"));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while(client.connectedToServer()) {
+            assertTrue("still connected", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    public void testAnsweredProbesKeepTheConnection() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            assertEquals("RAD#1#", readFrame("RAD#"));
+            send("AD#1#Lobby#" + i + "#lobby#%");
+        }
+        // the next probe comes only after the last answer
+        assertEquals("RAD#1#", readFrame("RAD#"));
+        assertTrue(client.connectedToServer());
+        assertEquals(2, client.getSnapshot().getArea(1).getLocationPopulation());
+    }
+
+    private void send(String frame) throws IOException {
+        OutputStream out = accepted.getOutputStream();
+        out.write(frame.getBytes("US-ASCII"));
+        out.flush();
+    }
+
+    // skips frames until one starting with the prefix
+    private String readFrame(String prefix) throws IOException {
+        InputStream in = accepted.getInputStream();
+        accepted.setSoTimeout(5000);
+        StringBuilder frame = new StringBuilder();
+        int b;
+        while((b = in.read()) >= 0) {
+            if (b != '%') {
+                frame.append((char) b);
+                continue;
+            }
+            if (frame.toString().startsWith(prefix)) {
+                return frame.toString();
+            }
+            frame.setLength(0);
+        }
+        return null;
+    }
+}
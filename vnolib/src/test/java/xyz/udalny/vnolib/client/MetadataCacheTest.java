@@ -0,0 +1,61 @@
+package xyz.udalny.vnolib.client;
+
+import xyz.udalny.vnolib.client.model.Area;
+import xyz.udalny.vnolib.client.model.Character;
+import xyz.udalny.vnolib.client.model.Track;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+public class MetadataCacheTest extends TestCase {
+
+    private File directory;
+    private MetadataCache cache;
+
+    @Override
+    protected void setUp() throws IOException {
+        directory = File.createTempFile("metadata", "");
+        directory.delete();
+        directory.mkdir();
+        cache = new MetadataCache(directory);
+    }
+
+    @Override
+    protected void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private void storeSample() {
+        cache.store("127.0.0.1", 6541,
+                new Character[]{new Character(1, "Фуюми", 0), new Character(2, "Ryuu", 1)},
+                new Track[]{new Track(1, "Pursuit", "music/pursuit.mp3")},
+                new Area[]{new Area(1, "Lobby", 3, "lobby", null)});
+    }
+
+    public void testRoundTrip() {
+        storeSample();
+        MetadataCache.Entry entry = cache.load("127.0.0.1", 6541, 2, 1, 1);
+        assertNotNull(entry);
+        assertEquals("Фуюми", entry.getCharacters()[0].getCharName());
+        assertEquals(1, entry.getCharacters()[1].getTaken());
+        assertEquals("music/pursuit.mp3", entry.getTracks()[0].getTrackLocation());
+        assertEquals(3, entry.getAreas()[0].getLocationPopulation());
+        assertNull(entry.getAreas()[0].getArg5());
+    }
+
+    public void testCountsMismatchIsAMiss() {
+        storeSample();
+        assertNull(cache.load("127.0.0.1", 6541, 3, 1, 1));
+        assertNull(cache.load("127.0.0.1", 6542, 2, 1, 1));
+    }
+
+    public void testIncompleteArraysAreNotStored() {
+        cache.store("127.0.0.1", 6541, new Character[2], new Track[0], new Area[0]);
+        assertNull(cache.load("127.0.0.1", 6541, 2, 0, 0));
+    }
+}
@@ -0,0 +1,272 @@
+package xyz.udalny.vnolib.client;
+
+import xyz.udalny.vnolib.client.model.Area;
+import xyz.udalny.vnolib.client.model.Character;
+import xyz.udalny.vnolib.client.model.Track;
+import xyz.udalny.vnolib.command.BaseCommand;
+import xyz.udalny.vnolib.command.CommandParser;
+import xyz.udalny.vnolib.command.servercommands.ADCommand;
+import xyz.udalny.vnolib.command.servercommands.CADCommand;
+import xyz.udalny.vnolib.command.servercommands.MDCommand;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import junit.framework.TestCase;
+
+public class MetadataLoaderTest extends TestCase {
+
+    private static final class Request {
+
+        final String type;
+        final int id;
+        final CommandFuture<BaseCommand> future;
+
+        Request(String type, int id, CommandFuture<BaseCommand> future) {
+            this.type = type;
+            this.id = id;
+            this.future = future;
+        }
+    }
+
+    // answers are given by the test, nothing goes over the network
+    private static class FakeClient extends Client {
+
+        final List<Request> sent = new ArrayList<>();
+
+        @Override
+        public CommandFuture<CADCommand> fetchCharacters(int charId, long timeoutMillis, int attempts) {
+            return record("RCD", charId);
+        }
+
+        @Override
+        public CommandFuture<MDCommand> fetchTrack(int trackId, long timeoutMillis, int attempts) {
+            return record("RMD", trackId);
+        }
+
+        @Override
+        public CommandFuture<ADCommand> fetchArea(int areaId, long timeoutMillis, int attempts) {
+            return record("RAD", areaId);
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T extends BaseCommand> CommandFuture<T> record(String type, int id) {
+            CommandFuture<T> future = new CommandFuture<>();
+            sent.add(new Request(type, id, (CommandFuture<BaseCommand>) (CommandFuture<?>) future));
+            return future;
+        }
+
+        int pendingCount() {
+            int count = 0;
+            for (Request request : sent) {
+                if (!request.future.isDone()) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        Request pending(String type, int id) {
+            for (Request request : sent) {
+                if (request.type.equals(type) && request.id == id && !request.future.isDone()) {
+                    return request;
+                }
+            }
+            return null;
+        }
+
+        Request firstPending() {
+            for (Request request : sent) {
+                if (!request.future.isDone()) {
+                    return request;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class RecordingListener implements MetadataLoader.Listener {
+
+        int loaded;
+        final List<MetadataLoader.Kind> kindsLoaded = new ArrayList<>();
+        final List<String> failed = new ArrayList<>();
+        int missing = -1;
+
+        @Override
+        public void onProgress(int loaded, int total) {
+            this.loaded = loaded;
+        }
+
+        @Override
+        public void onKindLoaded(MetadataLoader.Kind kind) {
+            kindsLoaded.add(kind);
+        }
+
+        @Override
+        public void onFailed(MetadataLoader.Kind kind, int id) {
+            failed.add(kind + " " + id);
+        }
+
+        @Override
+        public void onComplete(int missing) {
+            this.missing = missing;
+        }
+    }
+
+    private FakeClient client;
+    private MetadataLoader loader;
+    private RecordingListener listener;
+
+    @Override
+    protected void setUp() {
+        client = new FakeClient();
+        loader = new MetadataLoader(client);
+        listener = new RecordingListener();
+    }
+
+    private void announce(int characters, int tracks, int areas) {
+        client.setCharacters(new Character[characters]);
+        client.setTracks(new Track[tracks]);
+        client.setAreas(new Area[areas]);
+    }
+
+    private static void answer(Request request) throws Exception {
+        String frame;
+        switch (request.type) {
+            case "RCD":
+                frame = "CAD#" + request.id + "#A#0#" + (request.id + 1) + "#B#0#%";
+                break;
+            case "RMD":
+                frame = "MD#" + request.id + "#Track#track.mp3#%";
+                break;
+            default:
+                frame = "AD#" + request.id + "#Hall#5#hall#%";
+                break;
+        }
+        assertTrue(request.future.complete(CommandParser.parse(frame)));
+    }
+
+    public void testRequestsInFlightAreLimitedByTheWindow() {
+        announce(20, 20, 20);
+        loader.start(listener);
+        assertEquals(AimdWindow.DEFAULT_INITIAL_SIZE, client.sent.size());
+        // round robin over the kinds
+        assertEquals("RCD", client.sent.get(0).type);
+        assertEquals("RMD", client.sent.get(1).type);
+        assertEquals("RAD", client.sent.get(2).type);
+        assertEquals("RCD", client.sent.get(3).type);
+        assertEquals(3, client.sent.get(3).id);
+    }
+
+    public void testAnswersOpenTheWindowUntilEverythingIsLoaded() throws Exception {
+        announce(20, 20, 20);
+        loader.start(listener);
+        int mostInFlight = 0;
+        Request request;
+        while((request = client.firstPending()) != null) {
+            mostInFlight = Math.max(mostInFlight, client.pendingCount());
+            answer(request);
+        }
+        assertTrue(mostInFlight > AimdWindow.DEFAULT_INITIAL_SIZE);
+        // 10 RCD, two characters each
+        assertEquals(50, client.sent.size());
+        assertEquals(0, listener.missing);
+        assertEquals(60, listener.loaded);
+        assertEquals(3, listener.kindsLoaded.size());
+        assertFalse(loader.isRunning());
+        assertTrue(loader.isLoaded(MetadataLoader.Kind.CHARACTERS));
+    }
+
+    public void testTimedOutRequestIsSentAgain() throws Exception {
+        announce(0, 0, 2);
+        loader.start(listener);
+        assertTrue(client.pending("RAD", 1).future.fail(new TimeoutException()));
+        answer(client.pending("RAD", 1));
+        answer(client.pending("RAD", 2));
+        assertEquals(3, client.sent.size());
+        assertEquals(0, listener.missing);
+        assertTrue(listener.failed.isEmpty());
+    }
+
+    public void testEntryIsGivenUpAfterMaxAttempts() throws Exception {
+        loader.setMaxAttempts(2);
+        announce(3, 0, 2);
+        loader.start(listener);
+        answer(client.pending("RAD", 2));
+        answer(client.pending("RCD", 3));
+        // a timeout shrinks the window, the others are answered so that there is room to send again
+        assertTrue(client.pending("RAD", 1).future.fail(new TimeoutException()));
+        assertTrue(client.pending("RAD", 1).future.fail(new TimeoutException()));
+        assertNull(client.pending("RAD", 1));
+        assertEquals(-1, listener.missing);
+
+        // both characters of the RCD are given up
+        assertTrue(client.pending("RCD", 1).future.fail(new TimeoutException()));
+        assertTrue(client.pending("RCD", 1).future.fail(new TimeoutException()));
+
+        assertEquals(3, listener.missing);
+        assertEquals("[AREAS 1, CHARACTERS 1, CHARACTERS 2]", listener.failed.toString());
+        assertTrue(listener.kindsLoaded.contains(MetadataLoader.Kind.AREAS));
+        assertTrue(listener.kindsLoaded.contains(MetadataLoader.Kind.CHARACTERS));
+        assertFalse(loader.isRunning());
+        assertFalse(loader.isLoaded(MetadataLoader.Kind.AREAS));
+    }
+
+    public void testResumeSendsAgainWhatWasNotAnswered() throws Exception {
+        announce(0, 0, 3);
+        loader.start(listener);
+        answer(client.pending("RAD", 2));
+        loader.pause();
+        // the lost connection fails what was in flight, which is ignored while paused
+        client.pending("RAD", 1).future.fail(new TimeoutException());
+        client.pending("RAD", 3).future.fail(new TimeoutException());
+        int sentBefore = client.sent.size();
+
+        loader.resume();
+        assertNotNull(client.pending("RAD", 1));
+        assertNotNull(client.pending("RAD", 3));
+        assertEquals(sentBefore + 2, client.sent.size());
+        answer(client.pending("RAD", 1));
+        answer(client.pending("RAD", 3));
+        assertEquals(0, listener.missing);
+    }
+
+    public void testRefreshGoesThroughTheWindow() throws Exception {
+        announce(4, 2, 20);
+        loader.start(listener);
+        Request request;
+        while((request = client.firstPending()) != null) {
+            answer(request);
+        }
+        int sentBefore = client.sent.size();
+
+        loader.refresh(MetadataLoader.Kind.AREAS, MetadataLoader.Kind.CHARACTERS);
+        assertEquals(sentBefore + AimdWindow.DEFAULT_INITIAL_SIZE, client.sent.size());
+        while((request = client.firstPending()) != null) {
+            assertFalse("RMD".equals(request.type));
+            answer(request);
+        }
+        // 20 RAD and 2 RCD
+        assertEquals(sentBefore + 22, client.sent.size());
+        assertFalse(loader.isRunning());
+        assertTrue(loader.isLoaded(MetadataLoader.Kind.AREAS));
+        assertEquals(3, listener.kindsLoaded.size());
+    }
+
+    public void testRefreshOfAPausedLoadKeepsTheListener() throws Exception {
+        announce(0, 0, 3);
+        loader.start(listener);
+        answer(client.pending("RAD", 2));
+        loader.pause();
+        client.pending("RAD", 1).future.fail(new TimeoutException());
+        client.pending("RAD", 3).future.fail(new TimeoutException());
+
+        loader.refresh(MetadataLoader.Kind.AREAS);
+        answer(client.pending("RAD", 1));
+        answer(client.pending("RAD", 2));
+        answer(client.pending("RAD", 3));
+        assertEquals(0, listener.missing);
+        assertEquals("[CHARACTERS, TRACKS, AREAS]", listener.kindsLoaded.toString());
+    }
+}
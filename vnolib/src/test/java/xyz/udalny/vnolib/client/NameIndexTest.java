@@ -0,0 +1,70 @@
+package xyz.udalny.vnolib.client;
+
+import xyz.udalny.vnolib.client.model.Area;
+import xyz.udalny.vnolib.client.model.Track;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class NameIndexTest extends TestCase {
+
+    private StateStore store;
+
+    @Override
+    protected void setUp() {
+        store = new StateStore();
+        store.setTracks(new Track[4]);
+        store.addTrack(new Track(3, "Objection - Pursuit", "music/pursuit.mp3"));
+        store.addTrack(new Track(1, "Pursuit", "music/pursuit2.mp3"));
+        store.addTrack(new Track(2, "Фуюми тема", "music/fuyumi.mp3"));
+        store.addTrack(new Track(4, "pursuit", "music/pursuit3.mp3"));
+    }
+
+    public void testExactNameIgnoresCase() {
+        assertEquals(1, store.trackNames().get("PURSUIT"));
+        assertEquals(3, store.trackNames().get(" objection - pursuit "));
+        assertEquals(2, store.trackNames().get("фуюми ТЕМА"));
+        assertEquals(0, store.trackNames().get("Cornered"));
+    }
+
+    public void testPrefixOfAnyWord() {
+        assertTrue(Arrays.equals(new int[]{1, 3, 4}, store.trackNames().find("pur")));
+        assertTrue(Arrays.equals(new int[]{2}, store.trackNames().find("тем")));
+        assertEquals(0, store.trackNames().find("ursuit").length);
+        assertEquals(0, store.trackNames().find(" ").length);
+    }
+
+    public void testReplacedEntryIsReindexed() {
+        store.addTrack(new Track(1, "Cornered", "music/cornered.mp3"));
+
+        assertEquals(1, store.trackNames().get("cornered"));
+        // the next track with the old name takes over, not the one only ending with it
+        assertEquals(4, store.trackNames().get("pursuit"));
+        assertTrue(Arrays.equals(new int[]{3, 4}, store.trackNames().find("pursuit")));
+    }
+
+    public void testPopulationChangeKeepsAreaFindable() {
+        store.setAreas(new Area[]{new Area(1, "Lobby", 0, "lobby", null)});
+        store.changeAreaPopulation(1, 4);
+
+        assertEquals(1, store.areaNames().get("lobby"));
+        assertTrue(Arrays.equals(new int[]{1}, store.areaNames().find("lob")));
+        assertEquals(4, store.snapshot().getArea(1).getLocationPopulation());
+    }
+
+    public void testSetterRebuildsTheIndex() {
+        store.setTracks(new Track[]{new Track(1, "Cornered", "music/cornered.mp3")});
+
+        assertEquals(0, store.trackNames().get("pursuit"));
+        assertEquals(1, store.trackNames().find("c").length);
+    }
+
+    public void testLookupBetweenAddsSeesTheLaterOnes() {
+        assertEquals(0, store.trackNames().get("cornered"));
+        store.addTrack(new Track(2, "Cornered", "music/cornered.mp3"));
+
+        assertEquals(2, store.trackNames().get("cornered"));
+        assertEquals(0, store.trackNames().find("тем").length);
+    }
+}
@@ -0,0 +1,239 @@
+package xyz.udalny.vnolib.client;
+
+import xyz.udalny.vnolib.client.model.Area;
+import xyz.udalny.vnolib.client.model.Character;
+import xyz.udalny.vnolib.client.model.Server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class ReconnectSupervisorTest extends TestCase {
+
+    // 1 player of 10, 1 character, no tracks, 1 area, no items
+    private static final String SERVER_INFO = "PC#1#10#1#0#1#0#0#%";
+
+    private ServerSocket serverSocket;
+    private Socket accepted;
+    private Client client;
+
+    private CountDownLatch lost;
+    private CountDownLatch resumed;
+    private CountDownLatch gaveUp;
+    private final AtomicInteger reconnecting = new AtomicInteger();
+
+    @Override
+    protected void setUp() throws Exception {
+        serverSocket = new ServerSocket(0);
+        lost = new CountDownLatch(1);
+        resumed = new CountDownLatch(1);
+        gaveUp = new CountDownLatch(1);
+        client = new Client();
+        client.startCommandHandler();
+        ReconnectSupervisor supervisor = client.getReconnectSupervisor();
+        supervisor.setBackoff(new Backoff(10, 100, new Random(1)));
+        supervisor.setMaxAttempts(3);
+        supervisor.setListener(new ReconnectSupervisor.Listener() {
+            @Override
+            public void onConnectionLost() {
+                lost.countDown();
+            }
+
+            @Override
+            public void onReconnecting(int attempt, long delayMillis) {
+                reconnecting.incrementAndGet();
+            }
+
+            @Override
+            public void onResumed() {
+                resumed.countDown();
+            }
+
+            @Override
+            public void onGaveUp(Throwable cause) {
+                gaveUp.countDown();
+            }
+        });
+
+        client.connectToServer(Server.builder().ip("127.0.0.1").port(serverSocket.getLocalPort()).build());
+        accepted = serverSocket.accept();
+        send(SERVER_INFO);
+        waitForLists();
+        client.addCharacter(new Character(1, "Phoenix", 0));
+        client.addArea(new Area(1, "Lobby", 0, "lobby", "0"));
+
+        CommandFuture<?> picked = client.pickCharacter(client.getSnapshot().getCharacter(1), "secret");
+        assertEquals("Req#1#secret#", readFrame("Req#"));
+        send("Allowed#Phoenix#%");
+        picked.get(5, TimeUnit.SECONDS);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        client.getReconnectSupervisor().stop();
+        if (client.connectedToServer()) {
+            client.disconnectFromServer();
+        }
+        client.stopCommandHandler();
+        accepted.close();
+        serverSocket.close();
+    }
+
+    public void testSessionIsResumedWithTheSameLists() throws Exception {
+        accepted.close();
+        assertTrue(lost.await(5, TimeUnit.SECONDS));
+
+        accepted = serverSocket.accept();
+        send(SERVER_INFO);
+        // the same character is picked again without loading the lists
+        assertEquals("Req#1#secret#", readFrame("Req#"));
+        send("Allowed#Phoenix#%");
+
+        assertTrue(resumed.await(5, TimeUnit.SECONDS));
+        assertTrue(client.connectedToServer());
+        assertFalse(client.getReconnectSupervisor().isRunning());
+        assertEquals("Phoenix", client.getSnapshot().getCharacter(1).getCharName());
+        assertEquals("Phoenix", client.getCurrentCharacter().getCharName());
+    }
+
+    public void testGivesUpWhenTheServerListsChanged() throws Exception {
+        accepted.close();
+        assertTrue(lost.await(5, TimeUnit.SECONDS));
+
+        accepted = serverSocket.accept();
+        // only the number of items differs
+        send("PC#1#10#1#0#1#2#0#%");
+
+        assertTrue(gaveUp.await(5, TimeUnit.SECONDS));
+        assertEquals(1, resumed.getCount());
+        // the connection is kept, the user joins again with the new lists
+        assertTrue(client.connectedToServer());
+        assertEquals(2, client.getNumOfItems());
+        assertNull(client.getSnapshot().getCharacter(1));
+        assertNull(client.getCurrentCharacter());
+        // the old character is not picked again
+        StringBuilder received = new StringBuilder();
+        accepted.setSoTimeout(300);
+        try {
+            int b;
+            while((b = accepted.getInputStream().read()) >= 0) {
+                received.append((char) b);
+            }
+        } catch (SocketTimeoutException expected) {
+        }
+        assertFalse(received.toString(), received.toString().contains("Req#"));
+    }
+
+    public void testGivesUpWhenTheCharacterIsTaken() throws Exception {
+        accepted.close();
+        assertTrue(lost.await(5, TimeUnit.SECONDS));
+
+        accepted = serverSocket.accept();
+        send(SERVER_INFO);
+        assertEquals("Req#1#secret#", readFrame("Req#"));
+        send("TKN#%");
+
+        assertTrue(gaveUp.await(5, TimeUnit.SECONDS));
+        assertFalse(client.getReconnectSupervisor().isRunning());
+    }
+
+    public void testGivesUpAfterMaxAttempts() throws Exception {
+        client.getReconnectSupervisor().setResumeTimeoutMillis(100);
+        accepted.close();
+        assertTrue(lost.await(5, TimeUnit.SECONDS));
+
+        // connections are accepted by the backlog but the server never says PC
+        assertTrue(gaveUp.await(10, TimeUnit.SECONDS));
+        assertEquals(1, resumed.getCount());
+        assertFalse(client.connectedToServer());
+    }
+
+    public void testGivesUpWhenTheServerIsGone() throws Exception {
+        serverSocket.close();
+        accepted.close();
+        assertTrue(lost.await(5, TimeUnit.SECONDS));
+
+        // every attempt is refused before anything was started
+        assertTrue(gaveUp.await(10, TimeUnit.SECONDS));
+        assertEquals(3, reconnecting.get());
+        assertFalse(client.getReconnectSupervisor().isRunning());
+        assertFalse(client.connectedToServer());
+    }
+
+    public void testConnectThatIsNeverAnsweredTimesOut() throws Exception {
+        client.getReconnectSupervisor().setResumeTimeoutMillis(200);
+        int port = serverSocket.getLocalPort();
+        serverSocket.close();
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress("127.0.0.1", port), 1);
+        List<Socket> backlog = new ArrayList<>();
+        try {
+            // once the backlog is full the server no longer answers SYN
+            for (int i = 0; i < 10; i++) {
+                Socket socket = new Socket();
+                backlog.add(socket);
+                try {
+                    socket.connect(serverSocket.getLocalSocketAddress(), 200);
+                } catch (SocketTimeoutException ex) {
+                    break;
+                }
+            }
+            accepted.close();
+            assertTrue(lost.await(5, TimeUnit.SECONDS));
+
+            assertTrue(gaveUp.await(5, TimeUnit.SECONDS));
+            assertEquals(3, reconnecting.get());
+            assertFalse(client.connectedToServer());
+        } finally {
+            for (Socket socket : backlog) {
+                socket.close();
+            }
+        }
+    }
+
+    private void waitForLists() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while(client.getNumOfCharacters() != 1) {
+            assertTrue("no PC", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private void send(String frame) throws IOException {
+        OutputStream out = accepted.getOutputStream();
+        out.write(frame.getBytes("US-ASCII"));
+        out.flush();
+    }
+
+    // skips frames until one starting with the prefix
+    private String readFrame(String prefix) throws IOException {
+        InputStream in = accepted.getInputStream();
+        accepted.setSoTimeout(5000);
+        StringBuilder frame = new StringBuilder();
+        int b;
+        while((b = in.read()) >= 0) {
+            if (b != '%') {
+                frame.append((char) b);
+                continue;
+            }
+            if (frame.toString().startsWith(prefix)) {
+                return frame.toString();
+            }
+            frame.setLength(0);
+        }
+        return null;
+    }
+}
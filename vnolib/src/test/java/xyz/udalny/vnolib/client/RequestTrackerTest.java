@@ -0,0 +1,121 @@
+package xyz.udalny.vnolib.client;
+
+import xyz.udalny.vnolib.command.BaseCommand;
+import xyz.udalny.vnolib.command.CommandType;
+import xyz.udalny.vnolib.command.servercommands.MDCommand;
+import xyz.udalny.vnolib.command.servercommands.RMDCommand;
+import xyz.udalny.vnolib.connection.CommandHandler;
+import xyz.udalny.vnolib.connection.ServerConnection;
+import xyz.udalny.vnolib.exception.ConnectionException;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import junit.framework.TestCase;
+
+public class RequestTrackerTest extends TestCase {
+
+    private static class RecordingConnection extends ServerConnection {
+
+        final List<BaseCommand> sent = new CopyOnWriteArrayList<>();
+
+        RecordingConnection() {
+            super("127.0.0.1", 0, new CommandHandler() {
+                @Override
+                public void notifyAboutNewCommand() {
+                }
+
+                @Override
+                public boolean isInterestedIn(CommandType type) {
+                    return true;
+                }
+            });
+        }
+
+        @Override
+        public void sendCommand(BaseCommand command) {
+            sent.add(command);
+        }
+    }
+
+    private ScheduledExecutorService scheduler;
+    private RequestTracker tracker;
+    private RecordingConnection connection;
+
+    @Override
+    protected void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        tracker = new RequestTracker(scheduler);
+        connection = new RecordingConnection();
+    }
+
+    @Override
+    protected void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    public void testAnswerCompletesTheMatchingRequest() throws Exception {
+        CommandFuture<MDCommand> first = tracker.request(connection, new RMDCommand(1), 1);
+        CommandFuture<MDCommand> second = tracker.request(connection, new RMDCommand(2), 2);
+        MDCommand answer = new MDCommand();
+
+        assertTrue(tracker.onResponse(RMDCommand.class, 2, answer));
+        assertSame(answer, second.get(1, TimeUnit.SECONDS));
+        assertFalse(first.isDone());
+        assertEquals(1, tracker.getInFlight());
+        // a late duplicate answer is ignored
+        assertFalse(tracker.onResponse(RMDCommand.class, 2, answer));
+    }
+
+    public void testIdenticalRequestsAreSentOnce() {
+        CommandFuture<MDCommand> first = tracker.request(connection, new RMDCommand(1), 1);
+        CommandFuture<MDCommand> second = tracker.request(connection, new RMDCommand(1), 1);
+
+        assertSame(first, second);
+        assertEquals(1, connection.sent.size());
+    }
+
+    public void testUnansweredRequestIsRetriedThenFails() throws Exception {
+        CommandFuture<MDCommand> future = tracker.request(connection, new RMDCommand(1), 1, 20, 3);
+        try {
+            future.get(2, TimeUnit.SECONDS);
+            fail("expected a timeout");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof TimeoutException);
+        }
+        assertEquals(3, connection.sent.size());
+        assertEquals(0, tracker.getInFlight());
+    }
+
+    public void testFailAllFailsRequestsOfTheConnection() {
+        CommandFuture<MDCommand> future = tracker.request(connection, new RMDCommand(1), 1);
+        tracker.failAll(connection, new IllegalStateException("closed"));
+
+        assertTrue(future.isDone());
+        assertEquals(0, tracker.getInFlight());
+    }
+
+    public void testRequestOnAnotherConnectionFailsTheFirstOne() throws Exception {
+        CommandFuture<MDCommand> first = tracker.request(connection, new RMDCommand(1), 1);
+        RecordingConnection other = new RecordingConnection();
+        CommandFuture<MDCommand> second = tracker.request(other, new RMDCommand(1), 1);
+
+        assertNotSame(first, second);
+        try {
+            first.get(1, TimeUnit.SECONDS);
+            fail("expected the first request to fail");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof ConnectionException);
+        }
+        assertEquals(1, other.sent.size());
+        assertEquals(1, tracker.getInFlight());
+        MDCommand answer = new MDCommand();
+        assertTrue(tracker.onResponse(RMDCommand.class, 1, answer));
+        assertSame(answer, second.get(1, TimeUnit.SECONDS));
+    }
+}
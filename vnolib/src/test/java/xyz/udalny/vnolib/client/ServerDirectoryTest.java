@@ -0,0 +1,308 @@
+package xyz.udalny.vnolib.client;
+
+import xyz.udalny.vnolib.client.model.Server;
+import xyz.udalny.vnolib.command.CommandParser;
+import xyz.udalny.vnolib.command.ascommands.SDPCommand;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import junit.framework.TestCase;
+
+public class ServerDirectoryTest extends TestCase {
+
+    // runs delayed tasks when the test moves the time forward
+    private static class ManualScheduler extends AbstractExecutorService implements ScheduledExecutorService {
+
+        private final class Task implements ScheduledFuture<Object> {
+
+            final Runnable runnable;
+            final long dueMillis;
+            boolean cancelled;
+            boolean done;
+
+            Task(Runnable runnable, long dueMillis) {
+                this.runnable = runnable;
+                this.dueMillis = dueMillis;
+            }
+
+            @Override
+            public long getDelay(TimeUnit unit) {
+                return unit.convert(dueMillis - nowMillis, TimeUnit.MILLISECONDS);
+            }
+
+            @Override
+            public int compareTo(Delayed other) {
+                return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+            }
+
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                if (done) {
+                    return false;
+                }
+                cancelled = true;
+                return true;
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return cancelled;
+            }
+
+            @Override
+            public boolean isDone() {
+                return done || cancelled;
+            }
+
+            @Override
+            public Object get() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Object get(long timeout, TimeUnit unit) {
+                throw new UnsupportedOperationException();
+            }
+        }
+
+        private final List<Task> tasks = new ArrayList<>();
+        private long nowMillis;
+
+        void advance(long millis) {
+            nowMillis += millis;
+            while(true) {
+                Task next = null;
+                for (Task task : tasks) {
+                    if (!task.isDone() && task.dueMillis <= nowMillis && (next == null || task.dueMillis < next.dueMillis)) {
+                        next = task;
+                    }
+                }
+                if (next == null) {
+                    return;
+                }
+                next.done = true;
+                next.runnable.run();
+            }
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            Task task = new Task(command, nowMillis + unit.toMillis(delay));
+            tasks.add(task);
+            return task;
+        }
+
+        @Override
+        public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            schedule(command, 0, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+
+    private static final class Request {
+
+        final int index;
+        final CommandFuture<SDPCommand> future;
+
+        Request(int index, CommandFuture<SDPCommand> future) {
+            this.index = index;
+            this.future = future;
+        }
+    }
+
+    private static class FakeClient extends Client {
+
+        final List<Request> sent = new ArrayList<>();
+
+        @Override
+        public CommandFuture<SDPCommand> fetchServer(int index, long timeoutMillis, int attempts) {
+            CommandFuture<SDPCommand> future = new CommandFuture<>();
+            sent.add(new Request(index, future));
+            return future;
+        }
+
+        @Override
+        public boolean connectedToMaster() {
+            return true;
+        }
+
+        Request pending(int index) {
+            for (Request request : sent) {
+                if (request.index == index && !request.future.isDone()) {
+                    return request;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class RecordingListener implements ServerDirectory.Listener {
+
+        final List<Integer> servers = new ArrayList<>();
+        int count = -1;
+
+        @Override
+        public void onServer(Server server) {
+            servers.add(server.getIndex());
+        }
+
+        @Override
+        public void onComplete(int count) {
+            this.count = count;
+        }
+    }
+
+    // longer than the end of the list and the first request timeout
+    private static final long QUIET_MILLIS = 60000;
+
+    private FakeClient client;
+    private ManualScheduler scheduler;
+    private ServerDirectory directory;
+    private RecordingListener listener;
+
+    @Override
+    protected void setUp() {
+        client = new FakeClient();
+        scheduler = new ManualScheduler();
+        directory = new ServerDirectory(client, scheduler);
+        listener = new RecordingListener();
+    }
+
+    private void answer(int index) throws Exception {
+        SDPCommand answer = (SDPCommand) CommandParser.parse("SDP#" + index + "#Server " + index + "#127.0.0.1#6543#%");
+        assertTrue(client.pending(index).future.complete(answer));
+    }
+
+    private void timeOut(int index) {
+        assertTrue(client.pending(index).future.fail(new TimeoutException()));
+    }
+
+    public void testRequestsInFlightAreLimitedByTheWindow() {
+        directory.start(listener);
+        assertEquals(AimdWindow.DEFAULT_INITIAL_SIZE, client.sent.size());
+        for (int i = 0; i < client.sent.size(); i++) {
+            assertEquals(i, client.sent.get(i).index);
+        }
+    }
+
+    public void testNeverFurtherThanAWindowPastTheLastServer() throws Exception {
+        directory.start(listener);
+        answer(0);
+        int window = directory.getWindow().size();
+        assertEquals(1 + window, client.sent.size());
+        // 1..window are in flight, nothing is answered past the end of the list
+        for (int i = 1; i <= window; i++) {
+            timeOut(i);
+        }
+        assertEquals(1 + window, client.sent.size());
+    }
+
+    public void testQuietMasterEndsTheList() throws Exception {
+        directory.start(listener);
+        answer(1);
+        answer(0);
+        answer(2);
+        for (Request request : new ArrayList<>(client.sent)) {
+            if (!request.future.isDone()) {
+                request.future.fail(new TimeoutException());
+            }
+        }
+        assertTrue(directory.isRunning());
+
+        scheduler.advance(QUIET_MILLIS);
+        assertFalse(directory.isRunning());
+        assertEquals(3, listener.count);
+        assertEquals("[1, 0, 2]", listener.servers.toString());
+    }
+
+    public void testGapIsRequestedAgain() throws Exception {
+        directory.start(listener);
+        answer(0);
+        answer(2);
+        timeOut(1);
+        for (Request request : new ArrayList<>(client.sent)) {
+            if (!request.future.isDone()) {
+                request.future.fail(new TimeoutException());
+            }
+        }
+
+        scheduler.advance(QUIET_MILLIS);
+        assertTrue(directory.isRunning());
+        answer(1);
+        scheduler.advance(QUIET_MILLIS);
+        assertEquals(3, listener.count);
+    }
+
+    public void testGapIsGivenUpAfterARetry() throws Exception {
+        directory.start(listener);
+        answer(0);
+        answer(2);
+        timeOut(1);
+        for (Request request : new ArrayList<>(client.sent)) {
+            if (!request.future.isDone()) {
+                request.future.fail(new TimeoutException());
+            }
+        }
+        scheduler.advance(QUIET_MILLIS);
+        timeOut(1);
+
+        scheduler.advance(QUIET_MILLIS);
+        assertFalse(directory.isRunning());
+        assertEquals(2, listener.count);
+    }
+
+    public void testAnswersOfAnEarlierStartAreIgnored() throws Exception {
+        directory.start(listener);
+        Request old = client.pending(0);
+        directory.start(listener);
+        assertTrue(old.future.complete((SDPCommand) CommandParser.parse("SDP#0#Old#127.0.0.1#6543#%")));
+        assertTrue(listener.servers.isEmpty());
+    }
+}
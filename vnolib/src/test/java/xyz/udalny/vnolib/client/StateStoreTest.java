@@ -0,0 +1,260 @@
+package xyz.udalny.vnolib.client;
+
+import xyz.udalny.vnolib.client.model.Area;
+import xyz.udalny.vnolib.client.model.Character;
+import xyz.udalny.vnolib.client.model.Track;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import junit.framework.TestCase;
+
+public class StateStoreTest extends TestCase {
+
+    private StateStore store;
+    private final List<String> changes = new ArrayList<>();
+
+    private final StateListener recorder = new StateListener() {
+        @Override
+        public void onAreaPopulationChanged(int areaId, int oldPopulation, int newPopulation) {
+            changes.add("population " + areaId + " " + oldPopulation + " " + newPopulation);
+        }
+
+        @Override
+        public void onCharacterTakenChanged(int charId, int oldTaken, int newTaken) {
+            changes.add("taken " + charId + " " + oldTaken + " " + newTaken);
+        }
+
+        @Override
+        public void onTracksUpdated(int firstId, int count) {
+            changes.add("tracks " + firstId + " " + count);
+        }
+    };
+
+    @Override
+    protected void setUp() {
+        store = new StateStore(recorder);
+        store.setAreas(new Area[2]);
+        store.addArea(new Area(1, "Lobby", 3, "lobby", null));
+        store.addArea(new Area(2, "Courtroom", 0, "court", null));
+    }
+
+    public void testOldSnapshotIsNotChanged() {
+        StateSnapshot before = store.snapshot();
+        store.changeAreaPopulation(1, 5);
+        StateSnapshot after = store.snapshot();
+
+        assertEquals(3, before.getArea(1).getLocationPopulation());
+        assertEquals(5, after.getArea(1).getLocationPopulation());
+        assertEquals("Courtroom", after.getArea(2).getLocationName());
+        assertTrue(after.getVersion() > before.getVersion());
+    }
+
+    public void testWithPopulationKeepsTheRest() {
+        Area area = new Area(4, "Lobby", 3, "lobby", "x");
+        Area changed = area.withPopulation(7);
+
+        assertEquals(3, area.getLocationPopulation());
+        assertEquals(7, changed.getLocationPopulation());
+        assertEquals(4, changed.getLocationId());
+        assertEquals("lobby", changed.getBackgroundNamePattern());
+        assertEquals("x", changed.getArg5());
+    }
+
+    public void testEditorLeavesPublishedSnapshotsAlone() {
+        StateSnapshot.Editor editor = new StateSnapshot.Editor(StateSnapshot.EMPTY);
+        editor.setAreas(new Area[2]);
+        editor.setArea(new Area(1, "Lobby", 3, "lobby", null));
+        StateSnapshot first = editor.publish();
+        editor.setAreaPopulation(1, 4);
+        editor.setArea(new Area(2, "Courtroom", 0, "court", null));
+        editor.setAreaPopulation(1, 5);
+        StateSnapshot second = editor.publish();
+        editor.setAreaPopulation(1, 6);
+        StateSnapshot third = editor.publish();
+
+        assertEquals(3, first.getArea(1).getLocationPopulation());
+        assertEquals(null, first.getArea(2));
+        assertEquals(5, second.getArea(1).getLocationPopulation());
+        assertEquals("Courtroom", second.getArea(2).getLocationName());
+        assertEquals(6, third.getArea(1).getLocationPopulation());
+        assertTrue(first.getVersion() < second.getVersion() && second.getVersion() < third.getVersion());
+    }
+
+    public void testViewsAreUnmodifiable() {
+        try {
+            store.snapshot().getAreas().set(0, null);
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
+
+    public void testSetterCopiesTheArray() {
+        Character[] characters = new Character[1];
+        store.setCharacters(characters);
+        characters[0] = new Character(1, "Ryuu", 0);
+
+        assertEquals(null, store.snapshot().getCharacter(1));
+    }
+
+    public void testEqualStringsAreStoredOnce() {
+        store.addArea(new Area(2, "Courtroom", 0, new String("lobby"), null));
+
+        assertSame(store.snapshot().getArea(1).getBackgroundNamePattern(),
+                store.snapshot().getArea(2).getBackgroundNamePattern());
+    }
+
+    public void testEntriesAreMadeOnceUntilChanged() {
+        StateSnapshot before = store.snapshot();
+        Area lobby = before.getArea(1);
+        Area courtroom = before.getArea(2);
+        store.changeAreaPopulation(1, 5);
+        StateSnapshot after = store.snapshot();
+
+        assertSame(lobby, before.getArea(1));
+        assertSame(courtroom, after.getArea(2));
+        assertNotSame(lobby, after.getArea(1));
+        assertEquals(5, after.getArea(1).getLocationPopulation());
+    }
+
+    public void testEditorReadsItsOwnChanges() {
+        StateSnapshot.Editor editor = new StateSnapshot.Editor(StateSnapshot.EMPTY);
+        editor.setTracks(new Track[1]);
+        editor.setTrack(new Track(1, "Pursuit", "music/pursuit.mp3"));
+        assertEquals("Pursuit", editor.getTrack(1).getTrackName());
+        editor.setTrack(new Track(1, "Cornered", "music/cornered.mp3"));
+
+        assertEquals("Cornered", editor.getTrack(1).getTrackName());
+        assertEquals("Cornered", editor.publish().getTrack(1).getTrackName());
+    }
+
+    public void testUnreceivedSlotsAreNull() {
+        store.setAreas(new Area[]{null, new Area(2, "Courtroom", 0, "court", null)});
+
+        assertEquals(null, store.snapshot().getAreas().get(0));
+        assertEquals(2, store.snapshot().getAreas().get(1).getLocationId());
+        assertEquals(2, store.snapshot().getAreas().size());
+    }
+
+    public void testOutOfRangeIdsAreIgnored() {
+        StateSnapshot before = store.snapshot();
+        store.addArea(new Area(3, "Nowhere", 0, "none", null));
+        store.changeAreaPopulation(9, 1);
+        store.addCharacter(new Character(1, "Ryuu", 0));
+
+        assertSame(before, store.snapshot());
+        assertEquals(null, store.snapshot().getArea(0));
+        assertEquals(null, store.snapshot().getArea(3));
+    }
+
+    public void testChangesAreReported() {
+        store.changeAreaPopulation(1, 5);
+        store.changeAreaPopulation(1, 5);
+        store.setCharacters(new Character[1]);
+        store.addCharacter(new Character(1, "Ryuu", 0));
+        store.addCharacter(new Character(1, "Ryuu", 1));
+        store.setTracks(new Track[3]);
+        store.addTrack(new Track(2, "Pursuit", "music/pursuit.mp3"));
+
+        assertEquals("[population 1 3 5, taken 1 0 1, tracks 1 3, tracks 2 1]", changes.toString());
+    }
+
+    public void testListenersOnLanes() {
+        final List<Runnable> posted = new ArrayList<>();
+        CommandPublisher publisher = new CommandPublisher();
+        publisher.setMainExecutor(new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                posted.add(task);
+            }
+        });
+        StateEvents events = new StateEvents(publisher);
+        events.add(recorder, DeliveryLane.INLINE);
+        Subscription onMain = events.add(recorder, DeliveryLane.MAIN);
+        store = new StateStore(events);
+        store.setAreas(new Area[]{new Area(1, "Lobby", 0, "lobby", null)});
+
+        store.changeAreaPopulation(1, 2);
+        assertEquals(1, changes.size());
+        assertEquals(1, posted.size());
+        posted.remove(0).run();
+        assertEquals(2, changes.size());
+
+        store.changeAreaPopulation(1, 4);
+        onMain.unsubscribe();
+        for (Runnable task : posted) {
+            task.run();
+        }
+        assertEquals(3, changes.size());
+        assertFalse(onMain.isActive());
+    }
+
+    public void testBatchIsPublishedTogether() {
+        StateSnapshot before = store.snapshot();
+        store.beginBatch();
+        store.changeAreaPopulation(1, 5);
+        store.addArea(new Area(2, "Court", 0, "court", null));
+
+        // told after publishing only, but a reader sees the changes at once
+        assertTrue(changes.isEmpty());
+        assertEquals(5, store.snapshot().getArea(1).getLocationPopulation());
+        assertEquals(2, store.areaNames().get("court"));
+        store.endBatch();
+
+        assertEquals("[population 1 3 5]", changes.toString());
+        assertEquals("Court", store.snapshot().getArea(2).getLocationName());
+        assertEquals(3, before.getArea(1).getLocationPopulation());
+    }
+
+    public void testLongBatchIsPublishedInParts() {
+        int count = 1000;
+        store.setTracks(new Track[count]);
+        changes.clear();
+        long version = store.snapshot().getVersion();
+        store.beginBatch();
+        for (int id = 1; id <= count; id++) {
+            store.addTrack(new Track(id, "Track " + id, "music/" + id + ".mp3"));
+        }
+        store.endBatch();
+
+        int publishes = (count + StateStore.BATCH_LIMIT - 1) / StateStore.BATCH_LIMIT;
+        assertEquals(version + publishes, store.snapshot().getVersion());
+        assertEquals(publishes, changes.size());
+        assertEquals("tracks 1 " + StateStore.BATCH_LIMIT, changes.get(0));
+        assertEquals("Track 1000", store.snapshot().getTrack(count).getTrackName());
+    }
+
+    public void testSeveralEntriesArePublishedOnce() {
+        store.setCharacters(new Character[2]);
+        long version = store.snapshot().getVersion();
+        store.addCharacters(new Character(1, "Ryuu", 0), new Character(2, "Mia", 1));
+
+        assertEquals(version + 1, store.snapshot().getVersion());
+        assertEquals("Mia", store.snapshot().getCharacter(2).getCharName());
+    }
+
+    public void testAreaReceivedAgainReportsPopulation() {
+        store.addArea(new Area(1, "Lobby", 3, "lobby", null));
+        store.addArea(new Area(1, "Lobby", 6, "lobby", null));
+
+        assertEquals("[population 1 3 6]", changes.toString());
+    }
+
+    public void testListenersAreCalledOutsideTheLock() {
+        final List<Boolean> locked = new ArrayList<>();
+        store = new StateStore(new StateListener() {
+            @Override
+            public void onAreaPopulationChanged(int areaId, int oldPopulation, int newPopulation) {
+                locked.add(Thread.holdsLock(store));
+            }
+        });
+        store.setAreas(new Area[]{new Area(1, "Lobby", 0, "lobby", null)});
+        store.changeAreaPopulation(1, 2);
+        store.beginBatch();
+        store.changeAreaPopulation(1, 3);
+        store.endBatch();
+
+        assertEquals("[false, false]", locked.toString());
+    }
+}
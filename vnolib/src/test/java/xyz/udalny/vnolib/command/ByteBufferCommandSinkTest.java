@@ -0,0 +1,70 @@
+package xyz.udalny.vnolib.command;
+
+import xyz.udalny.vnolib.command.servercommands.CTCommand;
+import xyz.udalny.vnolib.command.servercommands.MSCommand;
+import xyz.udalny.vnolib.command.servercommands.RoCCommand;
+import xyz.udalny.vnolib.exception.CommandException;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class ByteBufferCommandSinkTest extends TestCase {
+
+    @SuppressWarnings("unchecked")
+    private static byte[] encode(BaseCommand command, int capacity) {
+        ByteBufferCommandSink sink = new ByteBufferCommandSink(ByteBuffer.allocate(capacity));
+        CommandCodec<BaseCommand> codec = (CommandCodec<BaseCommand>) CommandCodecRegistry.forClass(command.getClass());
+        codec.encode(command, sink);
+        ByteBuffer buffer = sink.getBuffer();
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private static void assertSameAsString(BaseCommand command) throws CommandException, UnsupportedEncodingException {
+        byte[] expected = command.toVnoString().getBytes("cp1251");
+        assertTrue(Arrays.equals(expected, encode(command, 1)));
+        assertTrue(Arrays.equals(expected, encode(command, 4096)));
+    }
+
+    public void testMatchesStringEncoding() throws Exception {
+        assertSameAsString(CommandParser.parse(
+                "MS#Bernkastel#8#Хоть сейчас он и не Инквизитор...#char#0#20#Verande_Meta1.png#3#0##%"));
+        assertSameAsString(new CTCommand("user#1", "100% <pound> sure"));
+        assertSameAsString(new CTCommand("user", null));
+    }
+
+    public void testIntegers() throws Exception {
+        assertSameAsString(CommandParser.parse("RoC#0#-1#2147483647#-2147483648#%"));
+        RoCCommand roc = (RoCCommand) CommandParser.parse("RoC#10#999#1000#7#%");
+        assertEquals("RoC#10#999#1000#7#%", new String(encode(roc, 1), "cp1251"));
+    }
+
+    public void testPreparedCommandIsEncodedWhenSent() {
+        PreparedCommand<CTCommand> prepared = new PreparedCommand<>(new CTCommand());
+        prepared.getCommand().setUsername("a");
+        prepared.getCommand().setMessage("first");
+        EncodedCommand first = prepared.encode();
+        prepared.getCommand().setMessage("second");
+        EncodedCommand second = prepared.encode();
+
+        assertEquals("CT#a#first#%", first.toVnoString());
+        assertEquals("CT#a#second#%", second.toVnoString());
+
+        ByteBuffer out = ByteBuffer.allocate(64);
+        first.transferTo(out);
+        assertEquals("CT#a#first#%".length(), out.position());
+        // the written copy is reused for the next send
+        assertSame(first, prepared.encode());
+    }
+
+    public void testRejectsUnannotatedCommand() {
+        try {
+            new PreparedCommand<>(new BaseCommand() {
+            });
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
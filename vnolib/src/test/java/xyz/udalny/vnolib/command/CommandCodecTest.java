@@ -0,0 +1,82 @@
+package xyz.udalny.vnolib.command;
+
+import xyz.udalny.vnolib.command.servercommands.ADCommand;
+import xyz.udalny.vnolib.command.servercommands.CADCommand;
+import xyz.udalny.vnolib.command.servercommands.CTCommand;
+import xyz.udalny.vnolib.command.servercommands.MODCommand;
+import xyz.udalny.vnolib.command.servercommands.MSCommand;
+import xyz.udalny.vnolib.command.servercommands.RoCCommand;
+import xyz.udalny.vnolib.command.servercommands.enums.MessageColor;
+import xyz.udalny.vnolib.command.servercommands.enums.SpritePosition;
+import xyz.udalny.vnolib.exception.CommandException;
+
+import junit.framework.TestCase;
+
+public class CommandCodecTest extends TestCase {
+
+    private static final String MS = "MS#Bernkastel#8#Хоть сейчас он и не Инквизитор...#char#0#20#Verande_Meta1.png#3#0##%";
+
+    public void testMessageRoundTrip() throws CommandException {
+        MSCommand command = (MSCommand) CommandParser.parse(MS);
+        assertEquals("Bernkastel", command.getCharacterName());
+        assertEquals(MessageColor.WHITE, command.getMessageColor());
+        assertEquals(20, command.getCharacterId());
+        assertEquals(SpritePosition.CENTER, command.getPosition());
+        assertEquals("", command.getSfx());
+        assertEquals(MS, command.toVnoString());
+    }
+
+    public void testEveryTypeHasCodec() {
+        for (CommandType type : CommandType.values()) {
+            assertNotNull(type.name(), CommandCodecRegistry.forType(type));
+        }
+    }
+
+    public void testRoomChangeRoundTrip() throws CommandException {
+        String roc = "RoC#3#10#7#25#%";
+        assertEquals(roc, CommandParser.parse(roc).toVnoString());
+    }
+
+    public void testAreaWithoutPassword() throws CommandException {
+        // the missing password is sent back as an empty argument
+        assertEquals("AD#1#Hall#5#hall##%", CommandParser.parse("AD#1#Hall#5#hall#%").toVnoString());
+        assertEquals("AD#1#Hall#5#hall#secret#%", CommandParser.parse("AD#1#Hall#5#hall#secret#%").toVnoString());
+    }
+
+    public void testMissingRequiredArgument() {
+        try {
+            CommandParser.parse("AD#1#Hall#5#%");
+            fail();
+        } catch (CommandException expected) {
+        }
+    }
+
+    public void testUnknownCommand() {
+        try {
+            CommandParser.parse("NOPE#1#%");
+            fail();
+        } catch (CommandException expected) {
+        }
+    }
+
+    public void testCharacterTriples() throws CommandException {
+        CADCommand command = (CADCommand) CommandParser.parse("CAD#1#Ange#0#3#Battler#1#%");
+        assertEquals(2, command.getInfo().size());
+        assertEquals("Battler", command.getInfo().get(1).getCharName());
+        assertEquals(1, command.getInfo().get(1).getTaken());
+        assertEquals("CAD#1#Ange#0#3#Battler#1#%", command.toVnoString());
+    }
+
+    public void testEscaping() throws CommandException {
+        CTCommand command = new CTCommand("user#1", "100% sure");
+        String wire = command.toVnoString();
+        assertEquals("CT#user<pound>1#100<percent> sure#%", wire);
+        CTCommand parsed = (CTCommand) CommandParser.parse(wire);
+        assertEquals("user#1", parsed.getUsername());
+        assertEquals("100% sure", parsed.getMessage());
+    }
+
+    public void testConstantArgument() throws CommandException {
+        assertEquals("MOD#AUTH#pass#%", new MODCommand("pass").toVnoString());
+    }
+}
@@ -0,0 +1,69 @@
+package xyz.udalny.vnolib.command;
+
+import xyz.udalny.vnolib.exception.CommandException;
+
+import java.io.UnsupportedEncodingException;
+
+import junit.framework.TestCase;
+
+public class FrameTokenizerTest extends TestCase {
+
+    private final FrameTokenizer tokenizer = new FrameTokenizer();
+
+    public void testSplitsNameAndArguments() throws CommandException {
+        assertTrue(tokenizer.tokenize("  RoC#3#10##25#%\n"));
+        assertEquals("RoC", tokenizer.name());
+        assertEquals(4, tokenizer.size());
+        assertEquals(3, tokenizer.getInt(0));
+        assertEquals("", tokenizer.getString(2));
+        assertEquals(25, tokenizer.getInt(3));
+    }
+
+    public void testNoArguments() {
+        assertTrue(tokenizer.tokenize("No#%"));
+        assertEquals("No", tokenizer.name());
+        assertEquals(0, tokenizer.size());
+    }
+
+    public void testUnescapesInPlace() throws CommandException {
+        assertTrue(tokenizer.tokenize("CT#a<pound>b#<percent><pound#<percent>#%"));
+        assertEquals("a#b", tokenizer.getString(0));
+        assertEquals("%<pound", tokenizer.getString(1));
+        assertEquals("%", tokenizer.getString(2));
+    }
+
+    public void testRejectsMalformedFrames() {
+        assertFalse(tokenizer.tokenize(""));
+        assertFalse(tokenizer.tokenize("#%"));
+        assertFalse(tokenizer.tokenize("MS%"));
+        assertFalse(tokenizer.tokenize("MS#a#"));
+        assertFalse(tokenizer.tokenize("MS#a%"));
+    }
+
+    public void testDecodesCp1251() throws CommandException, UnsupportedEncodingException {
+        byte[] frame = "xxCT#Хоть#сейчас#%yy".getBytes("cp1251");
+        assertTrue(tokenizer.tokenize(frame, 2, frame.length - 4));
+        assertEquals("CT", tokenizer.name());
+        assertEquals("Хоть", tokenizer.getString(0));
+        assertEquals("сейчас", tokenizer.getString(1));
+    }
+
+    public void testNumbers() throws CommandException {
+        assertTrue(tokenizer.tokenize("PC#-2147483648#2147483647#+7#2147483648#1x##%"));
+        assertEquals(Integer.MIN_VALUE, tokenizer.getInt(0));
+        assertEquals(Integer.MAX_VALUE, tokenizer.getInt(1));
+        assertEquals(7, tokenizer.getInt(2));
+        for (int i = 3; i < 6; i++) {
+            try {
+                tokenizer.getInt(i);
+                fail("argument " + i);
+            } catch (CommandException expected) {
+            }
+        }
+        try {
+            tokenizer.getString(6);
+            fail();
+        } catch (CommandException expected) {
+        }
+    }
+}
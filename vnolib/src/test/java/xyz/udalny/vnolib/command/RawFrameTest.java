@@ -0,0 +1,46 @@
+package xyz.udalny.vnolib.command;
+
+import xyz.udalny.vnolib.command.servercommands.CTCommand;
+import xyz.udalny.vnolib.exception.CommandException;
+
+import java.io.UnsupportedEncodingException;
+
+import junit.framework.TestCase;
+
+public class RawFrameTest extends TestCase {
+
+    private static byte[] bytes(String frame) throws UnsupportedEncodingException {
+        return frame.getBytes("cp1251");
+    }
+
+    public void testPeeksTypeWithoutDecoding() throws UnsupportedEncodingException {
+        byte[] frame = bytes("..\r\nRoC#1#2#3#4#%");
+        assertEquals(CommandType.RoC, RawFrame.peekType(frame, 2, frame.length - 2));
+        assertEquals(CommandType.MODOK, RawFrame.peekType(bytes("MODOK#%"), 0, 7));
+        assertEquals(CommandType.MOD, RawFrame.peekType(bytes("MOD#AUTH#%"), 0, 10));
+        assertNull(RawFrame.peekType(bytes("Roc#1#%"), 0, 7));
+        assertNull(RawFrame.peekType(bytes("RoC%"), 0, 4));
+    }
+
+    public void testEveryNameIsFound() throws UnsupportedEncodingException {
+        for (CommandType type : CommandType.values()) {
+            byte[] frame = bytes(type.name() + "#%");
+            assertSame(type, CommandType.fromName(frame, 0, type.name().length()));
+        }
+    }
+
+    public void testDecodesOnce() throws CommandException, UnsupportedEncodingException {
+        RawFrame frame = new RawFrame(CommandType.CT, bytes("CT#user#Хоть#%"));
+        FrameTokenizer tokenizer = new FrameTokenizer();
+        CTCommand command = (CTCommand) frame.getCommand(tokenizer);
+        assertEquals("Хоть", command.getMessage());
+        assertSame(command, frame.getCommand(tokenizer));
+    }
+
+    public void testKnowsWhichCommandsHaveHandlers() {
+        assertTrue(CommandCodecRegistry.forType(CommandType.RoC).hasHandler());
+        assertTrue(CommandCodecRegistry.forType(CommandType.CAD).hasHandler());
+        assertFalse(CommandCodecRegistry.forType(CommandType.MS).hasHandler());
+        assertFalse(CommandCodecRegistry.forType(CommandType.CT).hasHandler());
+    }
+}
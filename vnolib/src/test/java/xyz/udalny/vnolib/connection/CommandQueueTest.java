@@ -0,0 +1,155 @@
+package xyz.udalny.vnolib.connection;
+
+import xyz.udalny.vnolib.command.CommandType;
+import xyz.udalny.vnolib.command.RawFrame;
+
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class CommandQueueTest extends TestCase {
+
+    private static RawFrame frame(CommandType type, String frame) throws UnsupportedEncodingException {
+        return new RawFrame(type, frame.getBytes("cp1251"));
+    }
+
+    public void testLatestPopulationOfAnAreaReplacesOlderOne() throws UnsupportedEncodingException {
+        CommandQueue queue = new CommandQueue();
+        RawFrame otherArea = frame(CommandType.RaC, "RaC#2#20#%");
+        RawFrame area = frame(CommandType.AD, "AD#3#Court#0#court#0#%");
+        RawFrame latest = frame(CommandType.RaC, "RaC#1#11#%");
+        queue.add(frame(CommandType.RaC, "RaC#1#10#%"));
+        queue.add(otherArea);
+        queue.add(area);
+        queue.add(latest);
+        assertEquals(3, queue.size());
+        assertSame(otherArea, queue.poll());
+        assertSame(area, queue.poll());
+        // the replacement is delivered after the frames that arrived before it
+        assertSame(latest, queue.poll());
+        assertNull(queue.poll());
+    }
+
+    public void testMovesBetweenTheSameAreasAreCoalesced() throws UnsupportedEncodingException {
+        CommandQueue queue = new CommandQueue();
+        RawFrame back = frame(CommandType.RoC, "RoC#2#7#1#5#%");
+        RawFrame latest = frame(CommandType.RoC, "RoC#1#4#2#8#%");
+        queue.add(frame(CommandType.RoC, "RoC#1#5#2#7#%"));
+        queue.add(back);
+        queue.add(latest);
+        assertEquals(2, queue.size());
+        assertSame(back, queue.poll());
+        assertSame(latest, queue.poll());
+    }
+
+    public void testPlayerCountKeepsOnlyLatest() throws UnsupportedEncodingException {
+        CommandQueue queue = new CommandQueue();
+        RawFrame latest = frame(CommandType.PC, "PC#4#%");
+        queue.add(frame(CommandType.PC, "PC#3#%"));
+        queue.add(latest);
+        assertEquals(1, queue.size());
+        assertSame(latest, queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    public void testMessagesAreNeverDropped() throws UnsupportedEncodingException {
+        CommandQueue queue = new CommandQueue(4);
+        RawFrame[] frames = new RawFrame[10];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = frame(CommandType.MS, "MS#chat#" + i + "#%");
+            queue.add(frames[i]);
+        }
+        assertEquals(frames.length, queue.size());
+        assertTrue(queue.isFull());
+        for (RawFrame frame : frames) {
+            assertSame(frame, queue.poll());
+        }
+    }
+
+    public void testFrameWithoutKeyIsKept() throws UnsupportedEncodingException {
+        CommandQueue queue = new CommandQueue();
+        queue.add(frame(CommandType.RaC, "RaC#x#1#%"));
+        queue.add(frame(CommandType.RaC, "RaC#x#2#%"));
+        assertEquals(2, queue.size());
+    }
+
+    public void testResumesOnceDrainedToHalf() throws Exception {
+        final CommandQueue queue = new CommandQueue(4);
+        final AtomicInteger resumed = new AtomicInteger();
+        queue.addResumeListener(new Runnable() {
+            @Override
+            public void run() {
+                resumed.incrementAndGet();
+            }
+        });
+        for (int i = 0; i < 4; i++) {
+            queue.add(frame(CommandType.CT, "CT#user#" + i + "#%"));
+        }
+        assertTrue(queue.isFull());
+        assertFalse(queue.awaitSpace(10));
+
+        Thread handler = new Thread() {
+            @Override
+            public void run() {
+                queue.poll();
+                queue.poll();
+                queue.poll();
+            }
+        };
+        handler.start();
+        assertTrue(queue.awaitSpace(5000));
+        handler.join();
+        assertFalse(queue.isFull());
+        assertEquals(1, resumed.get());
+    }
+
+    public void testPeeksNumbersWithoutDecoding() throws UnsupportedEncodingException {
+        RawFrame frame = frame(CommandType.RoC, "RoC#12#x##7#%");
+        assertEquals(12, frame.peekInt(0));
+        assertEquals(-1, frame.peekInt(1));
+        assertEquals(-1, frame.peekInt(2));
+        assertEquals(7, frame.peekInt(3));
+        assertEquals(-1, frame.peekInt(4));
+    }
+
+    public void testChatOvertakesListsWithoutStarvingThem() throws UnsupportedEncodingException {
+        CommandQueue queue = new CommandQueue();
+        for (int i = 0; i < 3; i++) {
+            queue.add(frame(CommandType.CAD, "CAD#" + i + "#name#1#%"));
+        }
+        for (int i = 0; i < TrafficClass.MAX_INTERACTIVE_BURST + 1; i++) {
+            queue.add(frame(CommandType.CT, "CT#user#" + i + "#%"));
+        }
+        for (int i = 0; i < TrafficClass.MAX_INTERACTIVE_BURST; i++) {
+            assertEquals(CommandType.CT, queue.poll().getType());
+        }
+        assertEquals(CommandType.CAD, queue.poll().getType());
+        assertEquals(CommandType.CT, queue.poll().getType());
+        assertEquals(CommandType.CAD, queue.poll().getType());
+        assertEquals(CommandType.CAD, queue.poll().getType());
+        assertNull(queue.poll());
+    }
+
+    public void testStateChangesStayInOrderWithListAnswers() throws UnsupportedEncodingException {
+        CommandQueue queue = new CommandQueue();
+        RawFrame area = frame(CommandType.AD, "AD#1#Lobby#3#lobby#0#%");
+        RawFrame population = frame(CommandType.RaC, "RaC#1#4#%");
+        RawFrame move = frame(CommandType.RoC, "RoC#1#3#2#1#%");
+        RawFrame character = frame(CommandType.CAD, "CAD#1#Phoenix#0#%");
+        RawFrame message = frame(CommandType.CT, "CT#user#hi#%");
+        queue.add(area);
+        queue.add(population);
+        queue.add(move);
+        queue.add(character);
+        queue.add(message);
+
+        // only the message may overtake, a population change must not be undone by the older AD
+        assertSame(message, queue.poll());
+        assertSame(area, queue.poll());
+        assertSame(population, queue.poll());
+        assertSame(move, queue.poll());
+        assertSame(character, queue.poll());
+        assertNull(queue.poll());
+    }
+}
@@ -0,0 +1,73 @@
+package xyz.udalny.vnolib.connection;
+
+import xyz.udalny.vnolib.command.CommandType;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class ConnectionLostTest extends TestCase {
+
+    private ServerSocket serverSocket;
+    private VNOConnection connection;
+    private Socket accepted;
+
+    private CountDownLatch lost;
+    private AtomicInteger lostCount;
+
+    @Override
+    protected void setUp() throws Exception {
+        serverSocket = new ServerSocket(0);
+        lost = new CountDownLatch(1);
+        lostCount = new AtomicInteger();
+        connection = new VNOConnection("127.0.0.1", serverSocket.getLocalPort(), new CommandHandler() {
+            @Override
+            public void notifyAboutNewCommand() {
+            }
+
+            @Override
+            public boolean isInterestedIn(CommandType type) {
+                return true;
+            }
+        });
+        connection.setLostListener(new ServerConnection.LostListener() {
+            @Override
+            public void onConnectionLost(ServerConnection connection) {
+                lostCount.incrementAndGet();
+                lost.countDown();
+            }
+        });
+        connection.connect();
+        accepted = serverSocket.accept();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        connection.disconnect();
+        accepted.close();
+        serverSocket.close();
+    }
+
+    public void testServerClosingIsReportedOnce() throws Exception {
+        accepted.close();
+
+        assertTrue(lost.await(5, TimeUnit.SECONDS));
+        assertEquals(ConnectionStatus.DISCONNECTED, connection.getStatus());
+
+        // the writer notices the broken socket too, which must not be reported again
+        connection.sendOOCMessage("user", "hello");
+        Thread.sleep(200);
+        assertEquals(1, lostCount.get());
+    }
+
+    public void testDisconnectIsNotReported() throws Exception {
+        connection.disconnect();
+
+        assertFalse(lost.await(500, TimeUnit.MILLISECONDS));
+        assertEquals(ConnectionStatus.DISCONNECTED, connection.getStatus());
+    }
+}
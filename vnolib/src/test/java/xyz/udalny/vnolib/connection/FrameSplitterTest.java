@@ -0,0 +1,74 @@
+package xyz.udalny.vnolib.connection;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class FrameSplitterTest extends TestCase {
+
+    private static class CollectingHandler implements FrameHandler {
+
+        final List<String> frames = new ArrayList<>();
+
+        @Override
+        public void onFrame(byte[] buffer, int offset, int length) {
+            frames.add(new String(buffer, offset, length));
+        }
+    }
+
+    // hands out at most chunkSize bytes per read
+    private static InputStream chunked(String data, final int chunkSize) {
+        return new ByteArrayInputStream(data.getBytes()) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, chunkSize));
+            }
+        };
+    }
+
+    private static List<String> split(String data, int capacity, int chunkSize) throws IOException {
+        CollectingHandler handler = new CollectingHandler();
+        FrameSplitter splitter = new FrameSplitter(capacity, handler);
+        InputStream in = chunked(data, chunkSize);
+        while(splitter.readFrom(in) >= 0) {
+            // frames are collected by the handler
+        }
+        return handler.frames;
+    }
+
+    public void testManyFramesInOneRead() throws IOException {
+        List<String> frames = split("CT#a#b#%RoC#1#2#3#4#%No#%", 64, 64);
+        assertEquals(3, frames.size());
+        assertEquals("CT#a#b#%", frames.get(0));
+        assertEquals("RoC#1#2#3#4#%", frames.get(1));
+        assertEquals("No#%", frames.get(2));
+    }
+
+    public void testFramesWrappingAroundTheRing() throws IOException {
+        StringBuilder data = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            data.append("MD#").append(i).append("#track.mp3#localhost#%");
+        }
+        List<String> frames = split(data.toString(), 32, 7);
+        assertEquals(100, frames.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("MD#" + i + "#track.mp3#localhost#%", frames.get(i));
+        }
+    }
+
+    public void testFrameBiggerThanInitialCapacity() throws IOException {
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            description.append('x');
+        }
+        String frame = "SDP#0#name#127.0.0.1#6543#" + description + "#link##%";
+        List<String> frames = split(frame + "No#%", 16, 1000);
+        assertEquals(2, frames.size());
+        assertEquals(frame, frames.get(0));
+        assertEquals("No#%", frames.get(1));
+    }
+}
@@ -0,0 +1,50 @@
+package xyz.udalny.vnolib.connection;
+
+import xyz.udalny.vnolib.command.BaseCommand;
+import xyz.udalny.vnolib.command.servercommands.CTCommand;
+import xyz.udalny.vnolib.command.servercommands.RCDCommand;
+
+import junit.framework.TestCase;
+
+public class OutgoingQueueTest extends TestCase {
+
+    public void testMessageIsSentBeforeQueuedRequests() {
+        OutgoingQueue queue = new OutgoingQueue();
+        for (int i = 0; i < 100; i++) {
+            queue.offer(new RCDCommand(i));
+        }
+        CTCommand message = new CTCommand("user", "hi");
+        queue.offer(message);
+        assertSame(message, queue.poll());
+        assertTrue(queue.poll() instanceof RCDCommand);
+    }
+
+    public void testRequestsKeepGoingDuringChat() {
+        OutgoingQueue queue = new OutgoingQueue();
+        queue.offer(new RCDCommand(0));
+        for (int i = 0; i < 3 * TrafficClass.MAX_INTERACTIVE_BURST; i++) {
+            queue.offer(new CTCommand("user", String.valueOf(i)));
+        }
+        int polled = 0;
+        BaseCommand command;
+        do {
+            command = queue.poll();
+            polled++;
+        } while(!(command instanceof RCDCommand));
+        assertEquals(TrafficClass.MAX_INTERACTIVE_BURST + 1, polled);
+    }
+
+    public void testKeepsOrderWithinClass() {
+        OutgoingQueue queue = new OutgoingQueue();
+        RCDCommand[] requests = new RCDCommand[5];
+        for (int i = 0; i < requests.length; i++) {
+            requests[i] = new RCDCommand(i);
+            queue.offer(requests[i]);
+        }
+        for (RCDCommand request : requests) {
+            assertSame(request, queue.poll());
+        }
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+    }
+}
@@ -0,0 +1,183 @@
+package xyz.udalny.vnolib.connection;
+
+import xyz.udalny.vnolib.command.CommandType;
+import xyz.udalny.vnolib.command.FrameTokenizer;
+import xyz.udalny.vnolib.command.RawFrame;
+import xyz.udalny.vnolib.command.servercommands.CTCommand;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class SelectorEngineTest extends TestCase {
+
+    private SelectorEngine engine;
+    private ServerSocket serverSocket;
+    private CommandQueue received;
+    private VNOConnection connection;
+    private Socket accepted;
+    private CountDownLatch lost;
+
+    @Override
+    protected void setUp() throws Exception {
+        engine = new SelectorEngine();
+        engine.start();
+        serverSocket = new ServerSocket();
+        // small window, so that big writes are only partly accepted
+        serverSocket.setReceiveBufferSize(4096);
+        serverSocket.bind(new InetSocketAddress("127.0.0.1", 0));
+        received = new CommandQueue();
+        lost = new CountDownLatch(1);
+        connection = new VNOConnection("127.0.0.1", serverSocket.getLocalPort(), received, new CommandHandler() {
+            @Override
+            public void notifyAboutNewCommand() {
+            }
+
+            @Override
+            public boolean isInterestedIn(CommandType type) {
+                return true;
+            }
+        });
+        connection.setSelectorEngine(engine);
+        connection.setLostListener(new ServerConnection.LostListener() {
+            @Override
+            public void onConnectionLost(ServerConnection connection) {
+                lost.countDown();
+            }
+        });
+        connection.connect();
+        accepted = serverSocket.accept();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        connection.disconnect();
+        accepted.close();
+        serverSocket.close();
+        engine.stopEngine();
+    }
+
+    public void testStopWaitsForTheEngineWhenInterrupted() throws Exception {
+        SelectorEngine other = new SelectorEngine();
+        other.start();
+        Thread.currentThread().interrupt();
+        other.stopEngine();
+        // the interrupt is passed on, but only once the I/O thread is gone
+        assertTrue(Thread.interrupted());
+        assertFalse(other.isAlive());
+    }
+
+    private RawFrame nextFrame() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while(true) {
+            RawFrame frame = received.poll();
+            if (frame != null) {
+                return frame;
+            }
+            assertTrue("no frame received", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private void sendInPieces(String... pieces) throws IOException, InterruptedException {
+        OutputStream out = accepted.getOutputStream();
+        for (String piece : pieces) {
+            out.write(piece.getBytes("cp1251"));
+            out.flush();
+            Thread.sleep(20);
+        }
+    }
+
+    public void testFramesSplitAcrossReads() throws Exception {
+        sendInPieces("CT#user#hel", "lo#%CT#user#mi", "d#%C", "T#user#bye#%");
+
+        FrameTokenizer tokenizer = new FrameTokenizer();
+        assertEquals("hello", ((CTCommand) nextFrame().getCommand(tokenizer)).getMessage());
+        assertEquals("mid", ((CTCommand) nextFrame().getCommand(tokenizer)).getMessage());
+        assertEquals("bye", ((CTCommand) nextFrame().getCommand(tokenizer)).getMessage());
+    }
+
+    public void testFrameLargerThanTheReadBuffer() throws Exception {
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            message.append((char) ('a' + i % 26));
+        }
+        sendInPieces("CT#user#" + message.substring(0, 7000), message.substring(7000) + "#%");
+
+        CTCommand command = (CTCommand) nextFrame().getCommand(new FrameTokenizer());
+        assertEquals(message.toString(), command.getMessage());
+    }
+
+    public void testPartialWritesAreFinished() throws Exception {
+        StringBuilder padding = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            padding.append('x');
+        }
+        int count = 2000;
+        // about 2 MB, far more than the socket buffers take while nobody reads
+        for (int i = 0; i < count; i++) {
+            connection.sendOOCMessage("user", i + "-" + padding);
+        }
+        Thread.sleep(100);
+
+        InputStream in = accepted.getInputStream();
+        accepted.setSoTimeout(5000);
+        StringBuilder frame = new StringBuilder();
+        int next = 0;
+        int b;
+        while(next < count && (b = in.read()) >= 0) {
+            if (b != '%') {
+                frame.append((char) b);
+                continue;
+            }
+            // CT#user#message#
+            String message = frame.toString().split("#")[2];
+            assertEquals(next + "-" + padding, message);
+            next++;
+            frame.setLength(0);
+        }
+        assertEquals(count, next);
+    }
+
+    public void testRemoteCloseIsReported() throws Exception {
+        accepted.close();
+
+        assertTrue(lost.await(5, TimeUnit.SECONDS));
+        assertEquals(ConnectionStatus.DISCONNECTED, connection.getStatus());
+    }
+
+    public void testEngineServesSeveralConnections() throws Exception {
+        VNOConnection second = new VNOConnection("127.0.0.1", serverSocket.getLocalPort(), received, new CommandHandler() {
+            @Override
+            public void notifyAboutNewCommand() {
+            }
+
+            @Override
+            public boolean isInterestedIn(CommandType type) {
+                return true;
+            }
+        });
+        second.setSelectorEngine(engine);
+        second.connect();
+        Socket secondAccepted = serverSocket.accept();
+        try {
+            secondAccepted.getOutputStream().write("CT#second#one#%".getBytes("cp1251"));
+            sendInPieces("CT#first#two#%");
+
+            FrameTokenizer tokenizer = new FrameTokenizer();
+            String first = ((CTCommand) nextFrame().getCommand(tokenizer)).getMessage();
+            String other = ((CTCommand) nextFrame().getCommand(tokenizer)).getMessage();
+            assertTrue(first.equals("one") && other.equals("two") || first.equals("two") && other.equals("one"));
+        } finally {
+            second.disconnect();
+            secondAccepted.close();
+        }
+    }
+}
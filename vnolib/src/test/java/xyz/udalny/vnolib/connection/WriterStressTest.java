@@ -0,0 +1,127 @@
+package xyz.udalny.vnolib.connection;
+
+import xyz.udalny.vnolib.command.CommandType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class WriterStressTest extends TestCase {
+
+    private static final int PRODUCERS = 8;
+    private static final int COMMANDS_PER_PRODUCER = 5000;
+
+    private ServerSocket serverSocket;
+    private VNOConnection connection;
+    private Socket accepted;
+
+    // messages of the CT frames received by the fake server
+    private BlockingQueue<String> received;
+
+    @Override
+    protected void setUp() throws Exception {
+        serverSocket = new ServerSocket(0);
+        received = new LinkedBlockingQueue<>();
+        connection = new VNOConnection("127.0.0.1", serverSocket.getLocalPort(), new CommandHandler() {
+            @Override
+            public void notifyAboutNewCommand() {
+            }
+
+            @Override
+            public boolean isInterestedIn(CommandType type) {
+                return true;
+            }
+        });
+        connection.connect();
+        accepted = serverSocket.accept();
+        Thread serverReader = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    readFrames(accepted.getInputStream());
+                } catch (IOException ex) {
+                    // socket closed by tearDown
+                }
+            }
+        };
+        serverReader.setDaemon(true);
+        serverReader.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        connection.disconnect();
+        accepted.close();
+        serverSocket.close();
+    }
+
+    private void readFrames(InputStream in) throws IOException {
+        StringBuilder frame = new StringBuilder();
+        int b;
+        while((b = in.read()) >= 0) {
+            if (b != '%') {
+                frame.append((char) b);
+                continue;
+            }
+            // CT#user#message#
+            String[] fields = frame.toString().split("#");
+            received.add(fields[2]);
+            frame.setLength(0);
+        }
+    }
+
+    public void testConcurrentProducersLoseNothing() throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] producers = new Thread[PRODUCERS];
+        for (int p = 0; p < PRODUCERS; p++) {
+            final int producer = p;
+            producers[p] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    for (int i = 0; i < COMMANDS_PER_PRODUCER; i++) {
+                        connection.sendOOCMessage("user", producer + "-" + i);
+                    }
+                }
+            };
+            producers[p].start();
+        }
+        start.countDown();
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        int[] nextExpected = new int[PRODUCERS];
+        for (int n = 0; n < PRODUCERS * COMMANDS_PER_PRODUCER; n++) {
+            String message = received.poll(10, TimeUnit.SECONDS);
+            assertNotNull("stalled after " + n + " commands", message);
+            String[] parts = message.split("-");
+            int producer = Integer.parseInt(parts[0]);
+            // commands of one producer keep their order
+            assertEquals(nextExpected[producer], Integer.parseInt(parts[1]));
+            nextExpected[producer]++;
+        }
+        for (int p = 0; p < PRODUCERS; p++) {
+            assertEquals(COMMANDS_PER_PRODUCER, nextExpected[p]);
+        }
+    }
+
+    public void testLoneCommandIsSentWithoutFollowUp() throws Exception {
+        // every command is the last one for a while, so a missed wakeup would leave it in the queue
+        for (int i = 0; i < 2000; i++) {
+            connection.sendOOCMessage("user", "ping" + i);
+            assertEquals("ping" + i, received.poll(1, TimeUnit.SECONDS));
+        }
+    }
+}
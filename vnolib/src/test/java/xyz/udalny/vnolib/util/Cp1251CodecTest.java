@@ -0,0 +1,46 @@
+package xyz.udalny.vnolib.util;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class Cp1251CodecTest extends TestCase {
+
+    private static final String MESSAGE = "Хоть сейчас он и не Инквизитор... «ёЁ» №5 — ok";
+
+    public void testDecodeMatchesCharset() throws UnsupportedEncodingException {
+        byte[] allBytes = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            allBytes[i] = (byte) i;
+        }
+        assertEquals(new String(allBytes, "cp1251"), new Cp1251Codec().decode(allBytes, 0, allBytes.length));
+    }
+
+    public void testEncodeMatchesCharset() throws UnsupportedEncodingException {
+        byte[] expected = MESSAGE.getBytes("cp1251");
+
+        byte[] array = new byte[MESSAGE.length() + 3];
+        int end = Cp1251Codec.encode(MESSAGE, array, 3);
+        assertEquals(array.length, end);
+        assertTrue(Arrays.equals(expected, Arrays.copyOfRange(array, 3, end)));
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(MESSAGE.length());
+        Cp1251Codec.encode(MESSAGE, buffer);
+        byte[] fromBuffer = new byte[MESSAGE.length()];
+        buffer.flip();
+        buffer.get(fromBuffer);
+        assertTrue(Arrays.equals(expected, fromBuffer));
+    }
+
+    public void testUnmappableCharIsReplaced() {
+        assertEquals('?', Cp1251Codec.encode('中'));
+    }
+
+    public void testRoundTrip() {
+        byte[] bytes = new byte[MESSAGE.length()];
+        Cp1251Codec.encode(MESSAGE, bytes, 0);
+        assertEquals(MESSAGE, new Cp1251Codec().decode(bytes, 0, bytes.length));
+    }
+}